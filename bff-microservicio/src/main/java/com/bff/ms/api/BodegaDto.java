@@ -1,10 +1,15 @@
 package com.bff.ms.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class BodegaDto {
   private Long id;
   private String codigo;
   private String nombre;
   private String direccion;
+  /** Versión de la fila; si viene en un PUT la función la exige (igual que If-Match). */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Long version;
 
   public BodegaDto() {}
   public BodegaDto(Long id, String codigo, String nombre, String direccion) {
@@ -18,5 +23,7 @@ public class BodegaDto {
   public void setNombre(String nombre) { this.nombre = nombre; }
   public String getDireccion() { return direccion; }
   public void setDireccion(String direccion) { this.direccion = direccion; }
+  public Long getVersion() { return version; }
+  public void setVersion(Long version) { this.version = version; }
 }
 
@@ -1,34 +1,33 @@
 package com.bff.ms.api;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/bff/bodegas")
 public class BodegasController {
   private final WebClient bodegasClient;
-  public BodegasController(@Qualifier("bodegasClient") WebClient bodegasClient) { this.bodegasClient = bodegasClient; }
+  private final CacheRespuestas cache;
+  public BodegasController(@Qualifier("bodegasClient") WebClient bodegasClient, CacheRespuestas cache) {
+    this.bodegasClient = bodegasClient;
+    this.cache = cache;
+  }
 
   @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> listar() {
-    return bodegasClient.get()
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("[]")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<Flux<DataBuffer>>> listar(@RequestHeader HttpHeaders headers) {
+    return cache.get("bodegas", "/", headers, () -> bodegasClient.get());
   }
 
   @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> uno(@PathVariable Long id) {
-    return bodegasClient.get().uri("/{id}", id)
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<Flux<DataBuffer>>> uno(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+    return cache.get("bodega", "/" + id, headers, () -> bodegasClient.get().uri("/{id}", id));
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -37,21 +36,26 @@ public class BodegasController {
         .exchangeToMono(resp ->
             resp.bodyToMono(String.class).defaultIfEmpty("")
                 .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+                    .contentType(MediaType.APPLICATION_JSON).body(body)))
+        .doOnSuccess(r -> cache.invalidar("bodegas"));
   }
 
   @PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> actualizar(@PathVariable Long id, @RequestBody BodegaDto dto) {
-    return bodegasClient.put().uri("/{id}", id).contentType(MediaType.APPLICATION_JSON).bodyValue(dto)
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<String>> actualizar(@PathVariable Long id, @RequestBody BodegaDto dto,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    return bodegasClient.put().uri("/{id}", id).contentType(MediaType.APPLICATION_JSON)
+        .headers(h -> { if (ifMatch != null) h.set(HttpHeaders.IF_MATCH, ifMatch); })
+        .bodyValue(dto)
+        .exchangeToMono(resp -> Condicional.respuesta(resp, ""))
+        .doOnSuccess(r -> cache.invalidar("bodegas", "bodega"));
   }
 
   @DeleteMapping(value = "/{id}")
-  public Mono<ResponseEntity<Void>> eliminar(@PathVariable Long id) {
+  public Mono<ResponseEntity<Void>> eliminar(@PathVariable Long id,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
     return bodegasClient.delete().uri("/{id}", id)
-        .exchangeToMono(resp -> Mono.just(ResponseEntity.status(resp.rawStatusCode()).build()));
+        .headers(h -> { if (ifMatch != null) h.set(HttpHeaders.IF_MATCH, ifMatch); })
+        .exchangeToMono(resp -> Mono.just(ResponseEntity.status(resp.rawStatusCode()).<Void>build()))
+        .doOnSuccess(r -> cache.invalidar("bodegas", "bodega", "productos", "producto"));
   }
 }
\ No newline at end of file
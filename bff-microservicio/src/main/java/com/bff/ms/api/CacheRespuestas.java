@@ -0,0 +1,289 @@
+package com.bff.ms.api;
+
+import com.bff.ms.config.CacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Cache de respuestas GET hacia las funciones, por ruta (TTL y stale-while-revalidate en
+ * bff.cache.routes), acotado por cantidad de entradas y por la suma de los cuerpos guardados
+ * (se descartan las menos usadas), y por tamaño de cada respuesta.
+ *
+ * Requests iguales concurrentes comparten una sola llamada a la función (single-flight): el
+ * primero la hace y el resto espera su resultado. Solo se guardan los 200; el resto de las
+ * respuestas se entrega a quienes esperaban y no queda en cache. Con la copia vencida pero
+ * dentro de la ventana stale se responde con ella y se refresca en segundo plano. Una respuesta
+ * sobre maxEntryBytes deja durante el TTL una marca "no cacheable": mientras dure, los requests
+ * a esa clave van directo a la función en streaming, sin esperar a un primero.
+ *
+ * La clave incluye si el cliente acepta gzip, para no servir un cuerpo comprimido a quien no lo
+ * pidió. If-None-Match se resuelve acá contra el ETag guardado. Las escrituras que pasan por el
+ * BFF invalidan las rutas afectadas de esta instancia; una carga que empezó antes de invalidar
+ * entrega su resultado a quienes la esperaban pero no lo guarda. El resto lo acota el TTL.
+ *
+ * Métricas: bff.cache.requests (route, result = hit/stale/miss/coalesced/bypass),
+ * bff.cache.entries y bff.cache.bytes.
+ */
+@Component
+public class CacheRespuestas {
+  private static final Logger LOG = LoggerFactory.getLogger(CacheRespuestas.class);
+  private static final List<String> HEADERS = List.of(
+      HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_ENCODING, HttpHeaders.ETAG,
+      HttpHeaders.LAST_MODIFIED, HttpHeaders.VARY);
+
+  private final CacheProperties props;
+  private final Reenvio reenvio;
+  private final MeterRegistry registry;
+  /** En orden de acceso: la primera es la menos usada. entradas protege también bytes y generaciones. */
+  private final Map<String, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+  /** Ruta → cantidad de invalidaciones. */
+  private final Map<String, Long> generaciones = new HashMap<>();
+  private final Map<String, Mono<Entrada>> enVuelo = new ConcurrentHashMap<>();
+  private final Map<String, Counter> contadores = new ConcurrentHashMap<>();
+
+  public CacheRespuestas(CacheProperties props, Reenvio reenvio, MeterRegistry registry) {
+    this.props = props;
+    this.reenvio = reenvio;
+    this.registry = registry;
+    registry.gaugeMapSize("bff.cache.entries", List.of(), entradas);
+    registry.gauge("bff.cache.bytes", List.of(), this, CacheRespuestas::bytesGuardados);
+  }
+
+  /**
+   * GET cacheado. request arma el GET hacia la función sin headers del cliente: la cache pide
+   * siempre la representación completa.
+   */
+  Mono<ResponseEntity<Flux<DataBuffer>>> get(String ruta, String uri, HttpHeaders entrantes,
+      Supplier<WebClient.RequestHeadersSpec<?>> request) {
+    CacheProperties.Ruta cfg = props.getRoutes().get(ruta);
+    if (cfg == null || cfg.getTtl().isZero()) {
+      contar(ruta, "bypass");
+      return reenvio.respuesta(reenvio.headers(request.get(), entrantes));
+    }
+
+    boolean gzip = aceptaGzip(entrantes);
+    String clave = ruta + "|" + uri + "|" + (gzip ? "gzip" : "identity");
+    long ahora = System.nanoTime();
+
+    Entrada e;
+    synchronized (entradas) {
+      e = entradas.get(clave);
+    }
+    if (e != null && e.cuerpo == null) {
+      if (ahora - e.guardadaEn < cfg.getTtl().toNanos()) {
+        contar(ruta, "bypass");
+        return reenvio.respuesta(reenvio.headers(request.get(), entrantes));
+      }
+    } else if (e != null) {
+      long edad = ahora - e.guardadaEn;
+      if (edad < cfg.getTtl().toNanos()) {
+        contar(ruta, "hit");
+        return Mono.just(responder(e, entrantes, "HIT"));
+      }
+      if (edad < cfg.getTtl().plus(cfg.getStaleWhileRevalidate()).toNanos()) {
+        contar(ruta, "stale");
+        unaVez(clave, () -> cargar(ruta, clave, gzip, request)).subscribe(x -> {}, err -> LOG.debug("Refresco de {} falló", clave, err));
+        return Mono.just(responder(e, entrantes, "STALE"));
+      }
+    }
+
+    boolean[] primero = new boolean[1];
+    Mono<Entrada> carga = unaVez(clave, () -> {
+      primero[0] = true;
+      return cargar(ruta, clave, gzip, request);
+    });
+    return carga.flatMap(x -> {
+      contar(ruta, primero[0] ? "miss" : "coalesced");
+      if (x.cuerpo == null) {
+        // demasiado grande para guardar: quedó la marca y cada request la pide en streaming
+        return reenvio.respuesta(reenvio.headers(request.get(), entrantes));
+      }
+      return Mono.just(responder(x, entrantes, primero[0] ? "MISS" : "COALESCED"));
+    });
+  }
+
+  /**
+   * Descarta las entradas de esas rutas (después de una escritura por el BFF). Las cargas en
+   * vuelo traen datos de antes de la escritura: los requests siguientes no se suman a ellas y
+   * lo que traigan no se guarda.
+   */
+  void invalidar(String... rutas) {
+    synchronized (entradas) {
+      for (String r : rutas) generaciones.merge(r, 1L, Long::sum);
+      Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, Entrada> e = it.next();
+        if (deRuta(e.getKey(), rutas)) {
+          bytes -= e.getValue().peso();
+          it.remove();
+        }
+      }
+    }
+    enVuelo.keySet().removeIf(k -> deRuta(k, rutas));
+  }
+
+  private Mono<Entrada> unaVez(String clave, Supplier<Mono<Entrada>> origen) {
+    AtomicReference<Mono<Entrada>> propio = new AtomicReference<>();
+    // remove(clave, propio): tras invalidar, la clave puede tener ya otra carga en vuelo
+    Mono<Entrada> nuevo = Mono.defer(origen).doFinally(s -> enVuelo.remove(clave, propio.get())).cache();
+    propio.set(nuevo);
+    Mono<Entrada> actual = enVuelo.putIfAbsent(clave, nuevo);
+    return actual != null ? actual : nuevo;
+  }
+
+  private Mono<Entrada> cargar(String ruta, String clave, boolean gzip, Supplier<WebClient.RequestHeadersSpec<?>> request) {
+    long generacion;
+    synchronized (entradas) {
+      generacion = generaciones.getOrDefault(ruta, 0L);
+    }
+    WebClient.RequestHeadersSpec<?> spec = request.get();
+    if (gzip) spec.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    return spec.retrieve()
+        .onStatus(s -> true, r -> Mono.empty())
+        .toEntityFlux(DataBuffer.class)
+        .flatMap(up -> {
+          Flux<DataBuffer> body = up.getBody() == null ? Flux.empty() : up.getBody();
+          if (up.getHeaders().getContentLength() > props.getMaxEntryBytes()) {
+            return body.take(0).then(Mono.just(Entrada.noCacheable()));
+          }
+          return DataBufferUtils.join(body, props.getMaxEntryBytes())
+              .map(buf -> {
+                byte[] bytes = new byte[buf.readableByteCount()];
+                buf.read(bytes);
+                DataBufferUtils.release(buf);
+                return bytes;
+              })
+              .defaultIfEmpty(new byte[0])
+              .map(bytes -> new Entrada(up.getStatusCodeValue(), copiar(up.getHeaders()), bytes))
+              .onErrorReturn(DataBufferLimitException.class, Entrada.noCacheable());
+        })
+        .doOnNext(x -> {
+          if (x.cuerpo == null || x.status == HttpStatus.OK.value()) guardar(ruta, clave, x, generacion);
+        });
+  }
+
+  /** Guarda si la ruta no se invalidó desde que empezó la carga y descarta las menos usadas. */
+  private void guardar(String ruta, String clave, Entrada x, long generacion) {
+    synchronized (entradas) {
+      if (generaciones.getOrDefault(ruta, 0L) != generacion) return;
+      Entrada prev = entradas.put(clave, x);
+      if (prev != null) bytes -= prev.peso();
+      bytes += x.peso();
+      Iterator<Entrada> it = entradas.values().iterator();
+      while ((entradas.size() > props.getMaxEntries() || bytes > props.getMaxBytes()) && it.hasNext()) {
+        bytes -= it.next().peso();
+        it.remove();
+      }
+    }
+  }
+
+  private long bytesGuardados() {
+    synchronized (entradas) {
+      return bytes;
+    }
+  }
+
+  private static boolean deRuta(String clave, String... rutas) {
+    for (String r : rutas) {
+      if (clave.startsWith(r + "|")) return true;
+    }
+    return false;
+  }
+
+  private static ResponseEntity<Flux<DataBuffer>> responder(Entrada e, HttpHeaders entrantes, String resultado) {
+    HttpHeaders h = new HttpHeaders();
+    h.putAll(e.headers);
+    h.set("X-Cache", resultado);
+    String etag = e.headers.getETag();
+    if (e.status == HttpStatus.OK.value() && etag != null && coincide(entrantes.getIfNoneMatch(), etag)) {
+      h.remove(HttpHeaders.CONTENT_TYPE);
+      h.remove(HttpHeaders.CONTENT_ENCODING);
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(h).body(Flux.empty());
+    }
+    h.setContentLength(e.cuerpo.length);
+    byte[] b = e.cuerpo;
+    return ResponseEntity.status(e.status).headers(h)
+        .body(Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(b))));
+  }
+
+  /** Comparación débil de ETags, como en las funciones. */
+  private static boolean coincide(List<String> ifNoneMatch, String etag) {
+    String propio = sinW(etag);
+    for (String v : ifNoneMatch) {
+      if ("*".equals(v.trim()) || sinW(v).equals(propio)) return true;
+    }
+    return false;
+  }
+
+  private static String sinW(String etag) {
+    String t = etag.trim();
+    return t.startsWith("W/") ? t.substring(2) : t;
+  }
+
+  private static boolean aceptaGzip(HttpHeaders h) {
+    for (String v : h.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+      if (v.toLowerCase().contains("gzip")) return true;
+    }
+    return false;
+  }
+
+  private static HttpHeaders copiar(HttpHeaders origen) {
+    HttpHeaders h = new HttpHeaders();
+    for (String name : HEADERS) {
+      List<String> v = origen.get(name);
+      if (v != null) h.put(name, v);
+    }
+    return h;
+  }
+
+  private void contar(String ruta, String resultado) {
+    contadores.computeIfAbsent(ruta + "|" + resultado, k -> Counter.builder("bff.cache.requests")
+        .tags("route", ruta, "result", resultado)
+        .register(registry)).increment();
+  }
+
+  private static final class Entrada {
+    final int status;
+    final HttpHeaders headers;
+    /** null: marca de que la respuesta superó maxEntryBytes. */
+    final byte[] cuerpo;
+    final long guardadaEn = System.nanoTime();
+
+    Entrada(int status, HttpHeaders headers, byte[] cuerpo) {
+      this.status = status;
+      this.headers = headers;
+      this.cuerpo = cuerpo;
+    }
+
+    static Entrada noCacheable() {
+      return new Entrada(0, new HttpHeaders(), null);
+    }
+
+    long peso() {
+      return cuerpo == null ? 0 : cuerpo.length;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.bff.ms.api;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Respuestas de escrituras hacia las funciones: devuelve el ETag de la respuesta (en PUT, para
+ * encadenar If-Match). Un 304 se propaga sin cuerpo. Los GET van por {@link Reenvio}.
+ */
+final class Condicional {
+  private Condicional() {}
+
+  static Mono<ResponseEntity<String>> respuesta(ClientResponse resp, String cuerpoVacio) {
+    ResponseEntity.BodyBuilder b = ResponseEntity.status(resp.rawStatusCode());
+    resp.headers().header(HttpHeaders.ETAG).stream().findFirst().ifPresent(b::eTag);
+    if (resp.rawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+      return resp.releaseBody().then(Mono.just(b.build()));
+    }
+    return resp.bodyToMono(String.class).defaultIfEmpty(cuerpoVacio)
+        .map(body -> b.contentType(MediaType.APPLICATION_JSON).body(body));
+  }
+}
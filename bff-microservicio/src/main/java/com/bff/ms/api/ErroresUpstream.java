@@ -0,0 +1,41 @@
+package com.bff.ms.api;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fallas hacia las funciones (ya agotados los reintentos de ResilienciaFilter) como JSON en vez
+ * del 500 genérico: circuito abierto → 503, sin respuesta a tiempo → 504, error de conexión → 502.
+ */
+@RestControllerAdvice
+public class ErroresUpstream {
+
+  @ExceptionHandler(CallNotPermittedException.class)
+  public ResponseEntity<Flux<DataBuffer>> circuitoAbierto(CallNotPermittedException e) {
+    return Reenvio.json(HttpStatus.SERVICE_UNAVAILABLE, "{\"error\":\"Función no disponible (circuito abierto)\"}");
+  }
+
+  @ExceptionHandler(WebClientRequestException.class)
+  public ResponseEntity<Flux<DataBuffer>> sinRespuesta(WebClientRequestException e) {
+    if (esTimeout(e)) {
+      return Reenvio.json(HttpStatus.GATEWAY_TIMEOUT, "{\"error\":\"La función no respondió a tiempo\"}");
+    }
+    return Reenvio.json(HttpStatus.BAD_GATEWAY, "{\"error\":\"No se pudo conectar con la función\"}");
+  }
+
+  /** responseTimeout de Reactor Netty llega como ReadTimeoutException; el pool, como TimeoutException. */
+  private static boolean esTimeout(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof TimeoutException || t instanceof io.netty.handler.timeout.TimeoutException) return true;
+    }
+    return false;
+  }
+}
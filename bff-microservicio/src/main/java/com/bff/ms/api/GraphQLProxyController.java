@@ -1,11 +1,15 @@
 package com.bff.ms.api;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.HashMap;
@@ -16,38 +20,33 @@ import java.util.Map;
 public class GraphQLProxyController {
 
   private final WebClient graphqlClient;
+  private final Reenvio reenvio;
 
-  public GraphQLProxyController(@Qualifier("graphqlClient") WebClient graphqlClient) {
+  public GraphQLProxyController(@Qualifier("graphqlClient") WebClient graphqlClient, Reenvio reenvio) {
     this.graphqlClient = graphqlClient;
+    this.reenvio = reenvio;
   }
 
   @PostMapping(value = "/graphql", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> post(@RequestBody Map<String,Object> body) {
+  public Mono<ResponseEntity<Flux<DataBuffer>>> post(@RequestBody Map<String,Object> body, @RequestHeader HttpHeaders headers) {
     Object q = body.get("query");
     if (q == null || !StringUtils.hasText(q.toString())) {
-      return Mono.just(ResponseEntity.badRequest()
-          .contentType(MediaType.APPLICATION_JSON)
-          .body("{\"error\":\"Body JSON inválido. Esperado: { \\\"query\\\": \\\"...\\\" }\"}"));
+      return Mono.just(Reenvio.json(HttpStatus.BAD_REQUEST,
+          "{\"error\":\"Body JSON inválido. Esperado: { \\\"query\\\": \\\"...\\\" }\"}"));
     }
 
-    return graphqlClient.post()
+    return reenvio.respuesta(reenvio.headers(graphqlClient.post()
         .contentType(MediaType.APPLICATION_JSON)
-        .bodyValue(body) 
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("{}")
-                .map(b -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(b)));
+        .bodyValue(body), headers));
   }
 
 
   @GetMapping(value = "/graphql", produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> get(@RequestParam(name = "query", required = false) String query,
-                                          @RequestParam(name = "variables", required = false) String variablesJson) {
+  public Mono<ResponseEntity<Flux<DataBuffer>>> get(@RequestParam(name = "query", required = false) String query,
+                                                    @RequestParam(name = "variables", required = false) String variablesJson,
+                                                    @RequestHeader HttpHeaders headers) {
     if (!StringUtils.hasText(query)) {
-      return Mono.just(ResponseEntity.badRequest()
-          .contentType(MediaType.APPLICATION_JSON)
-          .body("{\"error\":\"Falta query en querystring\"}"));
+      return Mono.just(Reenvio.json(HttpStatus.BAD_REQUEST, "{\"error\":\"Falta query en querystring\"}"));
     }
     Map<String,Object> payload = new HashMap<>();
     payload.put("query", query);
@@ -56,13 +55,8 @@ public class GraphQLProxyController {
       payload.put("variables", variablesJson);
     }
 
-    return graphqlClient.post()
+    return reenvio.respuesta(reenvio.headers(graphqlClient.post()
         .contentType(MediaType.APPLICATION_JSON)
-        .bodyValue(payload)
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("{}")
-                .map(b -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(b)));
+        .bodyValue(payload), headers));
   }
 }
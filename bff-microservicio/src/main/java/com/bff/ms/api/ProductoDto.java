@@ -1,5 +1,7 @@
 package com.bff.ms.api;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.math.BigDecimal;
 
 public class ProductoDto {
@@ -9,6 +11,9 @@ public class ProductoDto {
   private Integer stock;
   private BigDecimal precio;
   private Long bodegaId;
+  /** Versión de la fila; si viene en un PUT la función la exige (igual que If-Match). */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Long version;
 
   public ProductoDto() {}
   public ProductoDto(Long id, String sku, String nombre, Integer stock, BigDecimal precio, Long bodegaId) {
@@ -26,5 +31,7 @@ public class ProductoDto {
   public void setPrecio(BigDecimal precio) { this.precio = precio; }
   public Long getBodegaId() { return bodegaId; }
   public void setBodegaId(Long bodegaId) { this.bodegaId = bodegaId; }
+  public Long getVersion() { return version; }
+  public void setVersion(Long version) { this.version = version; }
 }
 
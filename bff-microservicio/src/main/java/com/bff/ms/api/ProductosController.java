@@ -1,36 +1,33 @@
 package com.bff.ms.api;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/bff/productos")
 public class ProductosController {
   private final WebClient productosClient;
-  public ProductosController(@Qualifier("productosClient") WebClient productosClient) {
+  private final CacheRespuestas cache;
+  public ProductosController(@Qualifier("productosClient") WebClient productosClient, CacheRespuestas cache) {
     this.productosClient = productosClient;
+    this.cache = cache;
   }
 
   @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> listar() {
-    return productosClient.get()
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("[]")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<Flux<DataBuffer>>> listar(@RequestHeader HttpHeaders headers) {
+    return cache.get("productos", "/", headers, () -> productosClient.get());
   }
 
   @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> uno(@PathVariable Long id) {
-    return productosClient.get().uri("/{id}", id)
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<Flux<DataBuffer>>> uno(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+    return cache.get("producto", "/" + id, headers, () -> productosClient.get().uri("/{id}", id));
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -39,21 +36,26 @@ public class ProductosController {
         .exchangeToMono(resp ->
             resp.bodyToMono(String.class).defaultIfEmpty("")
                 .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+                    .contentType(MediaType.APPLICATION_JSON).body(body)))
+        .doOnSuccess(r -> cache.invalidar("productos"));
   }
 
   @PutMapping(value = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-  public Mono<ResponseEntity<String>> actualizar(@PathVariable Long id, @RequestBody ProductoDto dto) {
-    return productosClient.put().uri("/{id}", id).contentType(MediaType.APPLICATION_JSON).bodyValue(dto)
-        .exchangeToMono(resp ->
-            resp.bodyToMono(String.class).defaultIfEmpty("")
-                .map(body -> ResponseEntity.status(resp.rawStatusCode())
-                    .contentType(MediaType.APPLICATION_JSON).body(body)));
+  public Mono<ResponseEntity<String>> actualizar(@PathVariable Long id, @RequestBody ProductoDto dto,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    return productosClient.put().uri("/{id}", id).contentType(MediaType.APPLICATION_JSON)
+        .headers(h -> { if (ifMatch != null) h.set(HttpHeaders.IF_MATCH, ifMatch); })
+        .bodyValue(dto)
+        .exchangeToMono(resp -> Condicional.respuesta(resp, ""))
+        .doOnSuccess(r -> cache.invalidar("productos", "producto"));
   }
 
   @DeleteMapping("/{id}")
-  public Mono<ResponseEntity<Void>> eliminar(@PathVariable Long id) {
+  public Mono<ResponseEntity<Void>> eliminar(@PathVariable Long id,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
     return productosClient.delete().uri("/{id}", id)
-        .exchangeToMono(resp -> Mono.just(ResponseEntity.status(resp.rawStatusCode()).build()));
+        .headers(h -> { if (ifMatch != null) h.set(HttpHeaders.IF_MATCH, ifMatch); })
+        .exchangeToMono(resp -> Mono.just(ResponseEntity.status(resp.rawStatusCode()).<Void>build()))
+        .doOnSuccess(r -> cache.invalidar("productos", "producto"));
   }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.bff.ms.api;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reenvío sin buffer: el cuerpo de la función pasa al cliente como Flux&lt;DataBuffer&gt;, sin
+ * decodificarlo a String ni juntarlo en memoria, con sus headers de representación
+ * (Content-Length, Content-Encoding, ETag, ...). Se reenvían If-None-Match y Accept-Encoding
+ * para que un 304 o un cuerpo comprimido lleguen tal cual.
+ *
+ * Si la respuesta declara un Content-Length sobre bff.proxy.maxBodyBytes se responde 502 sin
+ * leerla; si viene sin largo (chunked) y lo supera a mitad de camino se corta la conexión.
+ */
+@Component
+public class Reenvio {
+  private static final List<String> HEADERS_REQUEST = List.of(
+      HttpHeaders.IF_NONE_MATCH, HttpHeaders.ACCEPT_ENCODING);
+  private static final List<String> HEADERS_RESPUESTA = List.of(
+      HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_LENGTH, HttpHeaders.CONTENT_ENCODING,
+      HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL, HttpHeaders.VARY);
+
+  private final long maxBytes;
+
+  public Reenvio(@Value("${bff.proxy.maxBodyBytes:16777216}") long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /** Copia al request hacia la función los headers del cliente que afectan la respuesta. */
+  <S extends WebClient.RequestHeadersSpec<?>> S headers(S spec, HttpHeaders entrantes) {
+    spec.headers(h -> {
+      for (String name : HEADERS_REQUEST) {
+        List<String> v = entrantes.get(name);
+        if (v != null) h.put(name, v);
+      }
+    });
+    return spec;
+  }
+
+  Mono<ResponseEntity<Flux<DataBuffer>>> respuesta(WebClient.RequestHeadersSpec<?> spec) {
+    return spec.retrieve()
+        // los 4xx/5xx de la función se reenvían igual que los 2xx
+        .onStatus(s -> true, r -> Mono.empty())
+        .toEntityFlux(DataBuffer.class)
+        .flatMap(this::reenviar);
+  }
+
+  private Mono<ResponseEntity<Flux<DataBuffer>>> reenviar(ResponseEntity<Flux<DataBuffer>> up) {
+    HttpHeaders origen = up.getHeaders();
+    Flux<DataBuffer> cuerpo = up.getBody() == null ? Flux.empty() : up.getBody();
+
+    if (origen.getContentLength() > maxBytes) {
+      // take(0) cancela la lectura: la conexión se cierra sin descargar el cuerpo
+      return cuerpo.take(0).then(Mono.just(demasiadoGrande()));
+    }
+
+    HttpHeaders h = new HttpHeaders();
+    for (String name : HEADERS_RESPUESTA) {
+      List<String> v = origen.get(name);
+      if (v != null) h.put(name, v);
+    }
+    return Mono.just(ResponseEntity.status(up.getStatusCodeValue()).headers(h).body(limitar(cuerpo)));
+  }
+
+  private Flux<DataBuffer> limitar(Flux<DataBuffer> cuerpo) {
+    return Flux.defer(() -> {
+      AtomicLong leidos = new AtomicLong();
+      return cuerpo.handle((buf, sink) -> {
+        if (leidos.addAndGet(buf.readableByteCount()) > maxBytes) {
+          DataBufferUtils.release(buf);
+          sink.error(new IllegalStateException("Respuesta de la función sobre " + maxBytes + " bytes"));
+        } else {
+          sink.next(buf);
+        }
+      });
+    });
+  }
+
+  private ResponseEntity<Flux<DataBuffer>> demasiadoGrande() {
+    return json(HttpStatus.BAD_GATEWAY, "{\"error\":\"La respuesta de la función supera " + maxBytes + " bytes\"}");
+  }
+
+  /** Respuesta propia del BFF (errores de validación) con el mismo tipo que las reenviadas. */
+  static ResponseEntity<Flux<DataBuffer>> json(HttpStatus status, String body) {
+    byte[] b = body.getBytes(StandardCharsets.UTF_8);
+    return ResponseEntity.status(status)
+        .contentType(MediaType.APPLICATION_JSON)
+        .contentLength(b.length)
+        .body(Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(b))));
+  }
+}
@@ -0,0 +1,42 @@
+package com.bff.ms.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache de respuestas GET del BFF (bff.cache.*). Cada ruta tiene su TTL y su ventana de
+ * stale-while-revalidate; una ruta sin configurar (o con ttl 0) no se cachea.
+ */
+@ConfigurationProperties(prefix = "bff.cache")
+public class CacheProperties {
+  /** Entradas en total (LRU). */
+  private int maxEntries = 1000;
+  /** Suma de los cuerpos guardados; al pasarla se descartan las entradas menos usadas. */
+  private long maxBytes = 64L * 1024 * 1024;
+  /** Respuestas más grandes no se guardan y se reenvían en streaming. */
+  private int maxEntryBytes = 2 * 1024 * 1024;
+  private Map<String, Ruta> routes = new HashMap<>();
+
+  public int getMaxEntries() { return maxEntries; }
+  public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+  public long getMaxBytes() { return maxBytes; }
+  public void setMaxBytes(long maxBytes) { this.maxBytes = maxBytes; }
+  public int getMaxEntryBytes() { return maxEntryBytes; }
+  public void setMaxEntryBytes(int maxEntryBytes) { this.maxEntryBytes = maxEntryBytes; }
+  public Map<String, Ruta> getRoutes() { return routes; }
+  public void setRoutes(Map<String, Ruta> routes) { this.routes = routes; }
+
+  public static class Ruta {
+    private Duration ttl = Duration.ZERO;
+    /** Después del TTL se sigue sirviendo la copia vieja este tiempo mientras se refresca en segundo plano. */
+    private Duration staleWhileRevalidate = Duration.ZERO;
+
+    public Duration getTtl() { return ttl; }
+    public void setTtl(Duration ttl) { this.ttl = ttl; }
+    public Duration getStaleWhileRevalidate() { return staleWhileRevalidate; }
+    public void setStaleWhileRevalidate(Duration staleWhileRevalidate) { this.staleWhileRevalidate = staleWhileRevalidate; }
+  }
+}
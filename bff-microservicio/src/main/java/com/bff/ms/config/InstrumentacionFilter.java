@@ -0,0 +1,68 @@
+package com.bff.ms.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Métricas y access log de las llamadas a una función, sin bloquear el event loop:
+ * <ul>
+ *   <li>bff.upstream.requests: timer con histograma (upstream, method, status). Mide hasta
+ *       recibir los headers; el cuerpo sigue en streaming después.</li>
+ *   <li>bff.upstream.inflight: gauge de requests en curso por upstream.</li>
+ *   <li>log "bff.access" muestreado (bff.accessLog.sampleRate) por un AsyncAppender
+ *       (logback-spring.xml); los 5xx y errores de conexión se registran siempre.</li>
+ * </ul>
+ */
+public class InstrumentacionFilter implements ExchangeFilterFunction {
+  private static final Logger ACCESS = LoggerFactory.getLogger("bff.access");
+
+  private final String upstream;
+  private final MeterRegistry registry;
+  private final double muestreo;
+  private final AtomicInteger enCurso;
+
+  public InstrumentacionFilter(String upstream, MeterRegistry registry, double muestreo) {
+    this.upstream = upstream;
+    this.registry = registry;
+    this.muestreo = muestreo;
+    this.enCurso = registry.gauge("bff.upstream.inflight", Tags.of("upstream", upstream), new AtomicInteger());
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest req, ExchangeFunction next) {
+    return Mono.defer(() -> {
+      long t0 = System.nanoTime();
+      enCurso.incrementAndGet();
+      return next.exchange(req)
+          .doOnNext(resp -> registrar(req, String.valueOf(resp.rawStatusCode()), resp.rawStatusCode() >= 500, t0))
+          .doOnError(e -> registrar(req, "IO_ERROR", true, t0))
+          .doFinally(s -> enCurso.decrementAndGet());
+    });
+  }
+
+  private void registrar(ClientRequest req, String status, boolean siempre, long t0) {
+    long nanos = System.nanoTime() - t0;
+    Timer.builder("bff.upstream.requests")
+        .tags("upstream", upstream, "method", req.method().name(), "status", status)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+
+    if (siempre || (muestreo > 0 && ThreadLocalRandom.current().nextDouble() < muestreo)) {
+      ACCESS.info("upstream={} method={} uri={} status={} ms={}",
+          upstream, req.method().name(), req.url().getRawPath(), status, nanos / 1_000_000);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.bff.ms.config;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resiliencia hacia una función, por fuera de {@link InstrumentacionFilter} (cada intento se
+ * mide por separado):
+ * <ul>
+ *   <li>Circuit breaker por upstream: cuenta como falla un error de conexión/timeout o un 5xx.
+ *       Abierto, responde de inmediato con CallNotPermittedException (503 en ErroresUpstream)
+ *       en vez de encolar requests detrás de una función en cold start.</li>
+ *   <li>Reintentos solo para GET/HEAD, con backoff exponencial y jitter, ante errores de
+ *       conexión/timeout o 502/503/504. Si el último intento es un 5xx se devuelve tal cual.</li>
+ *   <li>Hedging opcional para GET/HEAD: si no hay respuesta tras el p95 reciente se lanza un
+ *       segundo intento y se usa el primero que responda; el otro se cancela. No depende de
+ *       los reintentos: con retries 0 también aplica.</li>
+ * </ul>
+ * Métricas: resilience4j.circuitbreaker.* (estado, llamadas), bff.upstream.retries y
+ * bff.upstream.hedges por upstream.
+ */
+public class ResilienciaFilter implements ExchangeFilterFunction {
+  private final UpstreamProperties.Pool cfg;
+  private final CircuitBreaker breaker;
+  private final Counter reintentos;
+  private final Counter hedges;
+  private final Latencias latencias = new Latencias(256);
+
+  public ResilienciaFilter(String upstream, UpstreamProperties.Pool cfg, CircuitBreaker breaker, MeterRegistry registry) {
+    this.cfg = cfg;
+    this.breaker = breaker;
+    this.reintentos = Counter.builder("bff.upstream.retries").tag("upstream", upstream).register(registry);
+    this.hedges = Counter.builder("bff.upstream.hedges").tag("upstream", upstream).register(registry);
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest req, ExchangeFunction next) {
+    boolean idempotente = req.method() == HttpMethod.GET || req.method() == HttpMethod.HEAD;
+    if (!idempotente) return intento(req, next);
+    if (cfg.getRetries() <= 0) return conHedge(req, next);
+
+    AtomicInteger n = new AtomicInteger();
+    return Mono.defer(() -> {
+          boolean ultimo = n.getAndIncrement() >= cfg.getRetries();
+          return conHedge(req, next).flatMap(resp -> {
+            if (!ultimo && reintentable(resp.rawStatusCode())) {
+              return resp.releaseBody().then(Mono.error(new Reintentable(resp.rawStatusCode())));
+            }
+            return Mono.just(resp);
+          });
+        })
+        .retryWhen(Retry.backoff(cfg.getRetries(), cfg.getRetryBackoff())
+            .maxBackoff(cfg.getRetryMaxBackoff())
+            .jitter(0.5)
+            .filter(e -> !(e instanceof CallNotPermittedException))
+            .doBeforeRetry(s -> reintentos.increment())
+            .onRetryExhaustedThrow((spec, s) -> s.failure()));
+  }
+
+  private Mono<ClientResponse> conHedge(ClientRequest req, ExchangeFunction next) {
+    Duration p95 = cfg.isHedge() ? latencias.p95() : null;
+    if (p95 == null) return intento(req, next);
+    Duration espera = p95.compareTo(cfg.getHedgeMinDelay()) > 0 ? p95 : cfg.getHedgeMinDelay();
+    Mono<ClientResponse> segundo = Mono.delay(espera)
+        .doOnNext(x -> hedges.increment())
+        .then(intento(req, next));
+    return Mono.firstWithValue(intento(req, next), segundo)
+        .onErrorMap(ResilienciaFilter::causa)
+        .doOnDiscard(ClientResponse.class, r -> r.releaseBody().subscribe());
+  }
+
+  /** firstWithValue envuelve los errores de ambos intentos; se propaga el del primero. */
+  private static Throwable causa(Throwable e) {
+    if (!(e instanceof NoSuchElementException)) return e;
+    Throwable compuesto = e.getCause() != null ? e.getCause() : e;
+    List<Throwable> errores = Exceptions.unwrapMultiple(compuesto);
+    if (!errores.isEmpty() && errores.get(0) != compuesto) return errores.get(0);
+    Throwable[] suprimidos = compuesto.getSuppressed();
+    return suprimidos.length > 0 ? suprimidos[0] : e;
+  }
+
+  /** Un intento bajo el circuit breaker. */
+  private Mono<ClientResponse> intento(ClientRequest req, ExchangeFunction next) {
+    return Mono.defer(() -> {
+      if (!breaker.tryAcquirePermission()) {
+        return Mono.error(CallNotPermittedException.createCallNotPermittedException(breaker));
+      }
+      long t0 = System.nanoTime();
+      AtomicBoolean registrado = new AtomicBoolean();
+      return next.exchange(req)
+          .doOnNext(resp -> {
+            registrado.set(true);
+            long nanos = System.nanoTime() - t0;
+            if (resp.rawStatusCode() >= 500) {
+              breaker.onError(nanos, TimeUnit.NANOSECONDS, new Reintentable(resp.rawStatusCode()));
+            } else {
+              breaker.onSuccess(nanos, TimeUnit.NANOSECONDS);
+              latencias.registrar(nanos);
+            }
+          })
+          .doOnError(e -> {
+            if (registrado.compareAndSet(false, true)) {
+              breaker.onError(System.nanoTime() - t0, TimeUnit.NANOSECONDS, e);
+            }
+          })
+          // perdedor del hedge o cliente que se fue: no cuenta ni a favor ni en contra
+          .doOnCancel(() -> {
+            if (registrado.compareAndSet(false, true)) breaker.releasePermission();
+          });
+    });
+  }
+
+  private static boolean reintentable(int status) {
+    return status == 502 || status == 503 || status == 504;
+  }
+
+  /** 5xx tratado como falla del intento (breaker y reintentos). */
+  static final class Reintentable extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Reintentable(int status) {
+      super("Respuesta " + status + " de la función", null, false, false);
+    }
+  }
+
+  /** Últimas latencias exitosas para estimar el p95 del hedge. */
+  static final class Latencias {
+    private static final int MIN_MUESTRAS = 20;
+    private final long[] ventana;
+    private final AtomicInteger pos = new AtomicInteger();
+
+    Latencias(int tamano) {
+      this.ventana = new long[tamano];
+    }
+
+    void registrar(long nanos) {
+      int i = pos.getAndIncrement();
+      ventana[Math.floorMod(i, ventana.length)] = nanos;
+    }
+
+    /** null hasta tener suficientes muestras. */
+    Duration p95() {
+      int n = Math.min(pos.get(), ventana.length);
+      if (n < MIN_MUESTRAS) return null;
+      long[] copia = Arrays.copyOf(ventana, n);
+      Arrays.sort(copia);
+      return Duration.ofNanos(copia[(int) Math.ceil(n * 0.95) - 1]);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.bff.ms.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool de conexiones, timeouts y resiliencia por función (bff.upstream.pools.&lt;nombre&gt;.*; nombre = productos,
+ * bodegas o graphql). Lo que no se configure toma los valores por defecto de {@link Pool}.
+ */
+@ConfigurationProperties(prefix = "bff.upstream")
+public class UpstreamProperties {
+  private Map<String, Pool> pools = new HashMap<>();
+
+  public Map<String, Pool> getPools() { return pools; }
+  public void setPools(Map<String, Pool> pools) { this.pools = pools; }
+
+  public Pool pool(String nombre) {
+    return pools.getOrDefault(nombre, new Pool());
+  }
+
+  public static class Pool {
+    /** Conexiones simultáneas hacia la función. */
+    private int maxConnections = 100;
+    /** Requests esperando conexión; sobre esto fallan de inmediato en vez de encolarse. */
+    private int pendingAcquireMax = 500;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+    /** Menor que el idle timeout del balanceador de Azure (~4 min) para no reusar conexiones ya cerradas. */
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+    /** Renueva las conexiones para repartir carga entre instancias nuevas de la función. */
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+    private Duration evictInBackground = Duration.ofSeconds(30);
+    private Duration connectTimeout = Duration.ofSeconds(3);
+    private Duration responseTimeout = Duration.ofSeconds(30);
+    /** HTTP/2 con negociación ALPN (solo https); cae a HTTP/1.1 si la función no lo ofrece. */
+    private boolean http2 = false;
+
+    /** Reintentos de GET ante errores de conexión/timeout o 502/503/504 (backoff exponencial con jitter). */
+    private int retries = 2;
+    private Duration retryBackoff = Duration.ofMillis(100);
+    private Duration retryMaxBackoff = Duration.ofSeconds(1);
+    /** GET duplicado si el primero tarda más que el p95 reciente (mínimo hedgeMinDelay); gana el primero. */
+    private boolean hedge = false;
+    private Duration hedgeMinDelay = Duration.ofMillis(50);
+
+    /** Circuit breaker: % de fallas (errores o 5xx) en la ventana que lo abre. */
+    private float breakerFailureRate = 50;
+    private int breakerWindow = 20;
+    private int breakerMinCalls = 10;
+    private Duration breakerOpenFor = Duration.ofSeconds(10);
+    private int breakerHalfOpenCalls = 3;
+
+    public int getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+    public int getPendingAcquireMax() { return pendingAcquireMax; }
+    public void setPendingAcquireMax(int pendingAcquireMax) { this.pendingAcquireMax = pendingAcquireMax; }
+    public Duration getPendingAcquireTimeout() { return pendingAcquireTimeout; }
+    public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) { this.pendingAcquireTimeout = pendingAcquireTimeout; }
+    public Duration getMaxIdleTime() { return maxIdleTime; }
+    public void setMaxIdleTime(Duration maxIdleTime) { this.maxIdleTime = maxIdleTime; }
+    public Duration getMaxLifeTime() { return maxLifeTime; }
+    public void setMaxLifeTime(Duration maxLifeTime) { this.maxLifeTime = maxLifeTime; }
+    public Duration getEvictInBackground() { return evictInBackground; }
+    public void setEvictInBackground(Duration evictInBackground) { this.evictInBackground = evictInBackground; }
+    public Duration getConnectTimeout() { return connectTimeout; }
+    public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+    public Duration getResponseTimeout() { return responseTimeout; }
+    public void setResponseTimeout(Duration responseTimeout) { this.responseTimeout = responseTimeout; }
+    public boolean isHttp2() { return http2; }
+    public void setHttp2(boolean http2) { this.http2 = http2; }
+    public int getRetries() { return retries; }
+    public void setRetries(int retries) { this.retries = retries; }
+    public Duration getRetryBackoff() { return retryBackoff; }
+    public void setRetryBackoff(Duration retryBackoff) { this.retryBackoff = retryBackoff; }
+    public Duration getRetryMaxBackoff() { return retryMaxBackoff; }
+    public void setRetryMaxBackoff(Duration retryMaxBackoff) { this.retryMaxBackoff = retryMaxBackoff; }
+    public boolean isHedge() { return hedge; }
+    public void setHedge(boolean hedge) { this.hedge = hedge; }
+    public Duration getHedgeMinDelay() { return hedgeMinDelay; }
+    public void setHedgeMinDelay(Duration hedgeMinDelay) { this.hedgeMinDelay = hedgeMinDelay; }
+    public float getBreakerFailureRate() { return breakerFailureRate; }
+    public void setBreakerFailureRate(float breakerFailureRate) { this.breakerFailureRate = breakerFailureRate; }
+    public int getBreakerWindow() { return breakerWindow; }
+    public void setBreakerWindow(int breakerWindow) { this.breakerWindow = breakerWindow; }
+    public int getBreakerMinCalls() { return breakerMinCalls; }
+    public void setBreakerMinCalls(int breakerMinCalls) { this.breakerMinCalls = breakerMinCalls; }
+    public Duration getBreakerOpenFor() { return breakerOpenFor; }
+    public void setBreakerOpenFor(Duration breakerOpenFor) { this.breakerOpenFor = breakerOpenFor; }
+    public int getBreakerHalfOpenCalls() { return breakerHalfOpenCalls; }
+    public void setBreakerHalfOpenCalls(int breakerHalfOpenCalls) { this.breakerHalfOpenCalls = breakerHalfOpenCalls; }
+  }
+}
@@ -1,50 +1,122 @@
 package com.bff.ms.config;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.StringUtils;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Configuration
-public class WebClientConfig {
+@EnableConfigurationProperties({ UpstreamProperties.class, CacheProperties.class })
+public class WebClientConfig implements DisposableBean {
+
+  private final UpstreamProperties upstream;
+  private final MeterRegistry registry;
+  private final double muestreoAccessLog;
+  private final List<ConnectionProvider> providers = new CopyOnWriteArrayList<>();
+  private final CircuitBreakerRegistry breakers = CircuitBreakerRegistry.ofDefaults();
+
+  public WebClientConfig(UpstreamProperties upstream, MeterRegistry registry,
+      @Value("${bff.accessLog.sampleRate:0.01}") double muestreoAccessLog) {
+    this.upstream = upstream;
+    this.registry = registry;
+    this.muestreoAccessLog = muestreoAccessLog;
+    // resilience4j.circuitbreaker.state / .calls / .failure.rate con tag name=<upstream>
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(breakers).bindTo(registry);
+  }
+
+  /**
+   * Un pool por función, con sus límites y timeouts (bff.upstream.pools.&lt;nombre&gt;). metrics(true)
+   * publica en Micrometer los gauges del pool (reactor.netty.connection.provider.*: total, activas,
+   * ociosas y pendientes), visibles en /actuator/metrics.
+   *
+   * Sin compresión propia del cliente: el conector por defecto pide gzip y descomprime, lo que
+   * obliga a re-leer el cuerpo y pierde Content-Length/Content-Encoding. Así el Accept-Encoding
+   * del cliente llega a la función y la respuesta comprimida pasa tal cual (ver Reenvio).
+   */
+  private ReactorClientHttpConnector connector(String nombre, String base) {
+    UpstreamProperties.Pool p = upstream.pool(nombre);
+    ConnectionProvider provider = ConnectionProvider.builder("bff-" + nombre)
+        .maxConnections(p.getMaxConnections())
+        .pendingAcquireMaxCount(p.getPendingAcquireMax())
+        .pendingAcquireTimeout(p.getPendingAcquireTimeout())
+        .maxIdleTime(p.getMaxIdleTime())
+        .maxLifeTime(p.getMaxLifeTime())
+        .evictInBackground(p.getEvictInBackground())
+        .metrics(true)
+        .build();
+    providers.add(provider);
+
+    HttpClient client = HttpClient.create(provider)
+        .compress(false)
+        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) p.getConnectTimeout().toMillis())
+        .responseTimeout(p.getResponseTimeout());
+    if (p.isHttp2() && base.startsWith("https:")) {
+      client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+    }
+    return new ReactorClientHttpConnector(client);
+  }
+
+  /**
+   * Circuit breaker por función (nombre = upstream): ventana de las últimas N llamadas, se abre
+   * sobre breakerFailureRate % de fallas y pasa a semiabierto solo tras breakerOpenFor.
+   */
+  private ResilienciaFilter resiliencia(String nombre) {
+    UpstreamProperties.Pool p = upstream.pool(nombre);
+    CircuitBreakerConfig cfg = CircuitBreakerConfig.custom()
+        .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+        .slidingWindowSize(p.getBreakerWindow())
+        .minimumNumberOfCalls(p.getBreakerMinCalls())
+        .failureRateThreshold(p.getBreakerFailureRate())
+        .waitDurationInOpenState(p.getBreakerOpenFor())
+        .permittedNumberOfCallsInHalfOpenState(p.getBreakerHalfOpenCalls())
+        .automaticTransitionFromOpenToHalfOpenEnabled(true)
+        .build();
+    return new ResilienciaFilter(nombre, p, breakers.circuitBreaker(nombre, cfg), registry);
+  }
+
+  @Override
+  public void destroy() {
+    for (ConnectionProvider p : providers) p.dispose();
+  }
 
-  private WebClient buildClient(String base) {
+  private WebClient buildClient(String nombre, String base) {
     String clean = base.endsWith("/") ? base.substring(0, base.length()-1) : base;
     return WebClient.builder()
         .baseUrl(clean)
-        .filter((req, next) -> {
-          System.out.println("[BFF] --> " + req.method() + " " + req.url());
-          return next.exchange(req)
-              .doOnNext(resp -> System.out.println("[BFF] <-- " + resp.statusCode().value() + " " + clean));
-        })
+        .clientConnector(connector(nombre, clean))
+        // el primer filtro envuelve a los siguientes: cada reintento/hedge se mide por separado
+        .filter(resiliencia(nombre))
+        .filter(new InstrumentacionFilter(nombre, registry, muestreoAccessLog))
         .build();
   }
 
   @Bean(name = "productosClient")
   WebClient productosClient(@Value("${functions.productosBaseUrl}") String base) {
-    return buildClient(base);
+    return buildClient("productos", base);
   }
 
   @Bean(name = "bodegasClient")
   WebClient bodegasClient(@Value("${functions.bodegasBaseUrl}") String base) {
-    return buildClient(base);
+    return buildClient("bodegas", base);
   }
 
   @Bean(name = "graphqlClient")
-  WebClient graphqlClient(
-      @Value("${functions.graphqlBaseUrl}") String base             
-
-  ) {
-    WebClient.Builder b = WebClient.builder()
-        .baseUrl(base.endsWith("/") ? base.substring(0, base.length()-1) : base)
-        .filter((req, next) -> {
-          System.out.println("[BFF][GQL] --> " + req.method() + " " + req.url());
-          return next.exchange(req)
-              .doOnNext(resp -> System.out.println("[BFF][GQL] <-- " + resp.statusCode().value()));
-        });
-
-    return b.build();
+  WebClient graphqlClient(@Value("${functions.graphqlBaseUrl}") String base) {
+    return buildClient("graphql", base);
   }
 
 }
@@ -0,0 +1,142 @@
+package com.bff.ms.api;
+
+import com.bff.ms.config.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Single-flight, marca de "no cacheable", límite en bytes e invalidación con cargas en vuelo. */
+public class CacheRespuestasTest {
+
+  private final AtomicInteger llamadas = new AtomicInteger();
+  /** Lo que responde la función en cada llamada. */
+  private volatile Mono<ClientResponse> respuesta;
+
+  private CacheProperties props;
+  private CacheRespuestas cache;
+  private WebClient client;
+
+  @BeforeEach
+  void setUp() {
+    props = new CacheProperties();
+    CacheProperties.Ruta ruta = new CacheProperties.Ruta();
+    ruta.setTtl(Duration.ofMinutes(1));
+    props.getRoutes().put("productos", ruta);
+    cache = new CacheRespuestas(props, new Reenvio(1 << 20), new SimpleMeterRegistry());
+    client = WebClient.builder().exchangeFunction(req -> {
+      llamadas.incrementAndGet();
+      return respuesta;
+    }).build();
+    respuesta = Mono.fromSupplier(() -> ok("[1,2,3]"));
+  }
+
+  @Test
+  void requestsConcurrentesHacenUnaSolaLlamada() throws Exception {
+    Sinks.One<ClientResponse> upstream = Sinks.one();
+    respuesta = upstream.asMono();
+
+    List<CompletableFuture<ResponseEntity<Flux<DataBuffer>>>> pendientes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) pendientes.add(get("/").toFuture());
+    assertEquals(1, llamadas.get());
+
+    upstream.tryEmitValue(ok("[1,2,3]"));
+    List<String> resultados = new ArrayList<>();
+    for (CompletableFuture<ResponseEntity<Flux<DataBuffer>>> f : pendientes) {
+      ResponseEntity<Flux<DataBuffer>> r = f.get();
+      assertEquals("[1,2,3]", cuerpo(r));
+      resultados.add(r.getHeaders().getFirst("X-Cache"));
+    }
+    assertEquals(List.of("MISS", "COALESCED", "COALESCED"), resultados);
+
+    assertEquals("HIT", get("/").block().getHeaders().getFirst("X-Cache"));
+    assertEquals(1, llamadas.get());
+  }
+
+  @Test
+  void cargaQueTerminaDespuesDeInvalidarNoSeGuarda() throws Exception {
+    Sinks.One<ClientResponse> upstream = Sinks.one();
+    respuesta = upstream.asMono();
+    CompletableFuture<ResponseEntity<Flux<DataBuffer>>> vieja = get("/").toFuture();
+
+    cache.invalidar("productos");
+    // No se suma a la carga de antes de la escritura
+    respuesta = Mono.fromSupplier(() -> ok("[\"nuevo\"]"));
+    assertEquals("[\"nuevo\"]", cuerpo(get("/").block()));
+    assertEquals(2, llamadas.get());
+
+    upstream.tryEmitValue(ok("[\"viejo\"]"));
+    assertEquals("[\"viejo\"]", cuerpo(vieja.get()));
+
+    ResponseEntity<Flux<DataBuffer>> r = get("/").block();
+    assertEquals("[\"nuevo\"]", cuerpo(r));
+    assertEquals("HIT", r.getHeaders().getFirst("X-Cache"));
+    assertEquals(2, llamadas.get());
+  }
+
+  @Test
+  void respuestaDemasiadoGrandeDejaMarcaYLosSiguientesVanDirecto() {
+    props.setMaxEntryBytes(4);
+
+    assertEquals("[1,2,3]", cuerpo(get("/").block()));
+    assertEquals(2, llamadas.get()); // la carga que no cupo y el reenvío en streaming
+
+    ResponseEntity<Flux<DataBuffer>> r = get("/").block();
+    assertEquals("[1,2,3]", cuerpo(r));
+    assertNull(r.getHeaders().getFirst("X-Cache"));
+    assertEquals(3, llamadas.get());
+  }
+
+  @Test
+  void alPasarMaxBytesDescartaLaMenosUsada() {
+    props.setMaxBytes(14);
+    get("/a").block();
+    get("/b").block();
+    get("/a").block(); // /a pasa a ser la más usada
+    get("/c").block();
+    assertEquals(3, llamadas.get());
+
+    assertEquals("HIT", get("/a").block().getHeaders().getFirst("X-Cache"));
+    assertEquals("HIT", get("/c").block().getHeaders().getFirst("X-Cache"));
+    assertEquals("MISS", get("/b").block().getHeaders().getFirst("X-Cache"));
+    assertEquals(4, llamadas.get());
+  }
+
+  /* ================== Helpers ================== */
+
+  private Mono<ResponseEntity<Flux<DataBuffer>>> get(String uri) {
+    return cache.get("productos", uri, new HttpHeaders(), () -> client.get().uri("http://fn/api/productos" + uri));
+  }
+
+  private static ClientResponse ok(String body) {
+    return ClientResponse.create(HttpStatus.OK)
+        .header(HttpHeaders.CONTENT_TYPE, "application/json")
+        .body(body)
+        .build();
+  }
+
+  private static String cuerpo(ResponseEntity<Flux<DataBuffer>> r) {
+    DataBuffer buf = DataBufferUtils.join(r.getBody()).block();
+    String s = buf.toString(StandardCharsets.UTF_8);
+    DataBufferUtils.release(buf);
+    return s;
+  }
+}
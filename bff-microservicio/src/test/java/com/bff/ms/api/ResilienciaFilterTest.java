@@ -0,0 +1,165 @@
+package com.bff.ms.api;
+
+import com.bff.ms.config.ResilienciaFilter;
+import com.bff.ms.config.UpstreamProperties;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Reintentos solo idempotentes, breaker abierto como 503 y hedge que libera al perdedor. */
+public class ResilienciaFilterTest {
+  private static final Duration ESPERA = Duration.ofSeconds(5);
+
+  private final AtomicInteger llamadas = new AtomicInteger();
+  /** Cuerpos de las respuestas entregadas, para ver cuáles se liberaron. */
+  private final List<AtomicBoolean> liberados = new ArrayList<>();
+
+  private UpstreamProperties.Pool cfg;
+  private SimpleMeterRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    cfg = new UpstreamProperties.Pool();
+    cfg.setRetryBackoff(Duration.ofMillis(1));
+    cfg.setRetryMaxBackoff(Duration.ofMillis(5));
+    registry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  void error503SeReintentaYElUltimoSeDevuelveTalCual() {
+    ResilienciaFilter filtro = filtro(CircuitBreaker.ofDefaults("fn"));
+
+    ClientResponse r = filtro.filter(request(HttpMethod.GET), req -> {
+      llamadas.incrementAndGet();
+      return Mono.just(respuesta(HttpStatus.SERVICE_UNAVAILABLE));
+    }).block(ESPERA);
+
+    assertEquals(503, r.rawStatusCode());
+    assertEquals(3, llamadas.get()); // retries 2 por defecto
+    assertEquals(2.0, registry.counter("bff.upstream.retries", "upstream", "fn").count());
+    // Las respuestas descartadas se liberan; la devuelta queda para el llamador
+    assertTrue(liberados.get(0).get());
+    assertTrue(liberados.get(1).get());
+    assertFalse(liberados.get(2).get());
+  }
+
+  @Test
+  void postNoSeReintenta() {
+    ResilienciaFilter filtro = filtro(CircuitBreaker.ofDefaults("fn"));
+
+    ClientResponse r = filtro.filter(request(HttpMethod.POST), req -> {
+      llamadas.incrementAndGet();
+      return Mono.just(respuesta(HttpStatus.SERVICE_UNAVAILABLE));
+    }).block(ESPERA);
+
+    assertEquals(503, r.rawStatusCode());
+    assertEquals(1, llamadas.get());
+    assertEquals(0.0, registry.counter("bff.upstream.retries", "upstream", "fn").count());
+  }
+
+  @Test
+  void breakerAbiertoNoLlamaYTerminaEn503() {
+    CircuitBreaker breaker = CircuitBreaker.ofDefaults("fn");
+    breaker.transitionToOpenState();
+    ResilienciaFilter filtro = filtro(breaker);
+
+    Throwable e = assertThrows(CallNotPermittedException.class,
+        () -> filtro.filter(request(HttpMethod.GET), req -> {
+          llamadas.incrementAndGet();
+          return Mono.just(respuesta(HttpStatus.OK));
+        }).block(ESPERA));
+
+    assertEquals(0, llamadas.get());
+    assertEquals(0.0, registry.counter("bff.upstream.retries", "upstream", "fn").count());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+        new ErroresUpstream().circuitoAbierto((CallNotPermittedException) e).getStatusCode());
+  }
+
+  @Test
+  void hedgeDevuelveElGanadorYLiberaAlPerdedor() {
+    cfg.setRetries(0);
+    cfg.setHedge(true);
+    cfg.setHedgeMinDelay(Duration.ofMillis(20));
+    CircuitBreaker breaker = CircuitBreaker.of("fn", CircuitBreakerConfig.custom()
+        .permittedNumberOfCallsInHalfOpenState(2)
+        .build());
+    ResilienciaFilter filtro = filtro(breaker);
+
+    // Muestras para el p95: sin ellas no hay hedge
+    for (int i = 0; i < 20; i++) {
+      filtro.filter(request(HttpMethod.GET), req -> Mono.just(respuesta(HttpStatus.OK)))
+          .flatMap(ClientResponse::releaseBody)
+          .block(ESPERA);
+    }
+    // Medio abierto con dos permisos: el perdedor tiene que devolver el suyo
+    breaker.transitionToOpenState();
+    breaker.transitionToHalfOpenState();
+
+    AtomicReference<MonoSink<ClientResponse>> perdedor = new AtomicReference<>();
+    AtomicBoolean cancelado = new AtomicBoolean();
+    ClientResponse ganador = respuesta(HttpStatus.OK);
+    ExchangeFunction next = req -> llamadas.incrementAndGet() == 1
+        ? Mono.create(sink -> {
+            perdedor.set(sink);
+            sink.onCancel(() -> cancelado.set(true));
+          })
+        : Mono.just(ganador);
+
+    assertSame(ganador, filtro.filter(request(HttpMethod.GET), next).block(ESPERA));
+    assertEquals(2, llamadas.get());
+    assertEquals(1.0, registry.counter("bff.upstream.hedges", "upstream", "fn").count());
+    assertTrue(cancelado.get());
+
+    // La respuesta del perdedor que llega tras la cancelación se descarta liberando el cuerpo
+    perdedor.get().success(respuesta(HttpStatus.OK));
+    assertTrue(liberados.get(liberados.size() - 1).get());
+
+    assertEquals(1, breaker.getMetrics().getNumberOfSuccessfulCalls());
+    assertEquals(0, breaker.getMetrics().getNumberOfFailedCalls());
+    assertTrue(breaker.tryAcquirePermission());
+  }
+
+  /* ================== Helpers ================== */
+
+  private ResilienciaFilter filtro(CircuitBreaker breaker) {
+    return new ResilienciaFilter("fn", cfg, breaker, registry);
+  }
+
+  private static ClientRequest request(HttpMethod method) {
+    return ClientRequest.create(method, URI.create("http://fn/api/productos")).build();
+  }
+
+  /** Respuesta cuyo cuerpo marca cuándo alguien lo consume (releaseBody lo hace). */
+  private ClientResponse respuesta(HttpStatus status) {
+    AtomicBoolean liberado = new AtomicBoolean();
+    liberados.add(liberado);
+    DataBuffer buf = DefaultDataBufferFactory.sharedInstance.wrap("{}".getBytes(StandardCharsets.UTF_8));
+    return ClientResponse.create(status)
+        .body(Flux.just(buf).doOnSubscribe(s -> liberado.set(true)))
+        .build();
+  }
+}
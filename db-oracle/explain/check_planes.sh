@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+# Aplica las migraciones y corre la regresión de planes contra una base Oracle local en
+# contenedor (gvenzl/oracle-free). Si el contenedor no existe lo crea con el esquema base.
+#
+#   ORACLE_CONTAINER  nombre del contenedor   (default: inventario-oracle)
+#   ORACLE_IMAGE      imagen                  (default: gvenzl/oracle-free:23-slim)
+#   ORACLE_PASSWORD   clave de SYS/SYSTEM     (default: oracle)
+#   APP_USER / APP_USER_PASSWORD  esquema de la app (default: inventario / inventario)
+set -euo pipefail
+
+DIR="$(cd "$(dirname "$0")/.." && pwd)"
+CONTAINER="${ORACLE_CONTAINER:-inventario-oracle}"
+IMAGE="${ORACLE_IMAGE:-gvenzl/oracle-free:23-slim}"
+APP_USER="${APP_USER:-inventario}"
+APP_USER_PASSWORD="${APP_USER_PASSWORD:-inventario}"
+
+if ! docker ps --format '{{.Names}}' | grep -qx "$CONTAINER"; then
+  echo "Levantando $CONTAINER ($IMAGE)..."
+  docker run -d --name "$CONTAINER" -p 1521:1521 \
+    -e ORACLE_PASSWORD="${ORACLE_PASSWORD:-oracle}" \
+    -e APP_USER="$APP_USER" -e APP_USER_PASSWORD="$APP_USER_PASSWORD" \
+    "$IMAGE" >/dev/null
+  until docker logs "$CONTAINER" 2>&1 | grep -q "DATABASE IS READY TO USE"; do sleep 5; done
+  NUEVO=1
+fi
+
+sql() {
+  docker exec -i "$CONTAINER" sqlplus -S -L "$APP_USER/$APP_USER_PASSWORD@//localhost/FREEPDB1" < "$1"
+}
+
+if [ "${NUEVO:-0}" = 1 ]; then
+  sql "$DIR/schema_inventario.sql"
+fi
+
+for m in "$DIR"/migrations/V*.sql; do
+  echo "Migración $(basename "$m")"
+  sql "$m"
+done
+
+sql "$DIR/explain/check_planes.sql"
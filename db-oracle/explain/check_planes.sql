@@ -0,0 +1,87 @@
+-- Regresión de planes de ejecución para las consultas de PRODUCTOS por bodega.
+--
+-- Corre EXPLAIN PLAN sobre cada consulta y falla (exit != 0 en sqlplus) si PRODUCTOS se
+-- recorre completa o si no se usa el índice esperado. Pensado para la base local en
+-- contenedor (ver check_planes.sh): fija estadísticas sintéticas de una tabla grande para
+-- que el optimizador no prefiera el full scan por la poca cantidad de datos de prueba,
+-- y al final las vuelve a calcular.
+WHENEVER SQLERROR EXIT FAILURE
+SET SERVEROUTPUT ON
+SET FEEDBACK OFF
+
+BEGIN
+  DBMS_STATS.SET_TABLE_STATS(USER, 'PRODUCTOS', numrows => 1000000, numblks => 20000);
+  DBMS_STATS.SET_COLUMN_STATS(USER, 'PRODUCTOS', 'BODEGA_ID', distcnt => 1000, density => 1/1000);
+  DBMS_STATS.SET_COLUMN_STATS(USER, 'PRODUCTOS', 'ID', distcnt => 1000000, density => 1/1000000);
+END;
+/
+
+DECLARE
+  fallas PLS_INTEGER := 0;
+
+  PROCEDURE verificar(nombre VARCHAR2, consulta VARCHAR2, indice VARCHAR2, sin_tabla BOOLEAN) IS
+    full_scans PLS_INTEGER;
+    usa_indice PLS_INTEGER;
+    accesos    PLS_INTEGER;
+  BEGIN
+    DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = nombre;
+    EXECUTE IMMEDIATE 'EXPLAIN PLAN SET STATEMENT_ID = ''' || nombre || ''' FOR ' || consulta;
+
+    SELECT COUNT(*) INTO full_scans FROM PLAN_TABLE
+     WHERE STATEMENT_ID = nombre AND OBJECT_NAME = 'PRODUCTOS'
+       AND OPERATION = 'TABLE ACCESS' AND OPTIONS = 'FULL';
+    SELECT COUNT(*) INTO usa_indice FROM PLAN_TABLE
+     WHERE STATEMENT_ID = nombre AND OBJECT_NAME = indice;
+    SELECT COUNT(*) INTO accesos FROM PLAN_TABLE
+     WHERE STATEMENT_ID = nombre AND OBJECT_NAME = 'PRODUCTOS' AND OPERATION = 'TABLE ACCESS';
+
+    IF full_scans > 0 OR usa_indice = 0 OR (sin_tabla AND accesos > 0) THEN
+      fallas := fallas + 1;
+      DBMS_OUTPUT.PUT_LINE('FALLA ' || nombre || ': se esperaba ' || indice
+        || CASE WHEN sin_tabla THEN ' sin acceso a la tabla' END);
+      FOR r IN (SELECT PLAN_TABLE_OUTPUT FROM TABLE(DBMS_XPLAN.DISPLAY('PLAN_TABLE', nombre, 'BASIC'))) LOOP
+        DBMS_OUTPUT.PUT_LINE('  ' || r.PLAN_TABLE_OUTPUT);
+      END LOOP;
+    ELSE
+      DBMS_OUTPUT.PUT_LINE('OK    ' || nombre);
+    END IF;
+    DELETE FROM PLAN_TABLE WHERE STATEMENT_ID = nombre;
+  END;
+BEGIN
+  -- ProductoFiltro.sql(...) con un bodegaId
+  verificar('listar_bodega',
+    'SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID FROM PRODUCTOS WHERE BODEGA_ID = :1 ORDER BY ID',
+    'IDX_PRODUCTOS_BODEGA_LISTA', TRUE);
+
+  -- Página siguiente por cursor
+  verificar('listar_bodega_pagina',
+    'SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID FROM PRODUCTOS WHERE BODEGA_ID = :1 AND ID > :2'
+    || ' ORDER BY ID FETCH FIRST :3 ROWS ONLY',
+    'IDX_PRODUCTOS_BODEGA_LISTA', TRUE);
+
+  -- Varias bodegas (DataLoader de fn-graphql)
+  verificar('listar_bodegas_in',
+    'SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID FROM PRODUCTOS WHERE BODEGA_ID IN (:1, :2, :3) ORDER BY ID',
+    'IDX_PRODUCTOS_BODEGA_LISTA', TRUE);
+
+  -- BodegasFunction.eliminar: reasignación de productos de la bodega (mismo SQL que el
+  -- código, con :n en vez de ?): a la bodega por defecto o sin bodega
+  verificar('reasignar_bodega',
+    'UPDATE PRODUCTOS SET BODEGA_ID=:1, VERSION=VERSION+1 WHERE BODEGA_ID=:2',
+    'IDX_PRODUCTOS_BODEGA_LISTA', FALSE);
+
+  verificar('reasignar_bodega_null',
+    'UPDATE PRODUCTOS SET BODEGA_ID=NULL, VERSION=VERSION+1 WHERE BODEGA_ID=:1',
+    'IDX_PRODUCTOS_BODEGA_LISTA', FALSE);
+
+  -- Vuelve a las estadísticas reales antes de informar el resultado
+  DBMS_STATS.DELETE_TABLE_STATS(USER, 'PRODUCTOS');
+  DBMS_STATS.GATHER_TABLE_STATS(USER, 'PRODUCTOS');
+
+  IF fallas > 0 THEN
+    RAISE_APPLICATION_ERROR(-20001, fallas || ' plan(es) no usan el índice esperado');
+  END IF;
+END;
+/
+
+EXIT SUCCESS
@@ -0,0 +1,28 @@
+-- V001: índice sobre la FK PRODUCTOS.BODEGA_ID
+--
+-- Sin este índice, BodegasFunction.eliminar (UPDATE PRODUCTOS ... WHERE BODEGA_ID=?) recorre
+-- PRODUCTOS completa, y el DELETE de BODEGAS toma un lock de tabla sobre PRODUCTOS para
+-- validar la FK. Con ID como segunda columna también sirve el orden de la paginación por
+-- cursor (ORDER BY ID) dentro de una bodega.
+--
+-- V002 lo reemplaza por IDX_PRODUCTOS_BODEGA_LISTA, que empieza con las mismas columnas:
+-- si ese índice ya existe no se crea (así una nueva pasada de las migraciones no lo
+-- vuelve a construir para que V002 lo borre).
+-- Idempotente: si el índice ya existe (ORA-00955 / ORA-01408) no hace nada.
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  misma_lista EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -955);
+  PRAGMA EXCEPTION_INIT(misma_lista, -1408);
+  cubierto PLS_INTEGER;
+BEGIN
+  SELECT COUNT(*) INTO cubierto FROM USER_INDEXES WHERE INDEX_NAME = 'IDX_PRODUCTOS_BODEGA_LISTA';
+  IF cubierto = 0 THEN
+    EXECUTE IMMEDIATE 'CREATE INDEX IDX_PRODUCTOS_BODEGA ON PRODUCTOS(BODEGA_ID, ID)';
+  END IF;
+EXCEPTION
+  WHEN ya_existe OR misma_lista THEN NULL;
+END;
+/
@@ -0,0 +1,34 @@
+-- V002: índice de cobertura para el listado de productos por bodega
+--
+-- Contiene todas las columnas que proyecta GET /productos?bodegaId=... (ID, SKU, NOMBRE,
+-- STOCK, PRECIO, BODEGA_ID), así que el listado se resuelve solo con el índice, ya ordenado
+-- por ID, sin ir a la tabla. Cuesta una escritura extra en INSERT y en cambios de esas
+-- columnas.
+--
+-- Empieza con (BODEGA_ID, ID), así que también cubre la FK y la reasignación de
+-- BodegasFunction.eliminar: IDX_PRODUCTOS_BODEGA (V001) queda redundante y se elimina para
+-- no mantener dos índices en cada escritura.
+-- Idempotente: ignora ORA-00955 / ORA-01408 (índice ya existe) y ORA-01418 (ya eliminado).
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  misma_lista EXCEPTION;
+  no_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -955);
+  PRAGMA EXCEPTION_INIT(misma_lista, -1408);
+  PRAGMA EXCEPTION_INIT(no_existe, -1418);
+BEGIN
+  BEGIN
+    EXECUTE IMMEDIATE
+      'CREATE INDEX IDX_PRODUCTOS_BODEGA_LISTA ON PRODUCTOS(BODEGA_ID, ID, STOCK, PRECIO, SKU, NOMBRE)';
+  EXCEPTION
+    WHEN ya_existe OR misma_lista THEN NULL;
+  END;
+  BEGIN
+    EXECUTE IMMEDIATE 'DROP INDEX IDX_PRODUCTOS_BODEGA';
+  EXCEPTION
+    WHEN no_existe THEN NULL;
+  END;
+END;
+/
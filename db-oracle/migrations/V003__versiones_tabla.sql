@@ -0,0 +1,27 @@
+-- V003: contador de cambios por tabla para los ETag de colecciones (GET /productos, /bodegas)
+-- (V007 lo reparte en filas por SLOT)
+--
+-- fn-productos y fn-bodegas lo incrementan en la misma transacción de cada escritura.
+-- Idempotente: si la tabla ya existe (ORA-00955) no hace nada; las filas se insertan
+-- solo si faltan.
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -955);
+BEGIN
+  EXECUTE IMMEDIATE
+    'CREATE TABLE VERSIONES_TABLA (' ||
+    '  TABLA    VARCHAR2(30) PRIMARY KEY,' ||
+    '  VERSION  NUMBER(19) DEFAULT 0 NOT NULL)';
+EXCEPTION
+  WHEN ya_existe THEN NULL;
+END;
+/
+
+MERGE INTO VERSIONES_TABLA v
+USING (SELECT 'PRODUCTOS' AS TABLA FROM DUAL UNION ALL SELECT 'BODEGAS' FROM DUAL) s
+ON (v.TABLA = s.TABLA)
+WHEN NOT MATCHED THEN INSERT (TABLA, VERSION) VALUES (s.TABLA, 0);
+
+COMMIT;
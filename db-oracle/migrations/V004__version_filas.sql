@@ -0,0 +1,23 @@
+-- V004: columna VERSION para control optimista (If-Match) en PRODUCTOS y BODEGAS
+--
+-- Cada UPDATE de la aplicación hace VERSION = VERSION + 1; el ETag de un recurso individual
+-- es esa versión. Las filas existentes parten en 0.
+-- Idempotente: si la columna ya existe (ORA-01430) no hace nada.
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -1430);
+BEGIN
+  BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE PRODUCTOS ADD (VERSION NUMBER(19) DEFAULT 0 NOT NULL)';
+  EXCEPTION
+    WHEN ya_existe THEN NULL;
+  END;
+  BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE BODEGAS ADD (VERSION NUMBER(19) DEFAULT 0 NOT NULL)';
+  EXCEPTION
+    WHEN ya_existe THEN NULL;
+  END;
+END;
+/
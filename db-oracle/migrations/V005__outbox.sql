@@ -0,0 +1,66 @@
+-- V005: tabla OUTBOX (outbox transaccional) con SEQ único por SUBJECT y lock del relay
+--
+-- Outbox.add calcula SEQ como MAX(SEQ)+1 del SUBJECT; con UX_OUTBOX_SUBJECT_SEQ dos
+-- transacciones que calculan el mismo valor no pueden confirmar ambas: la segunda espera a
+-- la primera, recibe ORA-00001 y Outbox.add reintenta con el MAX ya confirmado.
+-- MARCAS_PROCESO 'OUTBOX_RELAY': fila que el relay bloquea (FOR UPDATE SKIP LOCKED) para que
+-- una sola instancia a la vez envíe, en orden de ID, los eventos pendientes.
+--
+-- Bases que ya tenían OUTBOX: los SEQ repetidos de un SUBJECT se corren hacia arriba
+-- (nunca bajan, para no quedar detrás de lo que el consumidor ya aplicó) antes de crear el
+-- índice único, y se elimina IDX_OUTBOX_SUBJECT_SEQ, que queda cubierto por él.
+-- Idempotente: ignora ORA-00955 (ya existe), ORA-01408 (columnas ya indexadas) y
+-- ORA-01418 (índice ya eliminado).
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  ya_indexado EXCEPTION;
+  no_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -955);
+  PRAGMA EXCEPTION_INIT(ya_indexado, -1408);
+  PRAGMA EXCEPTION_INIT(no_existe, -1418);
+
+  PROCEDURE ejecutar(ddl VARCHAR2) IS
+  BEGIN
+    EXECUTE IMMEDIATE ddl;
+  EXCEPTION
+    WHEN ya_existe OR ya_indexado OR no_existe THEN NULL;
+  END;
+BEGIN
+  ejecutar(
+    'CREATE TABLE OUTBOX (' ||
+    '  ID          NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,' ||
+    '  SUBJECT     VARCHAR2(200) NOT NULL,' ||
+    '  EVENT_TYPE  VARCHAR2(100) NOT NULL,' ||
+    '  SEQ         NUMBER(19) NOT NULL,' ||
+    '  DATA        CLOB,' ||
+    '  CREATED_AT  TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,' ||
+    '  SENT_AT     TIMESTAMP)');
+
+  -- SEQ + (filas anteriores con SEQ repetido): estrictamente creciente dentro del SUBJECT
+  EXECUTE IMMEDIATE
+    'MERGE INTO OUTBOX o ' ||
+    'USING (SELECT ROWID AS RID, SEQ + ROW_NUMBER() OVER (PARTITION BY SUBJECT ORDER BY SEQ, ID) ' ||
+    '                       - DENSE_RANK() OVER (PARTITION BY SUBJECT ORDER BY SEQ) AS NUEVO ' ||
+    '       FROM OUTBOX) s ' ||
+    'ON (o.ROWID = s.RID) ' ||
+    'WHEN MATCHED THEN UPDATE SET o.SEQ = s.NUEVO WHERE o.SEQ <> s.NUEVO';
+
+  ejecutar('DROP INDEX IDX_OUTBOX_SUBJECT_SEQ');
+  ejecutar('CREATE UNIQUE INDEX UX_OUTBOX_SUBJECT_SEQ ON OUTBOX(SUBJECT, SEQ)');
+  ejecutar('CREATE INDEX IDX_OUTBOX_PENDIENTES ON OUTBOX(SENT_AT, ID)');
+
+  ejecutar(
+    'CREATE TABLE MARCAS_PROCESO (' ||
+    '  NOMBRE  VARCHAR2(50) PRIMARY KEY,' ||
+    '  VALOR   NUMBER(19) DEFAULT 0 NOT NULL)');
+END;
+/
+
+MERGE INTO MARCAS_PROCESO m
+USING (SELECT 'OUTBOX_RELAY' AS NOMBRE FROM DUAL) s
+ON (m.NOMBRE = s.NOMBRE)
+WHEN NOT MATCHED THEN INSERT (NOMBRE, VALOR) VALUES (s.NOMBRE, 0);
+
+COMMIT;
@@ -0,0 +1,50 @@
+-- V006: umbrales de stock bajo por producto/bodega y marca del resumen por bodega
+--
+-- UMBRALES_STOCK: fn-productos la carga completa y la guarda en memoria (UMBRALES_TTL_MS).
+-- MARCAS_PROCESO (la crea V005 si falta): último ID de OUTBOX ya incluido en
+-- Inventario.Bodega.StockBajoResumen.
+-- IDX_OUTBOX_TIPO: el resumen lee las alertas nuevas por EVENT_TYPE e ID > marca.
+-- Idempotente: ignora ORA-00955 (ya existe) y ORA-01408 (columnas ya indexadas).
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  ya_indexado EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -955);
+  PRAGMA EXCEPTION_INIT(ya_indexado, -1408);
+
+  PROCEDURE ejecutar(ddl VARCHAR2) IS
+  BEGIN
+    EXECUTE IMMEDIATE ddl;
+  EXCEPTION
+    WHEN ya_existe OR ya_indexado THEN NULL;
+  END;
+BEGIN
+  ejecutar(
+    'CREATE TABLE UMBRALES_STOCK (' ||
+    '  PRODUCTO_ID  NUMBER,' ||
+    '  BODEGA_ID    NUMBER,' ||
+    '  UMBRAL       NUMBER(10) NOT NULL,' ||
+    '  CONSTRAINT CK_UMBRALES_STOCK_OBJETIVO CHECK (' ||
+    '    (PRODUCTO_ID IS NULL AND BODEGA_ID IS NOT NULL) OR (PRODUCTO_ID IS NOT NULL AND BODEGA_ID IS NULL)),' ||
+    '  CONSTRAINT FK_UMBRALES_PRODUCTO FOREIGN KEY (PRODUCTO_ID) REFERENCES PRODUCTOS(ID) ON DELETE CASCADE,' ||
+    '  CONSTRAINT FK_UMBRALES_BODEGA FOREIGN KEY (BODEGA_ID) REFERENCES BODEGAS(ID) ON DELETE CASCADE)');
+  ejecutar('CREATE UNIQUE INDEX UX_UMBRALES_PRODUCTO ON UMBRALES_STOCK(PRODUCTO_ID)');
+  ejecutar('CREATE UNIQUE INDEX UX_UMBRALES_BODEGA ON UMBRALES_STOCK(BODEGA_ID)');
+
+  ejecutar(
+    'CREATE TABLE MARCAS_PROCESO (' ||
+    '  NOMBRE  VARCHAR2(50) PRIMARY KEY,' ||
+    '  VALOR   NUMBER(19) DEFAULT 0 NOT NULL)');
+
+  ejecutar('CREATE INDEX IDX_OUTBOX_TIPO ON OUTBOX(EVENT_TYPE, ID)');
+END;
+/
+
+-- Arranca desde el final del OUTBOX: las alertas ya enviadas no se vuelven a resumir
+MERGE INTO MARCAS_PROCESO m
+USING (SELECT 'RESUMEN_STOCK_BAJO' AS NOMBRE, (SELECT NVL(MAX(ID), 0) FROM OUTBOX) AS VALOR FROM DUAL) s
+ON (m.NOMBRE = s.NOMBRE)
+WHEN NOT MATCHED THEN INSERT (NOMBRE, VALOR) VALUES (s.NOMBRE, s.VALOR);
+
+COMMIT;
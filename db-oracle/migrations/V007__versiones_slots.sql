@@ -0,0 +1,44 @@
+-- V007: VERSIONES_TABLA repartida en filas (TABLA, SLOT)
+--
+-- Con una sola fila por tabla, el MERGE de Versiones.incrementar serializaba todas las
+-- escrituras de PRODUCTOS (y de BODEGAS) en el lock de esa fila. Ahora cada transacción
+-- incrementa uno de 32 slots al azar y el ETag de la colección es SUM(VERSION).
+-- El contador que ya existía queda en SLOT 0, así la suma sigue desde donde iba y no se
+-- repite un ETag ya entregado.
+-- Idempotente: ignora ORA-01430 (columna ya existe); la PK solo se rehace si todavía es
+-- de una columna; los slots se insertan solo si faltan.
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -1430);
+  pk_nombre  VARCHAR2(128);
+  columnas   PLS_INTEGER;
+BEGIN
+  BEGIN
+    EXECUTE IMMEDIATE 'ALTER TABLE VERSIONES_TABLA ADD (SLOT NUMBER(3) DEFAULT 0 NOT NULL)';
+  EXCEPTION
+    WHEN ya_existe THEN NULL;
+  END;
+
+  SELECT c.CONSTRAINT_NAME, COUNT(*) INTO pk_nombre, columnas
+  FROM USER_CONSTRAINTS c JOIN USER_CONS_COLUMNS cc ON cc.CONSTRAINT_NAME = c.CONSTRAINT_NAME
+  WHERE c.TABLE_NAME = 'VERSIONES_TABLA' AND c.CONSTRAINT_TYPE = 'P'
+  GROUP BY c.CONSTRAINT_NAME;
+
+  IF columnas = 1 THEN
+    EXECUTE IMMEDIATE 'ALTER TABLE VERSIONES_TABLA DROP CONSTRAINT ' || pk_nombre || ' DROP INDEX';
+    EXECUTE IMMEDIATE
+      'ALTER TABLE VERSIONES_TABLA ADD CONSTRAINT PK_VERSIONES_TABLA PRIMARY KEY (TABLA, SLOT)';
+  END IF;
+END;
+/
+
+MERGE INTO VERSIONES_TABLA v
+USING (SELECT t.TABLA, s.SLOT
+       FROM (SELECT 'PRODUCTOS' AS TABLA FROM DUAL UNION ALL SELECT 'BODEGAS' FROM DUAL) t,
+            (SELECT LEVEL - 1 AS SLOT FROM DUAL CONNECT BY LEVEL <= 32) s) n
+ON (v.TABLA = n.TABLA AND v.SLOT = n.SLOT)
+WHEN NOT MATCHED THEN INSERT (TABLA, SLOT, VERSION) VALUES (n.TABLA, n.SLOT, 0);
+
+COMMIT;
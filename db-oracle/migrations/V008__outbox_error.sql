@@ -0,0 +1,17 @@
+-- V008: OUTBOX.ERROR para los eventos que el relay no puede enviar nunca
+--
+-- Event Grid rechaza un request de más de 1 MB; un evento que solo ya supera ese tamaño
+-- fallaría en cada intento y dejaría detenidas todas las filas posteriores. OutboxRelay lo
+-- saca de los pendientes (SENT_AT) con el motivo en ERROR, y purge no borra esas filas.
+-- Idempotente: ignora ORA-01430 (columna ya existe).
+WHENEVER SQLERROR EXIT FAILURE
+
+DECLARE
+  ya_existe EXCEPTION;
+  PRAGMA EXCEPTION_INIT(ya_existe, -1430);
+BEGIN
+  EXECUTE IMMEDIATE 'ALTER TABLE OUTBOX ADD (ERROR VARCHAR2(400))';
+EXCEPTION
+  WHEN ya_existe THEN NULL;
+END;
+/
@@ -3,7 +3,8 @@ CREATE TABLE BODEGAS (
   ID           NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
   CODIGO       VARCHAR2(50) NOT NULL UNIQUE,
   NOMBRE       VARCHAR2(200) NOT NULL,
-  DIRECCION    VARCHAR2(200)
+  DIRECCION    VARCHAR2(200),
+  VERSION      NUMBER(19) DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE PRODUCTOS (
@@ -13,13 +14,64 @@ CREATE TABLE PRODUCTOS (
   STOCK        NUMBER(10) DEFAULT 0 NOT NULL,
   PRECIO       NUMBER(10,2) DEFAULT 0 NOT NULL,
   BODEGA_ID    NUMBER,
+  VERSION      NUMBER(19) DEFAULT 0 NOT NULL,
   CONSTRAINT FK_PRODUCTOS_BODEGA
     FOREIGN KEY (BODEGA_ID) REFERENCES BODEGAS(ID)
 );
 
+-- Outbox transaccional: los eventos se escriben en la misma transacción que el cambio
+-- y el relay de cada función los envía a Event Grid (SENT_AT queda con la fecha de envío)
+CREATE TABLE OUTBOX (
+  ID           NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  SUBJECT      VARCHAR2(200) NOT NULL,
+  EVENT_TYPE   VARCHAR2(100) NOT NULL,
+  SEQ          NUMBER(19) NOT NULL,
+  DATA         CLOB,
+  CREATED_AT   TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,
+  SENT_AT      TIMESTAMP,
+  -- Motivo si el relay lo descartó sin enviar (evento sobre el límite de Event Grid)
+  ERROR        VARCHAR2(400)
+);
+
+-- Contador de cambios por tabla: ETag de las colecciones (se incrementa en cada escritura).
+-- Repartido en 32 filas (SLOT) por tabla para que las escrituras no compitan por una sola;
+-- la versión es SUM(VERSION)
+CREATE TABLE VERSIONES_TABLA (
+  TABLA        VARCHAR2(30) NOT NULL,
+  SLOT         NUMBER(3) DEFAULT 0 NOT NULL,
+  VERSION      NUMBER(19) DEFAULT 0 NOT NULL,
+  CONSTRAINT PK_VERSIONES_TABLA PRIMARY KEY (TABLA, SLOT)
+);
+
+-- Umbrales de stock bajo por producto o por bodega (uno de los dos); sin fila aplica UMBRAL_STOCK
+CREATE TABLE UMBRALES_STOCK (
+  PRODUCTO_ID  NUMBER,
+  BODEGA_ID    NUMBER,
+  UMBRAL       NUMBER(10) NOT NULL,
+  CONSTRAINT CK_UMBRALES_STOCK_OBJETIVO
+    CHECK ((PRODUCTO_ID IS NULL AND BODEGA_ID IS NOT NULL) OR (PRODUCTO_ID IS NOT NULL AND BODEGA_ID IS NULL)),
+  CONSTRAINT FK_UMBRALES_PRODUCTO FOREIGN KEY (PRODUCTO_ID) REFERENCES PRODUCTOS(ID) ON DELETE CASCADE,
+  CONSTRAINT FK_UMBRALES_BODEGA FOREIGN KEY (BODEGA_ID) REFERENCES BODEGAS(ID) ON DELETE CASCADE
+);
+
+-- Marcas de procesos periódicos (último ID de OUTBOX resumido, lock del relay, etc.)
+CREATE TABLE MARCAS_PROCESO (
+  NOMBRE       VARCHAR2(50) PRIMARY KEY,
+  VALOR        NUMBER(19) DEFAULT 0 NOT NULL
+);
+
 -- Índices útiles
 CREATE INDEX IDX_PRODUCTOS_NOMBRE ON PRODUCTOS(NOMBRE);
 CREATE INDEX IDX_BODEGAS_NOMBRE ON BODEGAS(NOMBRE);
+-- Bases existentes: aplicar migrations/V*.sql en orden (check_planes.sh lo hace en local)
+-- Cubre la FK BODEGA_ID y el listado por bodega (ver migrations/V002)
+CREATE INDEX IDX_PRODUCTOS_BODEGA_LISTA ON PRODUCTOS(BODEGA_ID, ID, STOCK, PRECIO, SKU, NOMBRE);
+-- Único: dos eventos de un mismo SUBJECT no pueden quedar con el mismo SEQ (Outbox.add reintenta)
+CREATE UNIQUE INDEX UX_OUTBOX_SUBJECT_SEQ ON OUTBOX(SUBJECT, SEQ);
+CREATE INDEX IDX_OUTBOX_PENDIENTES ON OUTBOX(SENT_AT, ID);
+CREATE INDEX IDX_OUTBOX_TIPO ON OUTBOX(EVENT_TYPE, ID);
+CREATE UNIQUE INDEX UX_UMBRALES_PRODUCTO ON UMBRALES_STOCK(PRODUCTO_ID);
+CREATE UNIQUE INDEX UX_UMBRALES_BODEGA ON UMBRALES_STOCK(BODEGA_ID);
 
 -- Datos de prueba
 INSERT INTO BODEGAS (CODIGO, NOMBRE, DIRECCION) VALUES ('BOD-CL-01', 'Bodega Central', 'Av. Principal 123');
@@ -30,4 +82,11 @@ VALUES ('SKU-0001', 'Teclado Mecánico', 50, 39990, 1);
 INSERT INTO PRODUCTOS (SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID)
 VALUES ('SKU-0002', 'Mouse Inalámbrico', 100, 19990, 1);
 
+INSERT INTO VERSIONES_TABLA (TABLA, SLOT, VERSION)
+SELECT t.TABLA, s.SLOT, 0
+FROM (SELECT 'PRODUCTOS' AS TABLA FROM DUAL UNION ALL SELECT 'BODEGAS' FROM DUAL) t,
+     (SELECT LEVEL - 1 AS SLOT FROM DUAL CONNECT BY LEVEL <= 32) s;
+INSERT INTO MARCAS_PROCESO (NOMBRE, VALOR) VALUES ('RESUMEN_STOCK_BAJO', 0);
+INSERT INTO MARCAS_PROCESO (NOMBRE, VALOR) VALUES ('OUTBOX_RELAY', 0);
+
 COMMIT;
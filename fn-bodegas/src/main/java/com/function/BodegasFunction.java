@@ -1,8 +1,14 @@
 package com.function;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.cache.CachedJson;
+import com.function.cache.ETags;
+import com.function.cache.TtlCache;
 import com.function.db.Db;
+import com.function.db.JsonRows;
+import com.function.db.Versiones;
 import com.function.model.Bodega;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.*;
@@ -10,13 +16,26 @@ import com.microsoft.azure.functions.annotation.*;
 import java.io.IOException;
 import java.sql.*;
 import java.util.*;
-import com.function.events.EventBusEG;
+import com.function.events.Outbox;
+import com.function.events.OutboxRelay;
 
 public class BodegasFunction {
 
   private static final ObjectMapper MAPPER = new ObjectMapper()
       .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
 
+  /**
+   * GET /bodegas/{id} ya serializado, por instancia. Cada escritura invalida la cache de la
+   * instancia que la atiende; las demás pueden servir el valor anterior hasta BODEGAS_CACHE_TTL_MS.
+   */
+  static final TtlCache<Long, CachedJson> CACHE = new TtlCache<>(
+      Integer.parseInt(System.getenv().getOrDefault("BODEGAS_CACHE_SIZE", "1000")),
+      Long.parseLong(System.getenv().getOrDefault("BODEGAS_CACHE_TTL_MS", "300000")));
+
+  /** Con REQUIRE_IF_MATCH=true un PUT sin If-Match ni "version" responde 428. */
+  private static final boolean REQUIRE_IF_MATCH =
+      Boolean.parseBoolean(System.getenv().getOrDefault("REQUIRE_IF_MATCH", "false"));
+
   @FunctionName("bodegas")
   public HttpResponseMessage bodegasRoot(
       @HttpTrigger(
@@ -62,23 +81,43 @@ public class BodegasFunction {
   }
 
   private HttpResponseMessage listar(HttpRequestMessage<?> req) throws SQLException, IOException {
+    // La versión se lee antes que las filas: si cambia entre medio, el ETag queda atrás y el
+    // próximo GET vuelve a traer la lista (nunca al revés)
+    String etag = ETags.version(Versiones.BODEGAS, Versiones.actual(Versiones.BODEGAS));
+    if (ETags.coincide(ETags.ifNoneMatch(req), etag)) return notModified(req, etag);
+
     try (Connection con = Db.connect();
          PreparedStatement ps = con.prepareStatement(
-             "SELECT ID, CODIGO, NOMBRE, DIRECCION FROM BODEGAS ORDER BY ID");
-         ResultSet rs = ps.executeQuery()) {
-      List<Bodega> out = new ArrayList<>();
-      while (rs.next()) out.add(map(rs));
-      return json(req, out, HttpStatus.OK);
+             "SELECT ID, CODIGO, NOMBRE, DIRECCION FROM BODEGAS ORDER BY ID")) {
+      ps.setFetchSize(JsonRows.FETCH_SIZE);
+      try (ResultSet rs = ps.executeQuery()) {
+        return req.createResponseBuilder(HttpStatus.OK)
+            .header("Content-Type", "application/json")
+            .header("ETag", etag)
+            .body(JsonRows.array(rs, BodegasFunction::writeRow))
+            .build();
+      }
     }
   }
 
   private HttpResponseMessage obtener(HttpRequestMessage<?> req, long id) throws SQLException, IOException {
+    String ifNoneMatch = ETags.ifNoneMatch(req);
+    CachedJson cached = CACHE.get(id);
+    if (cached != null) return conETag(req, cached, ifNoneMatch);
+
+    long gen = CACHE.generation();
     try (Connection con = Db.connect();
          PreparedStatement ps = con.prepareStatement(
-             "SELECT ID, CODIGO, NOMBRE, DIRECCION FROM BODEGAS WHERE ID=?")) {
+             "SELECT ID, CODIGO, NOMBRE, DIRECCION, VERSION FROM BODEGAS WHERE ID=?")) {
       ps.setLong(1, id);
       try (ResultSet rs = ps.executeQuery()) {
-        if (rs.next()) return json(req, map(rs), HttpStatus.OK);
+        if (rs.next()) {
+          Bodega b = map(rs);
+          b.setVersion(rs.getLong("VERSION"));
+          CachedJson body = new CachedJson(MAPPER.writeValueAsString(b), b.getVersion());
+          CACHE.put(id, body, gen);
+          return conETag(req, body, ifNoneMatch);
+        }
         return req.createResponseBuilder(HttpStatus.NOT_FOUND).body("No encontrado").build();
       }
     }
@@ -102,32 +141,44 @@ public class BodegasFunction {
             .build();
       }
 
-      try (Connection con = Db.connect();
-           PreparedStatement ps = con.prepareStatement(
-               "INSERT INTO BODEGAS (CODIGO, NOMBRE, DIRECCION) VALUES (?,?,?)")) {
-        ps.setString(1, in.getCodigo());
-        ps.setString(2, in.getNombre());
-        ps.setString(3, in.getDireccion());
-        int rows = ps.executeUpdate();
-        if (rows > 0) {
-          Long newId = fetchIdBodegaByCodigo(con, in.getCodigo());
-          Map<String,Object> data = new HashMap<>();
-          if (newId != null) data.put("id", newId);
-          data.put("codigo", in.getCodigo());
-          data.put("nombre", in.getNombre());
-          data.put("direccion", in.getDireccion());
-          EventBusEG.publish("Inventario.Bodega.Creada",
-              newId != null ? "/bodegas/"+newId : "/bodegas", data);
-
-          return req.createResponseBuilder(HttpStatus.CREATED)
+      try (Connection con = Db.connect()) {
+        con.setAutoCommit(false);
+        try (PreparedStatement ps = con.prepareStatement(
+                 "INSERT INTO BODEGAS (CODIGO, NOMBRE, DIRECCION) VALUES (?,?,?)",
+                 new String[] { "ID" })) {
+          ps.setString(1, in.getCodigo());
+          ps.setString(2, in.getNombre());
+          ps.setString(3, in.getDireccion());
+          int rows = ps.executeUpdate();
+          if (rows > 0) {
+            Long newId = generatedId(ps);
+            in.setId(newId);
+            Map<String,Object> data = new HashMap<>();
+            if (newId != null) data.put("id", newId);
+            data.put("codigo", in.getCodigo());
+            data.put("nombre", in.getNombre());
+            data.put("direccion", in.getDireccion());
+            Outbox.add(con, "Inventario.Bodega.Creada",
+                newId != null ? "/bodegas/"+newId : "/bodegas", data);
+            Versiones.incrementar(con, Versiones.BODEGAS);
+            con.commit();
+            Versiones.olvidar(Versiones.BODEGAS);
+            OutboxRelay.wake();
+
+            in.setVersion(0L);
+            return json(req, in, HttpStatus.CREATED);
+          }
+          con.rollback();
+          return req.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
               .header("Content-Type","application/json")
-              .body("{\"status\":\"created\"}")
+              .body("{\"error\":\"Insert no afectó filas\"}")
               .build();
+        } catch (SQLException ex) {
+          con.rollback();
+          throw ex;
+        } finally {
+          con.setAutoCommit(true);
         }
-        return req.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
-            .header("Content-Type","application/json")
-            .body("{\"error\":\"Insert no afectó filas\"}")
-            .build();
       }
     } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
       return req.createResponseBuilder(HttpStatus.BAD_REQUEST)
@@ -151,29 +202,80 @@ public class BodegasFunction {
     }
   }
 
+  /**
+   * PUT con control optimista: si viene If-Match (o "version" en el body) el UPDATE exige esa
+   * VERSION; la fila nueva vuelve en el mismo statement (RETURNING), sin releer.
+   */
   private HttpResponseMessage actualizar(HttpRequestMessage<Optional<String>> req, long id) throws Exception {
     Bodega in = MAPPER.readValue(req.getBody().orElse("{}"), Bodega.class);
-    try (Connection con = Db.connect();
-         PreparedStatement ps = con.prepareStatement(
-             "UPDATE BODEGAS SET CODIGO=?, NOMBRE=?, DIRECCION=? WHERE ID=?")) {
-      ps.setString(1, in.getCodigo());
-      ps.setString(2, in.getNombre());
-      ps.setString(3, in.getDireccion());
-      ps.setLong(4, id);
-      int rows = ps.executeUpdate();
-      if (rows == 0) return req.createResponseBuilder(HttpStatus.NOT_FOUND).build();
-      Map<String,Object> data = new HashMap<>();
-      data.put("id", id);
-      data.put("codigo", in.getCodigo());
-      data.put("nombre", in.getNombre());
-      data.put("direccion", in.getDireccion());
-      EventBusEG.publish("Inventario.Bodega.Actualizada", "/bodegas/"+id, data);
-
-      return obtener(req, id);
+    List<Long> esperadas = ETags.ifMatch(req);
+    if (esperadas == null && in.getVersion() != null) esperadas = List.of(in.getVersion());
+    if (esperadas == null && REQUIRE_IF_MATCH) {
+      return req.createResponseBuilder(HttpStatus.PRECONDITION_REQUIRED)
+          .header("Content-Type", "application/json")
+          .body("{\"error\":\"Falta If-Match\"}")
+          .build();
     }
+
+    Bodega out;
+    try (Connection con = Db.connect()) {
+      con.setAutoCommit(false);
+      try (CallableStatement cs = con.prepareCall(
+               "BEGIN UPDATE BODEGAS SET CODIGO=?, NOMBRE=?, DIRECCION=?, VERSION=VERSION+1" +
+               " WHERE ID=?" + condicionVersion(esperadas) +
+               " RETURNING CODIGO, NOMBRE, DIRECCION, VERSION INTO ?, ?, ?, ?; ? := SQL%ROWCOUNT; END;")) {
+        int i = 1;
+        cs.setString(i++, in.getCodigo());
+        cs.setString(i++, in.getNombre());
+        cs.setString(i++, in.getDireccion());
+        cs.setLong(i++, id);
+        if (esperadas != null) {
+          for (Long v : esperadas) cs.setLong(i++, v);
+        }
+        int ret = i;
+        cs.registerOutParameter(ret, Types.VARCHAR);
+        cs.registerOutParameter(ret + 1, Types.VARCHAR);
+        cs.registerOutParameter(ret + 2, Types.VARCHAR);
+        cs.registerOutParameter(ret + 3, Types.NUMERIC);
+        cs.registerOutParameter(ret + 4, Types.INTEGER);
+        cs.execute();
+
+        if (cs.getInt(ret + 4) == 0) {
+          con.rollback();
+          return sinActualizar(req, con, id);
+        }
+        out = new Bodega(id, cs.getString(ret), cs.getString(ret + 1), cs.getString(ret + 2));
+        out.setVersion(cs.getLong(ret + 3));
+
+        Map<String,Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("codigo", out.getCodigo());
+        data.put("nombre", out.getNombre());
+        data.put("direccion", out.getDireccion());
+        data.put("version", out.getVersion());
+        Outbox.add(con, "Inventario.Bodega.Actualizada", "/bodegas/"+id, data);
+        Versiones.incrementar(con, Versiones.BODEGAS);
+        con.commit();
+      } catch (SQLException ex) {
+        con.rollback();
+        throw ex;
+      } finally {
+        con.setAutoCommit(true);
+      }
+    }
+    CACHE.invalidate(id);
+    Versiones.olvidar(Versiones.BODEGAS);
+    OutboxRelay.wake();
+
+    return req.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .header("ETag", ETags.fila(out.getVersion()))
+        .body(MAPPER.writeValueAsString(out))
+        .build();
   }
 
   private HttpResponseMessage eliminar(HttpRequestMessage<?> req, long id) throws SQLException {
+  List<Long> esperadas = ETags.ifMatch(req);
   String onDelete = Optional.ofNullable(System.getenv("ON_DELETE_BODEGA")).orElse("NULL").toUpperCase();
   Long defId = null;
   if ("DEFAULT".equals(onDelete)) {
@@ -187,34 +289,51 @@ public class BodegasFunction {
   try (Connection con = Db.connect()) {
     con.setAutoCommit(false);
     try {
+      int reasignados;
       if ("DEFAULT".equals(onDelete) && defId != null) {
         try (PreparedStatement ps = con.prepareStatement(
-            "UPDATE PRODUCTOS SET BODEGA_ID=? WHERE BODEGA_ID=?")) {
+            "UPDATE PRODUCTOS SET BODEGA_ID=?, VERSION=VERSION+1 WHERE BODEGA_ID=?")) {
           ps.setLong(1, defId);
           ps.setLong(2, id);
-          ps.executeUpdate();
+          reasignados = ps.executeUpdate();
         }
       } else {
         try (PreparedStatement ps = con.prepareStatement(
-            "UPDATE PRODUCTOS SET BODEGA_ID=NULL WHERE BODEGA_ID=?")) {
+            "UPDATE PRODUCTOS SET BODEGA_ID=NULL, VERSION=VERSION+1 WHERE BODEGA_ID=?")) {
           ps.setLong(1, id);
-          ps.executeUpdate();
+          reasignados = ps.executeUpdate();
         }
       }
 
       int rows;
-      try (PreparedStatement ps = con.prepareStatement("DELETE FROM BODEGAS WHERE ID=?")) {
-        ps.setLong(1, id);
+      try (PreparedStatement ps = con.prepareStatement(
+               "DELETE FROM BODEGAS WHERE ID=?" + condicionVersion(esperadas))) {
+        int i = 1;
+        ps.setLong(i++, id);
+        if (esperadas != null) {
+          for (Long v : esperadas) ps.setLong(i++, v);
+        }
         rows = ps.executeUpdate();
       }
 
       if (rows > 0) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("reasignados", reasignados);
+        // Bodega que recibió los productos; null si quedaron sin bodega
+        data.put("reasignadosA", defId);
+        Outbox.add(con, "Inventario.Bodega.Eliminada", "/bodegas/"+id, data);
+        Versiones.incrementar(con, Versiones.BODEGAS);
+        if (reasignados > 0) Versiones.incrementar(con, Versiones.PRODUCTOS);
         con.commit();
-        EventBusEG.publish("Inventario.Bodega.Eliminada", "/bodegas/"+id, Map.of("id", id));
+        CACHE.invalidate(id);
+        Versiones.olvidar(Versiones.BODEGAS);
+        OutboxRelay.wake();
 
         return req.createResponseBuilder(HttpStatus.NO_CONTENT).build();
       } else {
         con.rollback();
+        if (esperadas != null) return sinActualizar(req, con, id);
         return req.createResponseBuilder(HttpStatus.NOT_FOUND).build();
       }
 
@@ -227,11 +346,46 @@ public class BodegasFunction {
   }
 }
 
-  private static Long fetchIdBodegaByCodigo(Connection con, String codigo) {
-    try (PreparedStatement q = con.prepareStatement("SELECT ID FROM BODEGAS WHERE CODIGO=?")) {
-      q.setString(1, codigo);
-      try (ResultSet rs = q.executeQuery()) { return rs.next() ? rs.getLong(1) : null; }
-    } catch (SQLException e) { return null; }
+  /** null: sin condición; lista vacía: ningún If-Match válido, no puede coincidir. */
+  private static String condicionVersion(List<Long> esperadas) {
+    if (esperadas == null) return "";
+    if (esperadas.isEmpty()) return " AND 1=0";
+    return " AND VERSION IN (" + String.join(", ", Collections.nCopies(esperadas.size(), "?")) + ")";
+  }
+
+  /** El UPDATE/DELETE condicional no tocó filas: o no existe (404) o cambió de versión (412). */
+  private static HttpResponseMessage sinActualizar(HttpRequestMessage<?> req, Connection con, long id)
+      throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT VERSION FROM BODEGAS WHERE ID=?")) {
+      ps.setLong(1, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) return req.createResponseBuilder(HttpStatus.NOT_FOUND).build();
+        long actual = rs.getLong(1);
+        return req.createResponseBuilder(HttpStatus.PRECONDITION_FAILED)
+            .header("Content-Type", "application/json")
+            .header("ETag", ETags.fila(actual))
+            .body("{\"error\":\"La versión no coincide\",\"version\":" + actual + "}")
+            .build();
+      }
+    }
+  }
+
+  /** ID asignado por la identity, devuelto en el mismo INSERT (RETURNING ID INTO en Oracle). */
+  private static Long generatedId(PreparedStatement ps) throws SQLException {
+    try (ResultSet keys = ps.getGeneratedKeys()) { return keys.next() ? keys.getLong(1) : null; }
+  }
+
+  /**
+   * Mismo formato que la serialización de {@link Bodega} con Jackson, salvo "version", que solo
+   * trae el GET por id (ETag para If-Match).
+   */
+  private static void writeRow(JsonGenerator g, ResultSet rs) throws IOException, SQLException {
+    g.writeStartObject();
+    g.writeNumberField("id", rs.getLong("ID"));
+    g.writeStringField("codigo", rs.getString("CODIGO"));
+    g.writeStringField("nombre", rs.getString("NOMBRE"));
+    g.writeStringField("direccion", rs.getString("DIRECCION"));
+    g.writeEndObject();
   }
 
   private static Bodega map(ResultSet rs) throws SQLException {
@@ -249,4 +403,17 @@ public class BodegasFunction {
         .body(MAPPER.writeValueAsString(body))
         .build();
   }
+
+  private static HttpResponseMessage conETag(HttpRequestMessage<?> req, CachedJson json, String ifNoneMatch) {
+    if (ETags.coincide(ifNoneMatch, json.etag)) return notModified(req, json.etag);
+    return req.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .header("ETag", json.etag)
+        .body(json.body)
+        .build();
+  }
+
+  private static HttpResponseMessage notModified(HttpRequestMessage<?> req, String etag) {
+    return req.createResponseBuilder(HttpStatus.NOT_MODIFIED).header("ETag", etag).build();
+  }
 }
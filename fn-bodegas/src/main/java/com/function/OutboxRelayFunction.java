@@ -0,0 +1,24 @@
+package com.function;
+
+import com.function.events.OutboxRelay;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+
+/**
+ * Red de seguridad del outbox: el relay en proceso se despierta con cada escritura, pero
+ * si una instancia muere antes de drenar, este timer envía lo que haya quedado pendiente.
+ */
+public class OutboxRelayFunction {
+
+  @FunctionName("outboxRelay")
+  public void run(
+      @TimerTrigger(name = "timer", schedule = "0 */1 * * * *") String timerInfo,
+      final ExecutionContext ctx) throws Exception {
+    int enviados = OutboxRelay.drainAll();
+    if (enviados > 0) ctx.getLogger().info("Outbox: " + enviados + " eventos enviados");
+
+    int dias = Integer.parseInt(System.getenv().getOrDefault("OUTBOX_RETENTION_DAYS", "7"));
+    OutboxRelay.purge(dias);
+  }
+}
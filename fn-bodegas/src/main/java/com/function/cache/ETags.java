@@ -0,0 +1,77 @@
+package com.function.cache;
+
+import com.microsoft.azure.functions.HttpRequestMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ETags para GET condicionales y escrituras con If-Match. Los recursos individuales llevan
+ * un ETag fuerte con la columna VERSION de la fila; las colecciones uno débil con la versión
+ * de la tabla (ver db.Versiones), que se puede comparar sin consultar ni serializar la lista.
+ */
+public final class ETags {
+  private ETags() {}
+
+  public static String fila(long version) {
+    return "\"" + version + "\"";
+  }
+
+  public static String version(String tabla, long version) {
+    return "W/\"" + tabla.toLowerCase(Locale.ROOT) + "-" + version + "\"";
+  }
+
+  /** If-None-Match usa comparación débil: se ignora el prefijo W/ en ambos lados. */
+  public static boolean coincide(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || ifNoneMatch.isBlank() || etag == null) return false;
+    String propio = sinW(etag);
+    for (String candidato : ifNoneMatch.split(",")) {
+      String c = candidato.trim();
+      if (c.equals("*") || sinW(c).equals(propio)) return true;
+    }
+    return false;
+  }
+
+  public static String ifNoneMatch(HttpRequestMessage<?> req) {
+    return header(req, "If-None-Match");
+  }
+
+  /**
+   * Versiones aceptadas por If-Match (comparación fuerte: un W/ nunca coincide).
+   * null si no viene o es "*"; lista vacía si ningún tag es una versión de fila.
+   */
+  public static List<Long> ifMatch(HttpRequestMessage<?> req) {
+    String v = header(req, "If-Match");
+    if (v == null || v.isBlank()) return null;
+    List<Long> out = new ArrayList<>();
+    for (String candidato : v.split(",")) {
+      String c = candidato.trim();
+      if (c.equals("*")) return null;
+      if (c.length() < 3 || !c.startsWith("\"") || !c.endsWith("\"")) continue;
+      try {
+        out.add(Long.parseLong(c.substring(1, c.length() - 1)));
+      } catch (NumberFormatException ignore) {
+        // ETag de otro origen: no coincide con ninguna versión
+      }
+    }
+    return out;
+  }
+
+  /** El host entrega los headers con el nombre en minúsculas, pero no está garantizado. */
+  public static String header(HttpRequestMessage<?> req, String name) {
+    Map<String, String> headers = req.getHeaders();
+    if (headers == null) return null;
+    String v = headers.get(name.toLowerCase(Locale.ROOT));
+    if (v != null) return v;
+    for (Map.Entry<String, String> e : headers.entrySet()) {
+      if (e.getKey().equalsIgnoreCase(name)) return e.getValue();
+    }
+    return null;
+  }
+
+  private static String sinW(String tag) {
+    return tag.startsWith("W/") ? tag.substring(2) : tag;
+  }
+}
@@ -0,0 +1,65 @@
+package com.function.db;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Serializa filas directamente desde el ResultSet a un JsonGenerator, sin crear un POJO
+ * por fila ni un String intermedio. El buffer de bytes se reutiliza por hilo
+ * (ByteArrayBuilder retiene a lo más un bloque de 128 KB entre respuestas).
+ */
+public final class JsonRows {
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final ThreadLocal<ByteArrayBuilder> BUFFER =
+      ThreadLocal.withInitial(() -> new ByteArrayBuilder(16 * 1024));
+
+  /** Filas por viaje a la base (Oracle usa 10 por defecto). */
+  public static final int FETCH_SIZE = fetchSize();
+
+  @FunctionalInterface
+  public interface RowWriter {
+    void write(JsonGenerator g, ResultSet rs) throws IOException, SQLException;
+  }
+
+  @FunctionalInterface
+  public interface Body {
+    void write(JsonGenerator g) throws IOException, SQLException;
+  }
+
+  private JsonRows() {}
+
+  /** Arreglo JSON con todas las filas restantes del ResultSet. */
+  public static byte[] array(ResultSet rs, RowWriter row) throws IOException, SQLException {
+    return write(g -> {
+      g.writeStartArray();
+      while (rs.next()) row.write(g, rs);
+      g.writeEndArray();
+    });
+  }
+
+  public static byte[] write(Body body) throws IOException, SQLException {
+    ByteArrayBuilder buf = BUFFER.get();
+    try (JsonGenerator g = FACTORY.createGenerator(buf, JsonEncoding.UTF8)) {
+      body.write(g);
+      g.flush();
+      return buf.toByteArray();
+    } finally {
+      buf.reset();
+    }
+  }
+
+  private static int fetchSize() {
+    String v = System.getenv("DB_FETCH_SIZE");
+    try {
+      return (v == null || v.isBlank()) ? 500 : Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return 500;
+    }
+  }
+}
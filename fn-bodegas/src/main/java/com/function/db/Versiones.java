@@ -0,0 +1,94 @@
+package com.function.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contador de cambios por tabla (VERSIONES_TABLA), incrementado en la misma transacción que
+ * cada escritura. Sirve de ETag para las colecciones.
+ *
+ * El contador está repartido en SLOTS filas por tabla y cada escritura incrementa una al
+ * azar: dos transacciones solo se esperan si eligen la misma fila, en vez de serializarse
+ * todas en una. La versión es la suma de las filas; cada commit la sube al menos en 1 y
+ * la lectura es consistente, así una versión ya vista nunca se repite con otros datos.
+ *
+ * Con ETAG_VERSION_TTL_MS > 0 la versión leída se reutiliza ese tiempo sin ir a la base:
+ * un 304 puede quedar desfasado hasta ese plazo respecto de escrituras en otras instancias.
+ * Las escrituras de esta instancia llaman {@link #olvidar} después del commit.
+ */
+public final class Versiones {
+  public static final String PRODUCTOS = "PRODUCTOS";
+  public static final String BODEGAS = "BODEGAS";
+
+  /** Filas por tabla; V007 las crea de antemano (las que falten se insertan al usarlas). */
+  static final int SLOTS = 32;
+
+  private static final long TTL_NANOS = ttlMs() * 1_000_000L;
+  private static final Map<String, long[]> LEIDAS = new ConcurrentHashMap<>(); // {version, leidaEn}
+  /** Sube con cada olvidar(): una lectura que empezó antes no se guarda. */
+  private static final AtomicLong GENERACION = new AtomicLong();
+
+  private static final String INCREMENTAR =
+      "MERGE INTO VERSIONES_TABLA v USING (SELECT ? AS TABLA, ? AS SLOT FROM DUAL) s " +
+      "ON (v.TABLA = s.TABLA AND v.SLOT = s.SLOT) " +
+      "WHEN MATCHED THEN UPDATE SET v.VERSION = v.VERSION + 1 " +
+      "WHEN NOT MATCHED THEN INSERT (TABLA, SLOT, VERSION) VALUES (s.TABLA, s.SLOT, 1)";
+
+  private Versiones() {}
+
+  /** Llamar dentro de la transacción de la escritura (autoCommit=false). */
+  public static void incrementar(Connection con, String tabla) throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement(INCREMENTAR)) {
+      ps.setString(1, tabla);
+      ps.setInt(2, ThreadLocalRandom.current().nextInt(SLOTS));
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * Descarta la versión guardada en memoria. Llamar después del commit: antes, otra lectura
+   * todavía puede ver (y guardar) la versión anterior.
+   */
+  public static void olvidar(String tabla) {
+    GENERACION.incrementAndGet();
+    LEIDAS.remove(tabla);
+  }
+
+  public static long actual(String tabla) throws SQLException {
+    long[] leida = LEIDAS.get(tabla);
+    if (leida != null && System.nanoTime() - leida[1] < TTL_NANOS) return leida[0];
+
+    long generacion = GENERACION.get();
+    long version = 0;
+    try (Connection con = Db.connect();
+         PreparedStatement ps = con.prepareStatement(
+             "SELECT NVL(SUM(VERSION), 0) FROM VERSIONES_TABLA WHERE TABLA = ?")) {
+      ps.setString(1, tabla);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) version = rs.getLong(1);
+      }
+    }
+    if (TTL_NANOS > 0) {
+      long[] nueva = { version, System.nanoTime() };
+      LEIDAS.put(tabla, nueva);
+      // Un commit de esta instancia terminó mientras se leía: la lectura puede ser anterior
+      if (GENERACION.get() != generacion) LEIDAS.remove(tabla, nueva);
+    }
+    return version;
+  }
+
+  private static long ttlMs() {
+    String v = System.getenv("ETAG_VERSION_TTL_MS");
+    try {
+      return (v == null || v.isBlank()) ? 0 : Long.parseLong(v.trim());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
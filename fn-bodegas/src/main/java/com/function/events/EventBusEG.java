@@ -1,12 +1,24 @@
 package com.function.events;
 
 import com.azure.core.credential.AzureKeyCredential;
-import com.azure.core.util.BinaryData;
 import com.azure.messaging.eventgrid.EventGridEvent;
 import com.azure.messaging.eventgrid.EventGridPublisherClient;
 import com.azure.messaging.eventgrid.EventGridPublisherClientBuilder;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente de Event Grid. Las escrituras ya no publican en el request: dejan el evento en
+ * OUTBOX dentro de su transacción y {@link OutboxRelay} lo envía por lotes con sendEvents(List),
+ * fuera del camino del request.
+ */
 public final class EventBusEG {
+  private static final AtomicLong SENT = new AtomicLong();
+  private static final AtomicLong FAILED = new AtomicLong();
+
   private static volatile EventGridPublisherClient<EventGridEvent> client;
 
   private static EventGridPublisherClient<EventGridEvent> client() {
@@ -14,7 +26,7 @@ public final class EventBusEG {
       synchronized (EventBusEG.class) {
         if (client == null) {
           String endpoint = System.getenv("EG_TOPIC_ENDPOINT");
-          String key = System.getenv("EG_ACCESS_KEY");
+          String key      = System.getenv("EG_ACCESS_KEY");
           if (endpoint == null || key == null) {
             throw new IllegalStateException("Faltan EG_TOPIC_ENDPOINT / EG_ACCESS_KEY");
           }
@@ -28,12 +40,22 @@ public final class EventBusEG {
     return client;
   }
 
-  public static void publish(String type, String subject, Object data) {
-    BinaryData bd = (data == null)
-        ? BinaryData.fromObject(java.util.Collections.emptyMap())
-        : BinaryData.fromObject(data);
-    EventGridEvent ev = new EventGridEvent(subject, type, bd, "1.0");
-    client().sendEvent(ev);
+  /** Envío síncrono de un lote; lo usa {@link OutboxRelay}, que marca enviado solo si no lanza. */
+  public static void sendNow(List<EventGridEvent> events) {
+    try {
+      client().sendEvents(events);
+      SENT.addAndGet(events.size());
+    } catch (RuntimeException e) {
+      FAILED.addAndGet(events.size());
+      throw e;
+    }
+  }
+
+  public static Map<String, Object> stats() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("sent", SENT.get());
+    out.put("failed", FAILED.get());
+    return out;
   }
 
   private EventBusEG() {}
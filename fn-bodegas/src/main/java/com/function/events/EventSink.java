@@ -0,0 +1,11 @@
+package com.function.events;
+
+import com.azure.messaging.eventgrid.EventGridEvent;
+
+import java.util.List;
+
+/** Destino de los eventos que drena {@link OutboxRelay}. Debe lanzar si el envío falla. */
+@FunctionalInterface
+public interface EventSink {
+  void send(List<EventGridEvent> events) throws Exception;
+}
@@ -0,0 +1,24 @@
+package com.function.events;
+
+import com.azure.messaging.eventgrid.EventGridEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sink local que solo acumula los eventos; para pruebas y desarrollo sin Event Grid. */
+public final class InMemoryEventSink implements EventSink {
+  private final List<EventGridEvent> events = new ArrayList<>();
+
+  @Override
+  public synchronized void send(List<EventGridEvent> batch) {
+    events.addAll(batch);
+  }
+
+  public synchronized List<EventGridEvent> events() {
+    return new ArrayList<>(events);
+  }
+
+  public synchronized void clear() {
+    events.clear();
+  }
+}
@@ -0,0 +1,150 @@
+package com.function.events;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outbox transaccional: el evento se guarda en la tabla OUTBOX con la misma conexión (y
+ * transacción) que el cambio en PRODUCTOS/BODEGAS. {@link OutboxRelay} lo envía después.
+ *
+ * SEQ es correlativo por SUBJECT y se calcula como MAX(SEQ)+1. Los SUBJECT compartidos
+ * ("/productos", "/bodegas/{id}" del resumen) no tienen un lock de fila que serialice a
+ * los escritores: UX_OUTBOX_SUBJECT_SEQ hace que el segundo que calcula el mismo SEQ espere
+ * al primero y reciba ORA-00001, y aquí se reintenta con el MAX ya confirmado. Solo falla
+ * el statement, no la transacción del cambio.
+ */
+public final class Outbox {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final String INSERT =
+      "INSERT INTO OUTBOX (SUBJECT, EVENT_TYPE, SEQ, DATA) " +
+      "SELECT ?, ?, NVL(MAX(SEQ), 0) + 1, ? FROM OUTBOX WHERE SUBJECT = ?";
+  private static final String INSERT_LOTE =
+      "INSERT INTO OUTBOX (SUBJECT, EVENT_TYPE, SEQ, DATA) VALUES (?, ?, ?, ?)";
+
+  /** ORA-00001 sobre UX_OUTBOX_SUBJECT_SEQ (la PK es IDENTITY). */
+  private static final int UNIQUE_VIOLADO = 1;
+  private static final int MAX_INTENTOS = 5;
+  /** Tope del IN de Oracle al leer el último SEQ de cada SUBJECT. */
+  private static final int MAX_IN = 1000;
+
+  /** Evento pendiente de escribir con {@link #addAll}. */
+  public static final class Evento {
+    final String type;
+    final String subject;
+    final Object data;
+
+    public Evento(String type, String subject, Object data) {
+      this.type = type;
+      this.subject = subject;
+      this.data = data;
+    }
+  }
+
+  private Outbox() {}
+
+  public static void add(Connection con, String type, String subject, Object data) throws SQLException {
+    String json = json(data);
+    try (PreparedStatement ps = con.prepareStatement(INSERT)) {
+      ps.setString(1, subject);
+      ps.setString(2, type);
+      ps.setString(3, json);
+      ps.setString(4, subject);
+      for (int intento = 1; ; intento++) {
+        try {
+          ps.executeUpdate();
+          return;
+        } catch (SQLException e) {
+          if (e.getErrorCode() != UNIQUE_VIOLADO || intento == MAX_INTENTOS) throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Varios eventos con una lectura del último SEQ por SUBJECT y un solo executeBatch, en vez
+   * de un INSERT ... SELECT MAX por evento. Los eventos de un mismo SUBJECT conservan el
+   * orden de la lista. Se insertan agrupados por SUBJECT para que dos lotes concurrentes
+   * tomen los valores del índice único en el mismo orden; si otro escritor confirmó un SEQ
+   * entremedio, se vuelve al savepoint y se recalcula.
+   */
+  public static void addAll(Connection con, List<Evento> eventos) throws SQLException {
+    if (eventos.isEmpty()) return;
+    if (eventos.size() == 1) {
+      Evento ev = eventos.get(0);
+      add(con, ev.type, ev.subject, ev.data);
+      return;
+    }
+    List<Evento> orden = new ArrayList<>(eventos);
+    orden.sort(Comparator.comparing(ev -> ev.subject)); // estable: respeta el orden por SUBJECT
+    List<String> jsons = new ArrayList<>(orden.size());
+    Set<String> subjects = new LinkedHashSet<>();
+    for (Evento ev : orden) {
+      jsons.add(json(ev.data));
+      subjects.add(ev.subject);
+    }
+
+    try (PreparedStatement ps = con.prepareStatement(INSERT_LOTE)) {
+      for (int intento = 1; ; intento++) {
+        Map<String, Long> seqs = ultimosSeq(con, subjects);
+        Savepoint sp = con.setSavepoint();
+        try {
+          for (int i = 0; i < orden.size(); i++) {
+            Evento ev = orden.get(i);
+            ps.setString(1, ev.subject);
+            ps.setString(2, ev.type);
+            ps.setLong(3, seqs.merge(ev.subject, 1L, Long::sum));
+            ps.setString(4, jsons.get(i));
+            ps.addBatch();
+          }
+          ps.executeBatch();
+          return;
+        } catch (SQLException e) {
+          con.rollback(sp);
+          ps.clearBatch();
+          if (e.getErrorCode() != UNIQUE_VIOLADO || intento == MAX_INTENTOS) throw e;
+        }
+      }
+    }
+  }
+
+  private static Map<String, Long> ultimosSeq(Connection con, Set<String> subjects) throws SQLException {
+    Map<String, Long> out = new HashMap<>();
+    List<String> todos = new ArrayList<>(subjects);
+    for (int desde = 0; desde < todos.size(); desde += MAX_IN) {
+      List<String> parte = todos.subList(desde, Math.min(todos.size(), desde + MAX_IN));
+      try (PreparedStatement ps = con.prepareStatement(
+          "SELECT SUBJECT, MAX(SEQ) FROM OUTBOX WHERE SUBJECT IN (" +
+          String.join(", ", Collections.nCopies(parte.size(), "?")) + ") GROUP BY SUBJECT")) {
+        int i = 1;
+        for (String s : parte) ps.setString(i++, s);
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+        }
+      }
+    }
+    return out;
+  }
+
+  private static String json(Object data) {
+    try {
+      return MAPPER.writeValueAsString(data == null ? Collections.emptyMap() : data);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Data de evento no serializable: " + e.getOriginalMessage(), e);
+    }
+  }
+}
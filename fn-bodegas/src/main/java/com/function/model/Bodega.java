@@ -1,10 +1,14 @@
 package com.function.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class Bodega {
   private Long id;
   private String codigo;
   private String nombre;
   private String direccion;
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Long version;
 
   public Bodega() {}
 
@@ -20,4 +24,6 @@ public class Bodega {
   public void setNombre(String nombre) { this.nombre = nombre; }
   public String getDireccion() { return direccion; }
   public void setDireccion(String direccion) { this.direccion = direccion; }
+  public Long getVersion() { return version; }
+  public void setVersion(Long version) { this.version = version; }
 }
@@ -0,0 +1,76 @@
+package com.function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.azure.functions.*;
+import com.microsoft.azure.functions.annotation.*;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lectura del modelo de inventario que mantiene este consumidor: totales por bodega y productos
+ * de una bodega, sin pasar por fn-productos/fn-bodegas. Consistencia eventual: refleja los
+ * eventos ya recibidos por esta instancia, por lo que el consumidor debe correr con una sola
+ * instancia (WEBSITE_MAX_DYNAMIC_APPLICATION_SCALE_OUT=1); Event Grid entrega cada evento a
+ * una sola.
+ */
+public class InventarioFunction {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @FunctionName("inventarioBodegas")
+  public HttpResponseMessage bodegas(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.GET }, authLevel = AuthorizationLevel.ANONYMOUS, route = "inventario/bodegas") HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext ctx) throws Exception {
+    return json(request, OnInventarioEventFunction.MODELO.bodegas(), HttpStatus.OK);
+  }
+
+  @FunctionName("inventarioBodega")
+  public HttpResponseMessage bodega(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.GET }, authLevel = AuthorizationLevel.ANONYMOUS, route = "inventario/bodegas/{id}") HttpRequestMessage<Optional<String>> request,
+      @BindingName("id") String idStr,
+      final ExecutionContext ctx) throws Exception {
+    long id;
+    try {
+      id = Long.parseLong(idStr);
+    } catch (NumberFormatException e) {
+      return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
+          .header("Content-Type", "application/json")
+          .body("{\"error\":\"id inválido\"}")
+          .build();
+    }
+    Map<String, Object> out = OnInventarioEventFunction.MODELO.bodega(id);
+    if (out == null) return request.createResponseBuilder(HttpStatus.NOT_FOUND).body("No encontrado").build();
+    return json(request, out, HttpStatus.OK);
+  }
+
+  /** Recarga desde fn-productos/fn-bodegas lo que falte en el modelo (p. ej. tras perder el store). */
+  @FunctionName("inventarioCarga")
+  public HttpResponseMessage carga(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.POST }, authLevel = AuthorizationLevel.FUNCTION, route = "inventario/carga") HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext ctx) throws Exception {
+    if (OnInventarioEventFunction.CARGA == null) {
+      return request.createResponseBuilder(HttpStatus.SERVICE_UNAVAILABLE)
+          .header("Content-Type", "application/json")
+          .body("{\"error\":\"Faltan API_PRODUCTOS_BASE o API_BODEGAS_BASE\"}")
+          .build();
+    }
+    if (!OnInventarioEventFunction.CARGA.iniciar(OnInventarioEventFunction.MODELO)) {
+      return request.createResponseBuilder(HttpStatus.CONFLICT)
+          .header("Content-Type", "application/json")
+          .body("{\"error\":\"Ya hay una carga en curso\"}")
+          .build();
+    }
+    return request.createResponseBuilder(HttpStatus.ACCEPTED).build();
+  }
+
+  private static HttpResponseMessage json(HttpRequestMessage<?> req, Object body, HttpStatus status) throws Exception {
+    return req.createResponseBuilder(status)
+        .header("Content-Type", "application/json")
+        .body(MAPPER.writeValueAsString(body))
+        .build();
+  }
+}
@@ -1,54 +1,131 @@
 package com.function;
 
-import com.google.gson.*;
+import com.function.events.Deduplicador;
+import com.function.events.Despachador;
+import com.function.events.Evento;
+import com.function.events.EventoParser;
+import com.function.events.MetricasLote;
+import com.function.inventario.ArchivoStore;
+import com.function.inventario.CargaInicial;
+import com.function.inventario.InventarioStore;
+import com.function.inventario.MemoriaStore;
+import com.function.inventario.ModeloInventario;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.*;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class OnInventarioEventFunction {
+  private static final Logger LOG = Logger.getLogger(OnInventarioEventFunction.class.getName());
 
+  static final MetricasLote METRICAS = new MetricasLote();
+  static final ModeloInventario MODELO = new ModeloInventario(crearStore());
+
+  private static final int PARALELISMO = Integer.parseInt(System.getenv().getOrDefault(
+      "CONSUMIDOR_PARALELISMO", String.valueOf(Math.max(2, Runtime.getRuntime().availableProcessors()))));
+
+  /** Ventana de reentregas: Event Grid reintenta con backoff, la mayoría en los primeros minutos. */
+  static final Deduplicador DEDUP = new Deduplicador(
+      Long.parseLong(System.getenv().getOrDefault("DEDUP_VENTANA_MS", "600000")),
+      Integer.parseInt(System.getenv().getOrDefault("DEDUP_MAX_IDS", "100000")));
+
+  static final Despachador DESPACHADOR = new Despachador(PARALELISMO, METRICAS, DEDUP)
+      .on("Inventario.Producto.Creado", MODELO::productoGuardado)
+      .on("Inventario.Producto.Actualizado", MODELO::productoGuardado)
+      .on("Inventario.Producto.Eliminado", MODELO::productoEliminado)
+      .on("Inventario.Producto.StockAjustado", MODELO::stockAjustado)
+      .on("Inventario.Producto.LoteImportado", MODELO::loteImportado)
+      .on("Inventario.Producto.StockBajo", OnInventarioEventFunction::stockBajo)
+      .on("Inventario.Bodega.Creada", MODELO::bodegaGuardada)
+      .on("Inventario.Bodega.Actualizada", MODELO::bodegaGuardada)
+      .on("Inventario.Bodega.Eliminada", MODELO::bodegaEliminada)
+      .on("Inventario.Bodega.StockBajoResumen", OnInventarioEventFunction::stockBajoResumen)
+      .otros(ev -> LOG.fine("Evento sin manejador: " + ev));
+
+  /** null sin API_PRODUCTOS_BASE/API_BODEGAS_BASE: el modelo se arma solo con eventos. */
+  static final CargaInicial CARGA = CargaInicial.desdeEntorno();
+
+  static {
+    // Primer arranque (o store en memoria): lo creado antes no llega por eventos
+    if (CARGA != null && MODELO.vacio()) CARGA.iniciar(MODELO);
+  }
+
+  /**
+   * El trigger de Event Grid en Java no tiene cardinalidad: el host invoca la función una vez
+   * por evento, así que aquí llega casi siempre un solo evento y el {@link Despachador} lo
+   * procesa en el mismo hilo. Los grupos en paralelo solo aplican si el contenido es un
+   * arreglo (reenvíos manuales, pruebas) o si se cambia a un trigger con lotes (Event Hubs o
+   * Service Bus con {@code cardinality = Cardinality.MANY}).
+   *
+   * Un contenido ilegible se descarta (reintentarlo no cambia nada); si falla algún manejador
+   * se lanza la excepción para que Event Grid reenvíe el evento.
+   */
   @FunctionName("onInventarioEvent")
   public void run(
       @EventGridTrigger(name = "eventGridEvent") String content,
       final ExecutionContext context
-  ) {
+  ) throws Exception {
     Logger logger = context.getLogger();
-    logger.info("Función con Event Grid trigger ejecutada.");
 
+    long t0 = System.nanoTime();
+    List<Evento> lote;
     try {
-      JsonElement root = JsonParser.parseString(content);
-
-      if (root.isJsonArray()) {
-        JsonArray arr = root.getAsJsonArray();
-        for (JsonElement el : arr) {
-          if (el.isJsonObject()) procesarUno(el.getAsJsonObject(), logger);
-        }
-      } else if (root.isJsonObject()) {
-        procesarUno(root.getAsJsonObject(), logger);
-      } else {
-        logger.warning("Contenido no reconocido: " + content);
-      }
-
-    } catch (Exception e) {
-      logger.severe("Error procesando evento: " + e.getMessage());
+      lote = EventoParser.leer(content);
+    } catch (IOException e) {
+      METRICAS.errorParseo();
+      logger.severe("Contenido de evento no válido: " + e.getMessage());
+      return;
     }
-  }
+    METRICAS.parseo(System.nanoTime() - t0);
+    if (lote.isEmpty()) return;
 
-  private void procesarUno(JsonObject ev, Logger logger) {
-    String eventType = getString(ev, "eventType");
-    if (eventType == null) eventType = getString(ev, "type");
+    Despachador.Resultado r = DESPACHADOR.procesar(lote);
+    try {
+      MODELO.flush();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "No se pudo guardar el modelo de inventario", e);
+    }
+    logger.info(String.format("Lote: eventos=%d subjects=%d procesados=%d duplicados=%d fallidos=%d ms=%.1f",
+        r.getTotal(), r.getSubjects(), r.getProcesados(), r.getDuplicados(), r.getFallidos(), r.getNanos() / 1e6));
+    if (r.getFallidos() > 0) {
+      throw new IllegalStateException(r.getFallidos() + " de " + r.getTotal() + " eventos no se procesaron");
+    }
+  }
 
-    String subject = getString(ev, "subject");
-    if (subject == null) subject = getString(ev, "source");
+  /**
+   * Con INVENTARIO_STORE_PATH el modelo se guarda en ese archivo (snapshot cada
+   * INVENTARIO_SNAPSHOT_OPS operaciones o INVENTARIO_SNAPSHOT_MS, journal entremedio); si no,
+   * solo en memoria.
+   */
+  private static InventarioStore crearStore() {
+    String path = System.getenv("INVENTARIO_STORE_PATH");
+    if (path == null || path.isBlank()) return new MemoriaStore();
+    try {
+      return new ArchivoStore(Paths.get(path.trim()),
+          Integer.parseInt(System.getenv().getOrDefault("INVENTARIO_SNAPSHOT_OPS", "10000")),
+          Long.parseLong(System.getenv().getOrDefault("INVENTARIO_SNAPSHOT_MS", "300000")));
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "No se pudo leer " + path + "; el modelo de inventario parte vacío en memoria", e);
+      return new MemoriaStore();
+    }
+  }
 
-    JsonElement data = ev.get("data");
+  /* ================== Manejadores ================== */
 
-    logger.info("Evento recibido -> type=" + eventType + " subject=" + subject);
-    if (data != null) logger.info("Data del evento: " + data.toString());
+  private static void stockBajo(Evento ev) {
+    LOG.warning("Stock bajo: sku=" + ev.getData().path("sku").asText()
+        + " stock=" + ev.getData().path("stock").asInt()
+        + " umbral=" + ev.getData().path("umbral").asInt()
+        + " bodegaId=" + ev.getData().path("bodegaId").asText("-"));
   }
 
-  private static String getString(JsonObject obj, String prop) {
-    return (obj.has(prop) && !obj.get(prop).isJsonNull()) ? obj.get(prop).getAsString() : null;
+  private static void stockBajoResumen(Evento ev) {
+    LOG.warning("Stock bajo en " + ev.getSubject() + ": "
+        + ev.getData().path("cantidad").asInt() + " productos entre "
+        + ev.getData().path("desde").asText() + " y " + ev.getData().path("hasta").asText());
   }
 }
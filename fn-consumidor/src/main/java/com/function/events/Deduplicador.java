@@ -0,0 +1,90 @@
+package com.function.events;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IDs de eventos ya procesados en una ventana de tiempo, para saltar las reentregas de Event Grid
+ * (entrega al menos una vez y reintenta si el trigger tarda). Dos generaciones de IDs: se
+ * consulta en ambas y se agrega a la actual; cada ventanaMs, o cuando la actual llega a
+ * maxPorGeneracion, la actual pasa a ser la anterior y la anterior se descarta. Así un ID se
+ * recuerda al menos una ventana y la memoria queda acotada a 2 * maxPorGeneracion IDs.
+ *
+ * Los IDs del relay de OUTBOX ("outbox-123") se guardan como Long para ocupar menos.
+ */
+public final class Deduplicador {
+  private static final String PREFIJO_OUTBOX = "outbox-";
+
+  private final long ventanaNanos;
+  private final int maxPorGeneracion;
+
+  private volatile Set<Object> actual = ConcurrentHashMap.newKeySet();
+  private volatile Set<Object> anterior = ConcurrentHashMap.newKeySet();
+  private volatile long inicioActual = System.nanoTime();
+
+  private final AtomicLong consultas = new AtomicLong();
+  private final AtomicLong duplicados = new AtomicLong();
+  private final AtomicLong rotaciones = new AtomicLong();
+
+  public Deduplicador(long ventanaMs, int maxPorGeneracion) {
+    this.ventanaNanos = ventanaMs * 1_000_000L;
+    this.maxPorGeneracion = maxPorGeneracion;
+  }
+
+  /** true si el evento ya se procesó dentro de la ventana. Sin id no se puede saber: false. */
+  public boolean visto(String id) {
+    if (id == null) return false;
+    rotarSiCorresponde();
+    consultas.incrementAndGet();
+    Object k = clave(id);
+    if (actual.contains(k) || anterior.contains(k)) {
+      duplicados.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /** Se llama después de procesar bien el evento: si falla, la reentrega tiene que procesarse. */
+  public void marcar(String id) {
+    if (id == null) return;
+    rotarSiCorresponde();
+    actual.add(clave(id));
+  }
+
+  public Map<String, Object> stats() {
+    long c = consultas.get();
+    long d = duplicados.get();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("consultas", c);
+    out.put("duplicados", d);
+    out.put("tasaDuplicados", c == 0 ? 0.0 : (double) d / c);
+    out.put("ids", actual.size() + anterior.size());
+    out.put("rotaciones", rotaciones.get());
+    return out;
+  }
+
+  private void rotarSiCorresponde() {
+    if (System.nanoTime() - inicioActual < ventanaNanos && actual.size() < maxPorGeneracion) return;
+    synchronized (this) {
+      if (System.nanoTime() - inicioActual < ventanaNanos && actual.size() < maxPorGeneracion) return;
+      anterior = actual;
+      actual = ConcurrentHashMap.newKeySet();
+      inicioActual = System.nanoTime();
+      rotaciones.incrementAndGet();
+    }
+  }
+
+  private static Object clave(String id) {
+    if (id.startsWith(PREFIJO_OUTBOX)) {
+      try {
+        return Long.parseLong(id.substring(PREFIJO_OUTBOX.length()));
+      } catch (NumberFormatException ignore) {
+        // no es un ID del relay: se guarda tal cual
+      }
+    }
+    return id;
+  }
+}
@@ -0,0 +1,142 @@
+package com.function.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Despacha un lote de eventos por tipo a su {@link Manejador}. Los eventos se agrupan por
+ * subject: cada grupo se procesa en orden (el orden de llegada, que el relay de OUTBOX ya
+ * entrega por SEQ) y grupos distintos corren en paralelo en un pool fijo. Un lote de un
+ * solo subject (el caso normal con el trigger de Event Grid, que invoca una vez por evento)
+ * se procesa en el hilo que llama, sin pasar por el pool.
+ *
+ * Si un evento falla se saltan los siguientes de su mismo subject, para no aplicar un cambio
+ * posterior sobre un estado al que le falta el anterior; quedan contados como fallidos.
+ * Con un {@link Deduplicador} los eventos cuyo id ya se procesó se saltan sin manejarlos.
+ */
+public final class Despachador {
+  private static final Logger LOG = Logger.getLogger(Despachador.class.getName());
+
+  private final Map<String, Manejador> manejadores = new ConcurrentHashMap<>();
+  private final ExecutorService pool;
+  private final MetricasLote metricas;
+  private final Deduplicador dedup;
+  private volatile Manejador otros = ev -> {};
+
+  public Despachador(int paralelismo, MetricasLote metricas) {
+    this(paralelismo, metricas, null);
+  }
+
+  public Despachador(int paralelismo, MetricasLote metricas, Deduplicador dedup) {
+    AtomicInteger n = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(Math.max(1, paralelismo), r -> {
+      Thread t = new Thread(r, "despachador-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    this.metricas = metricas;
+    this.dedup = dedup;
+  }
+
+  public Despachador on(String tipo, Manejador m) {
+    manejadores.put(tipo, m);
+    return this;
+  }
+
+  /** Para los tipos sin manejador; por defecto se ignoran (y se cuentan). */
+  public Despachador otros(Manejador m) {
+    this.otros = m;
+    return this;
+  }
+
+  /** Procesa el lote completo y espera a que terminen todos los grupos. */
+  public Resultado procesar(List<Evento> lote) throws InterruptedException {
+    long t0 = System.nanoTime();
+    Map<String, List<Evento>> porSubject = new LinkedHashMap<>();
+    for (Evento ev : lote) {
+      porSubject.computeIfAbsent(ev.getSubject() == null ? "" : ev.getSubject(), k -> new ArrayList<>()).add(ev);
+    }
+
+    Resultado r = new Resultado(lote.size(), porSubject.size());
+    if (porSubject.size() == 1) {
+      procesarGrupo(porSubject.values().iterator().next(), r);
+    } else {
+      List<Future<?>> tareas = new ArrayList<>(porSubject.size());
+      for (List<Evento> grupo : porSubject.values()) {
+        tareas.add(pool.submit(() -> procesarGrupo(grupo, r)));
+      }
+      for (Future<?> f : tareas) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          // procesarGrupo no deja escapar excepciones de los manejadores
+          LOG.log(Level.SEVERE, "Error inesperado en el despachador", e.getCause());
+        }
+      }
+    }
+    r.nanos = System.nanoTime() - t0;
+    metricas.registrar(r);
+    return r;
+  }
+
+  private void procesarGrupo(List<Evento> grupo, Resultado r) {
+    for (int i = 0; i < grupo.size(); i++) {
+      Evento ev = grupo.get(i);
+      if (dedup != null && dedup.visto(ev.getId())) {
+        r.duplicados.incrementAndGet();
+        continue;
+      }
+      Manejador m = ev.getTipo() == null ? null : manejadores.get(ev.getTipo());
+      try {
+        if (m == null) {
+          r.sinManejador.incrementAndGet();
+          otros.manejar(ev);
+        } else {
+          m.manejar(ev);
+        }
+        if (dedup != null) dedup.marcar(ev.getId());
+        r.procesados.incrementAndGet();
+        metricas.evento(ev.getTipo());
+      } catch (Exception e) {
+        int saltados = grupo.size() - i - 1;
+        r.fallidos.addAndGet(saltados + 1);
+        LOG.log(Level.WARNING, "Falló " + ev + "; se saltan " + saltados + " eventos más de " + ev.getSubject(), e);
+        return;
+      }
+    }
+  }
+
+  /** Conteos de un lote; los contadores son atómicos porque los grupos corren en paralelo. */
+  public static final class Resultado {
+    private final int total;
+    private final int subjects;
+    private final AtomicInteger procesados = new AtomicInteger();
+    private final AtomicInteger fallidos = new AtomicInteger();
+    private final AtomicInteger sinManejador = new AtomicInteger();
+    private final AtomicInteger duplicados = new AtomicInteger();
+    private long nanos;
+
+    Resultado(int total, int subjects) {
+      this.total = total;
+      this.subjects = subjects;
+    }
+
+    public int getTotal() { return total; }
+    public int getSubjects() { return subjects; }
+    public int getProcesados() { return procesados.get(); }
+    public int getFallidos() { return fallidos.get(); }
+    public int getSinManejador() { return sinManejador.get(); }
+    public int getDuplicados() { return duplicados.get(); }
+    public long getNanos() { return nanos; }
+  }
+}
@@ -0,0 +1,35 @@
+package com.function.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+/**
+ * Evento ya leído del lote. Acepta el esquema de Event Grid (eventType/subject/eventTime) y el
+ * de CloudEvents (type/source/time); solo data queda como árbol JSON.
+ */
+public final class Evento {
+  private final String id;
+  private final String tipo;
+  private final String subject;
+  private final String tiempo;
+  private final JsonNode data;
+
+  public Evento(String id, String tipo, String subject, String tiempo, JsonNode data) {
+    this.id = id;
+    this.tipo = tipo;
+    this.subject = subject;
+    this.tiempo = tiempo;
+    this.data = data == null ? NullNode.getInstance() : data;
+  }
+
+  public String getId() { return id; }
+  public String getTipo() { return tipo; }
+  public String getSubject() { return subject; }
+  public String getTiempo() { return tiempo; }
+  public JsonNode getData() { return data; }
+
+  @Override
+  public String toString() {
+    return tipo + " " + subject + " (" + id + ")";
+  }
+}
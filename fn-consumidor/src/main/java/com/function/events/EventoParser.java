@@ -0,0 +1,73 @@
+package com.function.events;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lee el cuerpo del trigger (un evento o un arreglo de eventos) con el parser de streaming de
+ * Jackson: los campos de sobre se leen token a token y solo "data" se materializa como árbol.
+ * Los campos desconocidos se saltan sin construirlos.
+ */
+public final class EventoParser {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+  private EventoParser() {}
+
+  /** @throws IOException si el contenido no es JSON o no es un objeto/arreglo de objetos. */
+  public static List<Evento> leer(String content) throws IOException {
+    List<Evento> out = new ArrayList<>();
+    try (JsonParser p = FACTORY.createParser(content)) {
+      JsonToken t = p.nextToken();
+      if (t == JsonToken.START_ARRAY) {
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+          if (t == JsonToken.START_OBJECT) {
+            out.add(leerUno(p));
+          } else {
+            p.skipChildren();
+          }
+        }
+      } else if (t == JsonToken.START_OBJECT) {
+        out.add(leerUno(p));
+      } else {
+        throw new IOException("Contenido no reconocido: se esperaba un objeto o un arreglo");
+      }
+    }
+    return out;
+  }
+
+  private static Evento leerUno(JsonParser p) throws IOException {
+    String id = null, eventType = null, type = null, subject = null, source = null, time = null;
+    JsonNode data = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String campo = p.currentName();
+      JsonToken v = p.nextToken();
+      switch (campo) {
+        case "id": id = texto(p, v); break;
+        case "eventType": eventType = texto(p, v); break;
+        case "type": type = texto(p, v); break;
+        case "subject": subject = texto(p, v); break;
+        case "source": source = texto(p, v); break;
+        case "eventTime":
+        case "time": time = texto(p, v); break;
+        case "data": data = MAPPER.readTree(p); break;
+        default: p.skipChildren();
+      }
+    }
+    return new Evento(id, eventType != null ? eventType : type, subject != null ? subject : source, time, data);
+  }
+
+  private static String texto(JsonParser p, JsonToken v) throws IOException {
+    if (v == JsonToken.VALUE_NULL) return null;
+    if (v.isScalarValue()) return p.getValueAsString();
+    p.skipChildren();
+    return null;
+  }
+}
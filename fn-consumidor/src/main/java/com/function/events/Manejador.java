@@ -0,0 +1,7 @@
+package com.function.events;
+
+/** Procesa un tipo de evento. Una excepción marca el evento (y el resto de su subject) como fallido. */
+@FunctionalInterface
+public interface Manejador {
+  void manejar(Evento ev) throws Exception;
+}
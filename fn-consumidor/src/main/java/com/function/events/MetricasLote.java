@@ -0,0 +1,68 @@
+package com.function.events;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores acumulados del consumidor: lotes, eventos por tipo y tiempos por lote. Reemplaza
+ * el log por evento; se consultan en GET /api/metrics.
+ */
+public final class MetricasLote {
+  private final AtomicLong lotes = new AtomicLong();
+  private final AtomicLong eventos = new AtomicLong();
+  private final AtomicLong fallidos = new AtomicLong();
+  private final AtomicLong sinManejador = new AtomicLong();
+  private final AtomicLong duplicados = new AtomicLong();
+  private final AtomicLong erroresParseo = new AtomicLong();
+  private final AtomicLong nanosTotal = new AtomicLong();
+  private final AtomicLong nanosMax = new AtomicLong();
+  private final AtomicLong nanosParseo = new AtomicLong();
+  private final AtomicLong loteMax = new AtomicLong();
+  private final Map<String, LongAdder> porTipo = new ConcurrentHashMap<>();
+
+  void registrar(Despachador.Resultado r) {
+    lotes.incrementAndGet();
+    eventos.addAndGet(r.getTotal());
+    fallidos.addAndGet(r.getFallidos());
+    sinManejador.addAndGet(r.getSinManejador());
+    duplicados.addAndGet(r.getDuplicados());
+    nanosTotal.addAndGet(r.getNanos());
+    nanosMax.accumulateAndGet(r.getNanos(), Math::max);
+    loteMax.accumulateAndGet(r.getTotal(), Math::max);
+  }
+
+  void evento(String tipo) {
+    porTipo.computeIfAbsent(tipo == null ? "(sin tipo)" : tipo, k -> new LongAdder()).increment();
+  }
+
+  public void parseo(long nanos) {
+    nanosParseo.addAndGet(nanos);
+  }
+
+  public void errorParseo() {
+    erroresParseo.incrementAndGet();
+  }
+
+  public Map<String, Object> stats() {
+    long n = lotes.get();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("lotes", n);
+    out.put("eventos", eventos.get());
+    out.put("fallidos", fallidos.get());
+    out.put("sinManejador", sinManejador.get());
+    out.put("duplicados", duplicados.get());
+    out.put("erroresParseo", erroresParseo.get());
+    out.put("loteMax", loteMax.get());
+    out.put("msPromedioLote", n == 0 ? 0.0 : nanosTotal.get() / 1e6 / n);
+    out.put("msMaxLote", nanosMax.get() / 1e6);
+    out.put("msPromedioParseo", n == 0 ? 0.0 : nanosParseo.get() / 1e6 / n);
+    Map<String, Long> tipos = new TreeMap<>();
+    porTipo.forEach((k, v) -> tipos.put(k, v.sum()));
+    out.put("porTipo", tipos);
+    return out;
+  }
+}
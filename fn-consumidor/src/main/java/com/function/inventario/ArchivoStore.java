@@ -0,0 +1,209 @@
+package com.function.inventario;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Store en memoria persistido como snapshot JSON (INVENTARIO_STORE_PATH) más un journal de
+ * operaciones al lado (el mismo nombre con ".log"). flush() solo agrega al journal lo que cambió
+ * desde el flush anterior, una línea JSON por operación: su costo depende del lote, no del
+ * tamaño del modelo. El snapshot completo se reescribe (temporal + rename) cada opsPorSnapshot
+ * operaciones o cada msPorSnapshot, y ahí el journal se borra.
+ *
+ * Cada operación lleva el valor completo (producto, bodega con sus totales, SEQ), no un delta,
+ * y el journal tiene todo lo que entró al snapshot: reaplicarlo sobre un snapshot que ya lo
+ * incluye deja el mismo estado. Así un corte entre el rename y el borrado del journal no
+ * desordena nada. Al arrancar se lee el snapshot y se reaplica el journal; una última línea
+ * cortada a medias se descarta.
+ */
+public class ArchivoStore extends MemoriaStore {
+  private static final Logger LOG = Logger.getLogger(ArchivoStore.class.getName());
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private final Path archivo;
+  private final Path journal;
+  private final int opsPorSnapshot;
+  private final long msPorSnapshot;
+  private final List<Op> pendientes = new ArrayList<>();
+  /** Operaciones en el journal desde el último snapshot. */
+  private long enJournal;
+  private long ultimoSnapshot;
+
+  public ArchivoStore(Path archivo) throws IOException {
+    this(archivo, 10_000, 300_000);
+  }
+
+  public ArchivoStore(Path archivo, int opsPorSnapshot, long msPorSnapshot) throws IOException {
+    this.archivo = archivo;
+    this.journal = archivo.resolveSibling(archivo.getFileName() + ".log");
+    this.opsPorSnapshot = opsPorSnapshot;
+    this.msPorSnapshot = msPorSnapshot;
+    if (Files.exists(archivo)) {
+      Snapshot s = MAPPER.readValue(archivo.toFile(), Snapshot.class);
+      for (BodegaVista b : s.bodegas) super.guardarBodega(b);
+      for (ProductoVista p : s.productos) super.guardarProducto(p);
+      seqs.putAll(s.seqs);
+    }
+    ultimoSnapshot = System.currentTimeMillis();
+    // Tras una línea cortada no se puede seguir agregando al mismo journal
+    if (!reaplicarJournal()) snapshot();
+  }
+
+  /* ================== Escrituras ================== */
+
+  @Override
+  public void guardarProducto(ProductoVista p) {
+    super.guardarProducto(p);
+    Op op = new Op(Op.PRODUCTO);
+    op.producto = p;
+    pendientes.add(op);
+  }
+
+  @Override
+  public void eliminarProducto(long id) {
+    super.eliminarProducto(id);
+    Op op = new Op(Op.ELIMINAR_PRODUCTO);
+    op.id = id;
+    pendientes.add(op);
+  }
+
+  @Override
+  public void guardarBodega(BodegaVista b) {
+    super.guardarBodega(b);
+    Op op = new Op(Op.BODEGA);
+    op.bodega = b;
+    pendientes.add(op);
+  }
+
+  @Override
+  public void eliminarBodega(long id) {
+    super.eliminarBodega(id);
+    Op op = new Op(Op.ELIMINAR_BODEGA);
+    op.id = id;
+    pendientes.add(op);
+  }
+
+  @Override
+  public void seq(String subject, long seq) {
+    super.seq(subject, seq);
+    Op op = new Op(Op.SEQ);
+    op.subject = subject;
+    op.seq = seq;
+    pendientes.add(op);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (pendientes.isEmpty()) return;
+    StringBuilder sb = new StringBuilder();
+    for (Op op : pendientes) sb.append(MAPPER.writeValueAsString(op)).append('\n');
+    crearDirectorio();
+    Files.write(journal, sb.toString().getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    enJournal += pendientes.size();
+    pendientes.clear();
+
+    if (enJournal >= opsPorSnapshot || System.currentTimeMillis() - ultimoSnapshot >= msPorSnapshot) {
+      snapshot();
+    }
+  }
+
+  /* ================== Snapshot y journal ================== */
+
+  private void snapshot() throws IOException {
+    Snapshot s = new Snapshot();
+    s.productos = new ArrayList<>(productos.values());
+    s.bodegas = new ArrayList<>(bodegas.values());
+    s.seqs = seqs;
+
+    crearDirectorio();
+    Path tmp = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+    MAPPER.writeValue(tmp.toFile(), s);
+    Files.move(tmp, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.deleteIfExists(journal);
+    enJournal = 0;
+    ultimoSnapshot = System.currentTimeMillis();
+  }
+
+  /** Reaplica el journal sobre el snapshot; false si la última línea quedó cortada. */
+  private boolean reaplicarJournal() throws IOException {
+    if (!Files.exists(journal)) return true;
+    try (BufferedReader r = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+      String linea;
+      while ((linea = r.readLine()) != null) {
+        if (linea.isBlank()) continue;
+        Op op;
+        try {
+          op = MAPPER.readValue(linea, Op.class);
+        } catch (JsonProcessingException e) {
+          LOG.warning("Journal " + journal + ": se descarta una línea incompleta tras " + enJournal + " operaciones");
+          return false;
+        }
+        aplicar(op);
+        enJournal++;
+      }
+    }
+    return true;
+  }
+
+  private void aplicar(Op op) {
+    switch (op.op) {
+      case Op.PRODUCTO:          super.guardarProducto(op.producto); break;
+      case Op.ELIMINAR_PRODUCTO: super.eliminarProducto(op.id); break;
+      case Op.BODEGA:            super.guardarBodega(op.bodega); break;
+      case Op.ELIMINAR_BODEGA:   super.eliminarBodega(op.id); break;
+      case Op.SEQ:               super.seq(op.subject, op.seq); break;
+      default: throw new IllegalStateException("Operación desconocida en el journal: " + op.op);
+    }
+  }
+
+  private void crearDirectorio() throws IOException {
+    Path dir = archivo.toAbsolutePath().getParent();
+    if (dir != null) Files.createDirectories(dir);
+  }
+
+  public static class Snapshot {
+    public List<ProductoVista> productos = new ArrayList<>();
+    public List<BodegaVista> bodegas = new ArrayList<>();
+    public Map<String, Long> seqs = new HashMap<>();
+  }
+
+  /** Una línea del journal; solo van los campos de su tipo. */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class Op {
+    static final String PRODUCTO = "producto";
+    static final String ELIMINAR_PRODUCTO = "eliminarProducto";
+    static final String BODEGA = "bodega";
+    static final String ELIMINAR_BODEGA = "eliminarBodega";
+    static final String SEQ = "seq";
+
+    public String op;
+    public ProductoVista producto;
+    public BodegaVista bodega;
+    public Long id;
+    public String subject;
+    public Long seq;
+
+    public Op() {}
+
+    Op(String op) {
+      this.op = op;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.function.inventario;
+
+import java.math.BigDecimal;
+
+/** Bodega con los totales de sus productos, mantenidos al aplicar cada evento. */
+public class BodegaVista {
+  private Long id;
+  private String codigo;
+  private String nombre;
+  private String direccion;
+  private int cantidadProductos;
+  private long totalStock;
+  private BigDecimal valorInventario = BigDecimal.ZERO;
+
+  public BodegaVista() {}
+
+  public BodegaVista(Long id) {
+    this.id = id;
+  }
+
+  public BodegaVista(BodegaVista o) {
+    this.id = o.id;
+    this.codigo = o.codigo;
+    this.nombre = o.nombre;
+    this.direccion = o.direccion;
+    this.cantidadProductos = o.cantidadProductos;
+    this.totalStock = o.totalStock;
+    this.valorInventario = o.valorInventario;
+  }
+
+  void sumar(ProductoVista p, int signo) {
+    cantidadProductos += signo;
+    totalStock += (long) signo * p.getStock();
+    valorInventario = signo > 0 ? valorInventario.add(p.valor()) : valorInventario.subtract(p.valor());
+  }
+
+  public Long getId() { return id; }
+  public void setId(Long id) { this.id = id; }
+  public String getCodigo() { return codigo; }
+  public void setCodigo(String codigo) { this.codigo = codigo; }
+  public String getNombre() { return nombre; }
+  public void setNombre(String nombre) { this.nombre = nombre; }
+  public String getDireccion() { return direccion; }
+  public void setDireccion(String direccion) { this.direccion = direccion; }
+  public int getCantidadProductos() { return cantidadProductos; }
+  public void setCantidadProductos(int cantidadProductos) { this.cantidadProductos = cantidadProductos; }
+  public long getTotalStock() { return totalStock; }
+  public void setTotalStock(long totalStock) { this.totalStock = totalStock; }
+  public BigDecimal getValorInventario() { return valorInventario; }
+  public void setValorInventario(BigDecimal valorInventario) { this.valorInventario = valorInventario; }
+}
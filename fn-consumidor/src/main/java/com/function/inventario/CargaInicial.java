@@ -0,0 +1,120 @@
+package com.function.inventario;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carga inicial del modelo desde las APIs de fn-bodegas y fn-productos (productos paginados por
+ * cursor). Los eventos solo traen cambios: sin esto, un consumidor que arranca vacío nunca ve
+ * lo que se creó antes. Corre en segundo plano mientras siguen llegando eventos; lo aplicado por
+ * eventos manda sobre la lectura (ver {@link ModeloInventario#cargarProducto}).
+ *
+ * Usa las mismas variables que fn-graphql: API_PRODUCTOS_BASE, API_BODEGAS_BASE y sus claves
+ * API_PRODUCTOS_KEY / API_BODEGAS_KEY.
+ */
+public final class CargaInicial {
+  private static final Logger LOG = Logger.getLogger(CargaInicial.class.getName());
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  /** ProductoFiltro.MAX_LIMIT de fn-productos. */
+  private static final int PAGINA = 1000;
+
+  private final HttpClient http = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+  private final String productosBase;
+  private final String productosKey;
+  private final String bodegasBase;
+  private final String bodegasKey;
+  private final AtomicBoolean enCurso = new AtomicBoolean();
+
+  public CargaInicial(String productosBase, String productosKey, String bodegasBase, String bodegasKey) {
+    this.productosBase = productosBase;
+    this.productosKey = productosKey;
+    this.bodegasBase = bodegasBase;
+    this.bodegasKey = bodegasKey;
+  }
+
+  /** null si falta API_PRODUCTOS_BASE o API_BODEGAS_BASE. */
+  public static CargaInicial desdeEntorno() {
+    String prod = System.getenv("API_PRODUCTOS_BASE");
+    String bod = System.getenv("API_BODEGAS_BASE");
+    if (prod == null || prod.isBlank() || bod == null || bod.isBlank()) return null;
+    return new CargaInicial(prod.trim(), System.getenv().getOrDefault("API_PRODUCTOS_KEY", ""),
+        bod.trim(), System.getenv().getOrDefault("API_BODEGAS_KEY", ""));
+  }
+
+  /** Lanza la carga en un hilo aparte; false si ya hay una en curso. */
+  public boolean iniciar(ModeloInventario modelo) {
+    if (!enCurso.compareAndSet(false, true)) return false;
+    Thread t = new Thread(() -> {
+      try {
+        LOG.info("Carga inicial del inventario: " + cargar(modelo));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        LOG.log(Level.WARNING, "Falló la carga inicial del inventario", e);
+      } finally {
+        enCurso.set(false);
+      }
+    }, "carga-inventario");
+    t.setDaemon(true);
+    t.start();
+    return true;
+  }
+
+  /** Bodegas primero, para que los productos sumen sobre bodegas con sus datos. */
+  public Map<String, Object> cargar(ModeloInventario modelo) throws IOException, InterruptedException {
+    int bodegas = 0;
+    for (JsonNode b : get(joinUrl(bodegasBase, "/api/bodegas"), bodegasKey)) {
+      if (modelo.cargarBodega(MAPPER.treeToValue(b, BodegaVista.class))) bodegas++;
+    }
+
+    int productos = 0;
+    String cursor = null;
+    do {
+      String url = joinUrl(productosBase, "/api/productos?limit=" + PAGINA + (cursor == null ? "" : "&after=" + cursor));
+      JsonNode pagina = get(url, productosKey);
+      for (JsonNode p : pagina.path("items")) {
+        if (modelo.cargarProducto(MAPPER.treeToValue(p, ProductoVista.class))) productos++;
+      }
+      cursor = pagina.path("nextCursor").isTextual() ? pagina.path("nextCursor").asText() : null;
+    } while (cursor != null);
+
+    modelo.flush();
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("bodegas", bodegas);
+    out.put("productos", productos);
+    return out;
+  }
+
+  private JsonNode get(String url, String key) throws IOException, InterruptedException {
+    HttpRequest.Builder b = HttpRequest.newBuilder()
+        .uri(URI.create(url))
+        .timeout(Duration.ofSeconds(30))
+        .header("Accept", "application/json")
+        .GET();
+    if (key != null && !key.isBlank()) b.header("x-functions-key", key);
+    HttpResponse<byte[]> res = http.send(b.build(), HttpResponse.BodyHandlers.ofByteArray());
+    if (res.statusCode() != 200) throw new IOException("GET " + url + " respondió " + res.statusCode());
+    return MAPPER.readTree(res.body());
+  }
+
+  private static String joinUrl(String base, String path) {
+    String b = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    return b + path;
+  }
+}
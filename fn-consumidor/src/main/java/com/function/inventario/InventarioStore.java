@@ -0,0 +1,42 @@
+package com.function.inventario;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Almacenamiento del modelo de lectura. Las implementaciones no necesitan ser thread-safe:
+ * {@link ModeloInventario} serializa todos los accesos.
+ *
+ * Los objetos guardados no se modifican después: para cambiar un producto o una bodega se
+ * guarda una copia nueva (el store usa el valor anterior para mantener sus índices).
+ */
+public interface InventarioStore {
+  ProductoVista producto(long id);
+
+  void guardarProducto(ProductoVista p);
+
+  void eliminarProducto(long id);
+
+  /** Productos de la bodega, ordenados por ID. */
+  List<ProductoVista> productosDe(long bodegaId);
+
+  BodegaVista bodega(long id);
+
+  void guardarBodega(BodegaVista b);
+
+  void eliminarBodega(long id);
+
+  /** Todas las bodegas, ordenadas por ID. */
+  Collection<BodegaVista> bodegas();
+
+  int cantidadProductos();
+
+  /** Último SEQ aplicado del subject (0 si no hay ninguno). */
+  long seq(String subject);
+
+  void seq(String subject, long seq);
+
+  /** Persiste lo pendiente; no hace nada en memoria. */
+  default void flush() throws IOException {}
+}
@@ -0,0 +1,90 @@
+package com.function.inventario;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Store en memoria: se pierde al reiniciar; {@link CargaInicial} lo rellena desde las APIs. */
+public class MemoriaStore implements InventarioStore {
+  protected final Map<Long, ProductoVista> productos = new HashMap<>();
+  protected final Map<Long, BodegaVista> bodegas = new TreeMap<>();
+  protected final Map<String, Long> seqs = new HashMap<>();
+  /** bodegaId → IDs de sus productos */
+  private final Map<Long, Set<Long>> porBodega = new HashMap<>();
+
+  @Override
+  public ProductoVista producto(long id) {
+    return productos.get(id);
+  }
+
+  @Override
+  public void guardarProducto(ProductoVista p) {
+    ProductoVista prev = productos.put(p.getId(), p);
+    if (prev != null) desindexar(prev);
+    if (p.getBodegaId() != null) porBodega.computeIfAbsent(p.getBodegaId(), k -> new TreeSet<>()).add(p.getId());
+  }
+
+  @Override
+  public void eliminarProducto(long id) {
+    ProductoVista prev = productos.remove(id);
+    if (prev != null) desindexar(prev);
+  }
+
+  @Override
+  public List<ProductoVista> productosDe(long bodegaId) {
+    Set<Long> ids = porBodega.get(bodegaId);
+    List<ProductoVista> out = new ArrayList<>(ids == null ? 0 : ids.size());
+    if (ids != null) {
+      for (Long id : ids) out.add(productos.get(id));
+    }
+    return out;
+  }
+
+  @Override
+  public BodegaVista bodega(long id) {
+    return bodegas.get(id);
+  }
+
+  @Override
+  public void guardarBodega(BodegaVista b) {
+    bodegas.put(b.getId(), b);
+  }
+
+  @Override
+  public void eliminarBodega(long id) {
+    bodegas.remove(id);
+  }
+
+  @Override
+  public Collection<BodegaVista> bodegas() {
+    return bodegas.values();
+  }
+
+  @Override
+  public int cantidadProductos() {
+    return productos.size();
+  }
+
+  @Override
+  public long seq(String subject) {
+    return seqs.getOrDefault(subject, 0L);
+  }
+
+  @Override
+  public void seq(String subject, long seq) {
+    seqs.put(subject, seq);
+  }
+
+  private void desindexar(ProductoVista p) {
+    if (p.getBodegaId() == null) return;
+    Set<Long> ids = porBodega.get(p.getBodegaId());
+    if (ids == null) return;
+    ids.remove(p.getId());
+    if (ids.isEmpty()) porBodega.remove(p.getBodegaId());
+  }
+}
@@ -0,0 +1,258 @@
+package com.function.inventario;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.function.events.Evento;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Modelo de lectura desnormalizado del inventario: productos por bodega con sus totales de
+ * stock y valor, mantenido con los eventos Inventario.Producto.* e Inventario.Bodega.*.
+ *
+ * Cada evento trae el SEQ de su subject (lo agrega el relay de OUTBOX); un evento con SEQ menor
+ * o igual al último aplicado es un reenvío o llegó tarde y se ignora. UX_OUTBOX_SUBJECT_SEQ
+ * impide que dos eventos de un subject compartan SEQ, así que un SEQ igual es siempre el mismo
+ * evento. La excepción es LoteImportado, que va en el subject compartido "/productos" y no se
+ * filtra por SEQ (ver {@link #loteImportado}).
+ *
+ * Los accesos están sincronizados: el despachador aplica subjects distintos en paralelo y
+ * varios pueden tocar los totales de la misma bodega.
+ */
+public final class ModeloInventario {
+  private static final String PRODUCTOS = "/productos/";
+  private static final String BODEGAS = "/bodegas/";
+
+  private final InventarioStore store;
+
+  public ModeloInventario(InventarioStore store) {
+    this.store = store;
+  }
+
+  /* ================== Eventos ================== */
+
+  /** Producto.Creado y Producto.Actualizado traen la fila completa. */
+  public synchronized void productoGuardado(Evento ev) {
+    if (!esNuevo(ev)) return;
+    JsonNode d = ev.getData();
+    ProductoVista p = new ProductoVista();
+    p.setId(id(d, ev));
+    p.setSku(texto(d, "sku"));
+    p.setNombre(texto(d, "nombre"));
+    p.setStock(d.path("stock").asInt());
+    p.setPrecio(decimal(d.path("precio")));
+    p.setBodegaId(idOpcional(d.path("bodegaId")));
+    reemplazar(p);
+    aplicado(ev);
+  }
+
+  public synchronized void stockAjustado(Evento ev) {
+    if (!esNuevo(ev)) return;
+    JsonNode d = ev.getData();
+    long id = id(d, ev);
+    ProductoVista prev = store.producto(id);
+    ProductoVista p = prev == null ? new ProductoVista() : new ProductoVista(prev);
+    p.setId(id);
+    if (d.hasNonNull("sku")) p.setSku(texto(d, "sku"));
+    p.setStock(d.path("stock").asInt());
+    if (d.has("bodegaId")) p.setBodegaId(idOpcional(d.path("bodegaId")));
+    reemplazar(p);
+    aplicado(ev);
+  }
+
+  public synchronized void productoEliminado(Evento ev) {
+    if (!esNuevo(ev)) return;
+    long id = id(ev.getData(), ev);
+    ProductoVista prev = store.producto(id);
+    if (prev != null) {
+      mover(prev, -1);
+      store.eliminarProducto(id);
+    }
+    aplicado(ev);
+  }
+
+  /**
+   * Producto.LoteImportado: "productos" con la fila de cada producto insertado. Todos los lotes
+   * comparten el subject "/productos", y un lote que llega después de otro con SEQ mayor no debe
+   * perderse, así que no se filtra por SEQ: cada fila es la creación del producto y se aplica
+   * solo si el producto no está y aún no se aplicó ningún evento de "/productos/{id}" (lo que
+   * venga por ese subject es posterior). Reaplicar un lote no cambia nada.
+   */
+  public synchronized void loteImportado(Evento ev) {
+    for (JsonNode d : ev.getData().path("productos")) {
+      Long id = idOpcional(d.path("id"));
+      if (id == null || store.producto(id) != null || store.seq(PRODUCTOS + id) > 0) continue;
+      ProductoVista p = new ProductoVista();
+      p.setId(id);
+      p.setSku(texto(d, "sku"));
+      p.setNombre(texto(d, "nombre"));
+      p.setStock(d.path("stock").asInt());
+      p.setPrecio(decimal(d.path("precio")));
+      p.setBodegaId(idOpcional(d.path("bodegaId")));
+      reemplazar(p);
+    }
+  }
+
+  /** Bodega.Creada y Bodega.Actualizada; conserva los totales ya calculados. */
+  public synchronized void bodegaGuardada(Evento ev) {
+    if (!esNuevo(ev)) return;
+    JsonNode d = ev.getData();
+    long id = id(d, ev);
+    BodegaVista prev = store.bodega(id);
+    BodegaVista b = prev == null ? new BodegaVista(id) : new BodegaVista(prev);
+    b.setCodigo(texto(d, "codigo"));
+    b.setNombre(texto(d, "nombre"));
+    b.setDireccion(texto(d, "direccion"));
+    store.guardarBodega(b);
+    aplicado(ev);
+  }
+
+  /** Mueve los productos a la bodega de "reasignadosA" (o los deja sin bodega) y la elimina. */
+  public synchronized void bodegaEliminada(Evento ev) {
+    if (!esNuevo(ev)) return;
+    JsonNode d = ev.getData();
+    long id = id(d, ev);
+    Long destino = idOpcional(d.path("reasignadosA"));
+    if (eliminada(destino)) destino = null;
+    List<ProductoVista> productos = store.productosDe(id);
+    store.eliminarBodega(id);
+    for (ProductoVista prev : productos) {
+      ProductoVista p = new ProductoVista(prev);
+      p.setBodegaId(destino);
+      mover(p, 1);
+      store.guardarProducto(p);
+    }
+    aplicado(ev);
+  }
+
+  /* ================== Carga inicial ================== */
+
+  /**
+   * Fila de {@link CargaInicial}. Solo agrega lo que el modelo no conoce: si ya se aplicó algún
+   * evento del producto, ese estado es igual o más nuevo que la lectura. Sí completa nombre,
+   * SKU y precio de un producto que entró por StockAjustado antes que su Producto.Creado.
+   */
+  public synchronized boolean cargarProducto(ProductoVista p) {
+    ProductoVista prev = store.producto(p.getId());
+    if (prev == null) {
+      if (store.seq(PRODUCTOS + p.getId()) > 0) return false; // eliminado después de la lectura
+      reemplazar(new ProductoVista(p));
+      return true;
+    }
+    if (prev.getSku() != null && prev.getNombre() != null && prev.getPrecio() != null) return false;
+    ProductoVista q = new ProductoVista(prev);
+    if (q.getSku() == null) q.setSku(p.getSku());
+    if (q.getNombre() == null) q.setNombre(p.getNombre());
+    if (q.getPrecio() == null) q.setPrecio(p.getPrecio());
+    reemplazar(q);
+    return true;
+  }
+
+  /** Igual que {@link #cargarProducto}; completa las bodegas que solo tienen ID y totales. */
+  public synchronized boolean cargarBodega(BodegaVista b) {
+    BodegaVista prev = store.bodega(b.getId());
+    if (prev == null ? store.seq(BODEGAS + b.getId()) > 0 : prev.getCodigo() != null) return false;
+    BodegaVista n = prev == null ? new BodegaVista(b.getId()) : new BodegaVista(prev);
+    n.setCodigo(b.getCodigo());
+    n.setNombre(b.getNombre());
+    n.setDireccion(b.getDireccion());
+    store.guardarBodega(n);
+    return true;
+  }
+
+  public synchronized boolean vacio() {
+    return store.cantidadProductos() == 0 && store.bodegas().isEmpty();
+  }
+
+  /* ================== Lecturas ================== */
+
+  public synchronized List<BodegaVista> bodegas() {
+    List<BodegaVista> out = new ArrayList<>();
+    for (BodegaVista b : store.bodegas()) out.add(new BodegaVista(b));
+    return out;
+  }
+
+  /** Bodega con sus productos; null si no está en el modelo. */
+  public synchronized Map<String, Object> bodega(long id) {
+    BodegaVista b = store.bodega(id);
+    if (b == null) return null;
+    List<ProductoVista> productos = new ArrayList<>();
+    for (ProductoVista p : store.productosDe(id)) productos.add(new ProductoVista(p));
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("bodega", new BodegaVista(b));
+    out.put("productos", productos);
+    return out;
+  }
+
+  public synchronized Map<String, Object> stats() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("store", store.getClass().getSimpleName());
+    out.put("bodegas", store.bodegas().size());
+    out.put("productos", store.cantidadProductos());
+    return out;
+  }
+
+  public synchronized void flush() throws IOException {
+    store.flush();
+  }
+
+  /* ================== Helpers ================== */
+
+  private void reemplazar(ProductoVista p) {
+    // Evento del producto posterior a Bodega.Eliminada: queda sin bodega, no revive la eliminada
+    if (eliminada(p.getBodegaId())) p.setBodegaId(null);
+    ProductoVista prev = store.producto(p.getId());
+    if (prev != null) mover(prev, -1);
+    mover(p, 1);
+    store.guardarProducto(p);
+  }
+
+  /** Suma (signo 1) o resta (signo -1) el producto de los totales de su bodega. */
+  private void mover(ProductoVista p, int signo) {
+    if (p.getBodegaId() == null) return;
+    BodegaVista prev = store.bodega(p.getBodegaId());
+    if (prev == null && signo < 0) return;
+    // Si el producto llega antes que Bodega.Creada, la bodega queda solo con su ID
+    BodegaVista b = prev == null ? new BodegaVista(p.getBodegaId()) : new BodegaVista(prev);
+    b.sumar(p, signo);
+    store.guardarBodega(b);
+  }
+
+  /** La bodega no está pero ya se aplicó algún evento suyo: fue eliminada. */
+  private boolean eliminada(Long bodegaId) {
+    return bodegaId != null && store.bodega(bodegaId) == null && store.seq(BODEGAS + bodegaId) > 0;
+  }
+
+  private boolean esNuevo(Evento ev) {
+    long seq = ev.getData().path("seq").asLong(0);
+    return seq == 0 || ev.getSubject() == null || seq > store.seq(ev.getSubject());
+  }
+
+  private void aplicado(Evento ev) {
+    long seq = ev.getData().path("seq").asLong(0);
+    if (seq > 0 && ev.getSubject() != null) store.seq(ev.getSubject(), seq);
+  }
+
+  private static long id(JsonNode d, Evento ev) {
+    Long id = idOpcional(d.path("id"));
+    if (id == null) throw new IllegalArgumentException("Evento sin id: " + ev);
+    return id;
+  }
+
+  private static Long idOpcional(JsonNode n) {
+    return n.canConvertToLong() ? n.asLong() : null;
+  }
+
+  private static String texto(JsonNode d, String campo) {
+    JsonNode n = d.get(campo);
+    return n == null || n.isNull() ? null : n.asText();
+  }
+
+  private static BigDecimal decimal(JsonNode n) {
+    return n.isNumber() ? n.decimalValue() : null;
+  }
+}
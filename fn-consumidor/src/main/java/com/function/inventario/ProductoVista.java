@@ -0,0 +1,41 @@
+package com.function.inventario;
+
+import java.math.BigDecimal;
+
+public class ProductoVista {
+  private Long id;
+  private String sku;
+  private String nombre;
+  private int stock;
+  private BigDecimal precio;
+  private Long bodegaId;
+
+  public ProductoVista() {}
+
+  public ProductoVista(ProductoVista o) {
+    this.id = o.id;
+    this.sku = o.sku;
+    this.nombre = o.nombre;
+    this.stock = o.stock;
+    this.precio = o.precio;
+    this.bodegaId = o.bodegaId;
+  }
+
+  /** stock * precio; 0 si todavía no se conoce el precio. */
+  public BigDecimal valor() {
+    return precio == null ? BigDecimal.ZERO : precio.multiply(BigDecimal.valueOf(stock));
+  }
+
+  public Long getId() { return id; }
+  public void setId(Long id) { this.id = id; }
+  public String getSku() { return sku; }
+  public void setSku(String sku) { this.sku = sku; }
+  public String getNombre() { return nombre; }
+  public void setNombre(String nombre) { this.nombre = nombre; }
+  public int getStock() { return stock; }
+  public void setStock(int stock) { this.stock = stock; }
+  public BigDecimal getPrecio() { return precio; }
+  public void setPrecio(BigDecimal precio) { this.precio = precio; }
+  public Long getBodegaId() { return bodegaId; }
+  public void setBodegaId(Long bodegaId) { this.bodegaId = bodegaId; }
+}
@@ -0,0 +1,49 @@
+package com.function.events;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Rotación de las dos generaciones de IDs, por tamaño y por ventana de tiempo. */
+public class DeduplicadorTest {
+
+  @Test
+  void marcadoSeVeHastaLaSegundaRotacionPorTamano() {
+    Deduplicador d = new Deduplicador(Long.MAX_VALUE / 1_000_000L, 2);
+    d.marcar("outbox-1");
+    d.marcar("outbox-2");
+    // La actual está llena: esta consulta rota y "outbox-1" queda en la anterior
+    assertTrue(d.visto("outbox-1"));
+    assertEquals(1L, d.stats().get("rotaciones"));
+
+    d.marcar("outbox-3");
+    d.marcar("outbox-4");
+    assertTrue(d.visto("outbox-3"));
+    assertFalse(d.visto("outbox-1"));
+    assertEquals(2L, d.stats().get("rotaciones"));
+    assertEquals(2, d.stats().get("ids"));
+  }
+
+  @Test
+  void rotaPorVentanaDeTiempo() throws Exception {
+    Deduplicador d = new Deduplicador(50, 1000);
+    d.marcar("a");
+    Thread.sleep(60);
+    assertTrue(d.visto("a"));
+    Thread.sleep(60);
+    assertFalse(d.visto("a"));
+    assertEquals(2L, d.stats().get("rotaciones"));
+  }
+
+  @Test
+  void noMarcadoOSinIdNoEsDuplicado() {
+    Deduplicador d = new Deduplicador(60_000, 10);
+    assertFalse(d.visto("outbox-9"));
+    assertFalse(d.visto(null));
+    d.marcar("outbox-9");
+    assertTrue(d.visto("outbox-9"));
+    // Solo los IDs del relay se guardan como número
+    assertFalse(d.visto("9"));
+    assertEquals(1.0 / 3, (double) d.stats().get("tasaDuplicados"), 1e-9);
+  }
+}
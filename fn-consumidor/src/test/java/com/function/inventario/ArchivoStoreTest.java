@@ -0,0 +1,111 @@
+package com.function.inventario;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Journal entre snapshots: flush solo agrega, el snapshot se reescribe por umbral. */
+public class ArchivoStoreTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void flushAgregaAlJournalYAlArrancarSeReaplica() throws Exception {
+    Path archivo = dir.resolve("modelo.json");
+    ArchivoStore s = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    s.guardarBodega(new BodegaVista(1L));
+    s.guardarProducto(producto(1, 5));
+    s.seq("/productos/1", 3);
+    s.flush();
+    s.guardarProducto(producto(1, 7));
+    s.eliminarBodega(1);
+    s.flush();
+
+    assertFalse(Files.exists(archivo));
+    assertEquals(5, Files.readAllLines(journal(archivo)).size());
+
+    ArchivoStore r = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    assertEquals(7, r.producto(1).getStock());
+    assertNull(r.bodega(1));
+    assertEquals(3, r.seq("/productos/1"));
+  }
+
+  @Test
+  void alLlegarAlUmbralEscribeSnapshotYBorraElJournal() throws Exception {
+    Path archivo = dir.resolve("modelo.json");
+    ArchivoStore s = new ArchivoStore(archivo, 3, Long.MAX_VALUE);
+    s.guardarProducto(producto(1, 1));
+    s.guardarProducto(producto(2, 2));
+    s.flush();
+    assertFalse(Files.exists(archivo));
+
+    s.guardarProducto(producto(3, 3));
+    s.flush();
+    assertTrue(Files.exists(archivo));
+    assertFalse(Files.exists(journal(archivo)));
+
+    s.eliminarProducto(2);
+    s.flush();
+    ArchivoStore r = new ArchivoStore(archivo, 3, Long.MAX_VALUE);
+    assertEquals(2, r.cantidadProductos());
+    assertNull(r.producto(2));
+  }
+
+  @Test
+  void journalYaIncluidoEnElSnapshotNoCambiaElEstado() throws Exception {
+    Path archivo = dir.resolve("modelo.json");
+    ArchivoStore s = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    s.guardarProducto(producto(1, 5));
+    s.guardarProducto(producto(1, 2));
+    s.eliminarProducto(1);
+    s.guardarProducto(producto(1, 9));
+    s.flush();
+    byte[] journal = Files.readAllBytes(journal(archivo));
+
+    // Llega al umbral: snapshot con todo lo anterior y el journal se borra
+    ArchivoStore t = new ArchivoStore(archivo, 5, Long.MAX_VALUE);
+    t.guardarProducto(producto(2, 1));
+    t.flush();
+    assertTrue(Files.exists(archivo));
+    // Corte entre el rename del snapshot y el borrado del journal
+    Files.write(journal(archivo), journal);
+
+    ArchivoStore r = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    assertEquals(9, r.producto(1).getStock());
+    assertEquals(1, r.producto(2).getStock());
+  }
+
+  @Test
+  void ultimaLineaCortadaSeDescartaYSeCompacta() throws Exception {
+    Path archivo = dir.resolve("modelo.json");
+    ArchivoStore s = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    s.guardarProducto(producto(1, 5));
+    s.flush();
+    Files.write(journal(archivo), "{\"op\":\"producto\",\"producto\":{\"id\":2,".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    ArchivoStore r = new ArchivoStore(archivo, 1000, Long.MAX_VALUE);
+    assertEquals(1, r.cantidadProductos());
+    assertTrue(Files.exists(archivo));
+    assertFalse(Files.exists(journal(archivo)));
+  }
+
+  private static Path journal(Path archivo) {
+    return archivo.resolveSibling(archivo.getFileName() + ".log");
+  }
+
+  private static ProductoVista producto(long id, int stock) {
+    ProductoVista p = new ProductoVista();
+    p.setId(id);
+    p.setStock(stock);
+    p.setBodegaId(1L);
+    return p;
+  }
+}
@@ -0,0 +1,149 @@
+package com.function.inventario;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.events.Evento;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** SEQ por subject, lotes en el subject compartido "/productos" y carga inicial. */
+public class ModeloInventarioTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private MemoriaStore store;
+  private ModeloInventario modelo;
+
+  @BeforeEach
+  void setUp() {
+    store = new MemoriaStore();
+    modelo = new ModeloInventario(store);
+  }
+
+  @Test
+  void eventoConSeqMenorOIgualSeIgnora() throws Exception {
+    modelo.productoGuardado(ev("/productos/1", "{\"id\":1,\"sku\":\"A\",\"stock\":5,\"precio\":2,\"bodegaId\":1,\"seq\":2}"));
+    modelo.stockAjustado(ev("/productos/1", "{\"id\":1,\"stock\":9,\"seq\":1}"));
+    modelo.stockAjustado(ev("/productos/1", "{\"id\":1,\"stock\":9,\"seq\":2}"));
+
+    assertEquals(5, producto(1, 1).getStock());
+    assertEquals(5, bodega(1).getTotalStock());
+
+    modelo.stockAjustado(ev("/productos/1", "{\"id\":1,\"stock\":3,\"seq\":3}"));
+    assertEquals(3, producto(1, 1).getStock());
+    assertEquals(new BigDecimal("6"), bodega(1).getValorInventario());
+  }
+
+  @Test
+  void loteConSeqMenorQueOtroYaAplicadoNoSePierde() throws Exception {
+    modelo.loteImportado(ev("/productos", lote(2, 7)));
+    modelo.loteImportado(ev("/productos", lote(1, 3)));
+
+    assertEquals(2, bodega(1).getCantidadProductos());
+    assertNotNull(producto(1, 3));
+    assertNotNull(producto(1, 7));
+  }
+
+  @Test
+  void loteNoPisaLoAplicadoPorElSubjectDelProducto() throws Exception {
+    modelo.stockAjustado(ev("/productos/3", "{\"id\":3,\"stock\":1,\"bodegaId\":1,\"seq\":1}"));
+    modelo.productoEliminado(ev("/productos/4", "{\"id\":4,\"seq\":1}"));
+    modelo.loteImportado(ev("/productos", "{\"seq\":1,\"productos\":["
+        + "{\"id\":3,\"sku\":\"P3\",\"stock\":10,\"bodegaId\":1},"
+        + "{\"id\":4,\"sku\":\"P4\",\"stock\":10,\"bodegaId\":1}]}"));
+    // Reenvío del mismo lote
+    modelo.loteImportado(ev("/productos", lote(1, 5)));
+    modelo.loteImportado(ev("/productos", lote(1, 5)));
+
+    assertEquals(1, producto(1, 3).getStock());
+    assertNull(producto(1, 4));
+    assertEquals(2, bodega(1).getCantidadProductos());
+    assertEquals(2, bodega(1).getTotalStock());
+  }
+
+  @Test
+  void cargaInicialSoloCompletaLoQueFalta() throws Exception {
+    // StockAjustado antes de Producto.Creado: fila sin nombre ni precio
+    modelo.stockAjustado(ev("/productos/1", "{\"id\":1,\"sku\":\"A\",\"stock\":4,\"bodegaId\":1,\"seq\":3}"));
+    modelo.productoEliminado(ev("/productos/2", "{\"id\":2,\"seq\":1}"));
+
+    assertTrue(modelo.cargarBodega(bodegaLeida(1, "B1")));
+    assertTrue(modelo.cargarProducto(productoLeido(1, 99, "10")));
+    assertFalse(modelo.cargarProducto(productoLeido(2, 5, "1")));
+    assertTrue(modelo.cargarProducto(productoLeido(3, 2, "1")));
+    assertFalse(modelo.cargarProducto(productoLeido(3, 8, "1")));
+
+    ProductoVista p1 = producto(1, 1);
+    assertEquals(4, p1.getStock()); // el evento manda
+    assertEquals("Producto 1", p1.getNombre());
+    assertEquals(new BigDecimal("10"), p1.getPrecio());
+    assertNull(producto(1, 2));
+    assertEquals("B1", bodega(1).getCodigo());
+    assertEquals(6, bodega(1).getTotalStock());
+    assertEquals(new BigDecimal("42"), bodega(1).getValorInventario());
+    assertFalse(modelo.cargarBodega(bodegaLeida(1, "OTRO")));
+  }
+
+  @Test
+  void eventoDeProductoDespuesDeEliminarLaBodegaNoLaRevive() throws Exception {
+    modelo.bodegaGuardada(ev("/bodegas/1", "{\"id\":1,\"codigo\":\"B1\",\"seq\":1}"));
+    modelo.productoGuardado(ev("/productos/1", "{\"id\":1,\"sku\":\"A\",\"stock\":5,\"precio\":2,\"bodegaId\":1,\"seq\":1}"));
+    modelo.bodegaEliminada(ev("/bodegas/1", "{\"id\":1,\"seq\":2}"));
+    // StockAjustado escrito antes de la eliminación pero entregado después
+    modelo.stockAjustado(ev("/productos/1", "{\"id\":1,\"stock\":3,\"bodegaId\":1,\"seq\":2}"));
+    modelo.loteImportado(ev("/productos", "{\"seq\":1,\"productos\":["
+        + "{\"id\":2,\"sku\":\"P2\",\"stock\":1,\"bodegaId\":1}]}"));
+
+    assertNull(modelo.bodega(1));
+    assertTrue(modelo.bodegas().isEmpty());
+    assertEquals(3, store.producto(1).getStock());
+    assertNull(store.producto(1).getBodegaId());
+    assertNull(store.producto(2).getBodegaId());
+    assertFalse(modelo.cargarBodega(bodegaLeida(1, "B1")));
+    assertNull(modelo.bodega(1));
+  }
+
+  /* ================== Helpers ================== */
+
+  private static Evento ev(String subject, String data) throws Exception {
+    return new Evento("id-" + subject, "tipo", subject, null, MAPPER.readTree(data));
+  }
+
+  /** Lote con un producto de stock 1 en la bodega 1. */
+  private static String lote(long seq, long id) {
+    return "{\"seq\":" + seq + ",\"productos\":[{\"id\":" + id + ",\"sku\":\"P" + id
+        + "\",\"stock\":1,\"precio\":1,\"bodegaId\":1}]}";
+  }
+
+  private static ProductoVista productoLeido(long id, int stock, String precio) {
+    ProductoVista p = new ProductoVista();
+    p.setId(id);
+    p.setSku("S" + id);
+    p.setNombre("Producto " + id);
+    p.setStock(stock);
+    p.setPrecio(new BigDecimal(precio));
+    p.setBodegaId(1L);
+    return p;
+  }
+
+  private static BodegaVista bodegaLeida(long id, String codigo) {
+    BodegaVista b = new BodegaVista(id);
+    b.setCodigo(codigo);
+    return b;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ProductoVista producto(long bodegaId, long id) {
+    for (ProductoVista p : (List<ProductoVista>) modelo.bodega(bodegaId).get("productos")) {
+      if (p.getId() == id) return p;
+    }
+    return null;
+  }
+
+  private BodegaVista bodega(long id) {
+    return (BodegaVista) modelo.bodega(id).get("bodega");
+  }
+}
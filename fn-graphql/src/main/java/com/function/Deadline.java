@@ -0,0 +1,43 @@
+package com.function;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plazo de una ejecución GraphQL. Acota el timeout de cada llamada upstream al tiempo
+ * restante. cancelAll() completa como canceladas las llamadas pendientes y hace fallar las
+ * siguientes, pero en Java 11 no aborta el HTTP ya enviado: esas terminan por su timeout.
+ */
+public final class Deadline {
+  public static final String KEY = "deadline";
+
+  private final long expiresAt;
+  private final Set<CompletableFuture<?>> pendientes = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelada;
+
+  public Deadline(Duration plazo) {
+    this.expiresAt = System.nanoTime() + plazo.toNanos();
+  }
+
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+  }
+
+  public boolean expired() {
+    return cancelada || expiresAt - System.nanoTime() <= 0;
+  }
+
+  public <T> CompletableFuture<T> track(CompletableFuture<T> cf) {
+    pendientes.add(cf);
+    cf.whenComplete((r, e) -> pendientes.remove(cf));
+    if (cancelada) cf.cancel(true);
+    return cf;
+  }
+
+  public void cancelAll() {
+    cancelada = true;
+    for (CompletableFuture<?> cf : pendientes) cf.cancel(true);
+  }
+}
@@ -0,0 +1,110 @@
+package com.function;
+
+import graphql.ExecutionInput;
+import graphql.GraphqlErrorBuilder;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.execution.preparsed.persisted.PersistedQueryError;
+import graphql.execution.preparsed.persisted.PersistedQueryIdInvalid;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache LRU de documentos ya parseados y validados, con clave sha256 del texto de la query.
+ * También implementa Automatic Persisted Queries: si extensions.persistedQuery.sha256Hash
+ * viene sin query se busca el documento por hash; si no está, se responde
+ * PersistedQueryNotFound para que el cliente reenvíe la query completa una vez.
+ */
+public final class DocumentCache implements PreparsedDocumentProvider {
+  private final Map<String, PreparsedDocumentEntry> lru;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public DocumentCache(int maxEntries) {
+    this.lru = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparsedDocumentEntry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public PreparsedDocumentEntry getDocument(ExecutionInput input,
+      Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidate) {
+    String query = input.getQuery();
+    boolean hayQuery = query != null && !query.isBlank();
+    String apqHash = persistedHash(input.getExtensions());
+
+    String key;
+    if (apqHash != null) {
+      if (hayQuery && !apqHash.equalsIgnoreCase(sha256(query))) return error(new PersistedQueryIdInvalid(apqHash), "PERSISTED_QUERY_ID_INVALID", apqHash);
+      key = apqHash.toLowerCase();
+    } else {
+      key = sha256(hayQuery ? query : "");
+    }
+
+    PreparsedDocumentEntry entry;
+    synchronized (lru) {
+      entry = lru.get(key);
+    }
+    if (entry != null) {
+      hits.incrementAndGet();
+      return entry;
+    }
+    misses.incrementAndGet();
+    if (!hayQuery && apqHash != null) return error(new PersistedQueryNotFound(apqHash), "PERSISTED_QUERY_NOT_FOUND", apqHash);
+
+    entry = parseAndValidate.apply(input);
+    synchronized (lru) {
+      lru.put(key, entry);
+    }
+    return entry;
+  }
+
+  public Map<String, Object> stats() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    synchronized (lru) {
+      out.put("size", lru.size());
+    }
+    out.put("hits", hits.get());
+    out.put("misses", misses.get());
+    return out;
+  }
+
+  /** Mismo mensaje y código que esperan los clientes Apollo para reintentar con la query. */
+  private static PreparsedDocumentEntry error(PersistedQueryError tipo, String code, String hash) {
+    return new PreparsedDocumentEntry(GraphqlErrorBuilder.newError()
+        .errorType(tipo)
+        .message(tipo.getMessage())
+        .extensions(Map.of("code", code, "persistedQueryId", hash))
+        .build());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String persistedHash(Map<String, Object> extensions) {
+    if (extensions == null) return null;
+    Object pq = extensions.get("persistedQuery");
+    if (!(pq instanceof Map)) return null;
+    Object hash = ((Map<String, Object>) pq).get("sha256Hash");
+    return (hash instanceof String && !((String) hash).isBlank()) ? (String) hash : null;
+  }
+
+  static String sha256(String s) {
+    try {
+      byte[] d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(d.length * 2);
+      for (byte b : d) sb.append(String.format("%02x", b));
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
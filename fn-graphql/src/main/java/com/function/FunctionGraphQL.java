@@ -8,11 +8,17 @@ import graphql.ExecutionInput;
 import graphql.GraphQL;
 import graphql.Scalars;
 import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.FieldCoordinates;
 import graphql.schema.GraphQLCodeRegistry;
 import graphql.schema.GraphQLList;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLSchema;
+import org.dataloader.BatchLoaderWithContext;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.DataLoaderRegistry;
 
 import java.math.BigDecimal;
 import java.net.URI;
@@ -23,15 +29,49 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 
 public class FunctionGraphQL {
 
   private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final Duration UPSTREAM_TIMEOUT = Duration.ofSeconds(20);
+  private static final Duration DEADLINE = Duration.ofMillis(
+      Long.parseLong(Optional.ofNullable(System.getenv("GRAPHQL_DEADLINE_MS")).orElse("25000")));
+
+  // Pool acotado para las respuestas upstream: los fetchers no bloquean hilos del worker
+  private static final ExecutorService UPSTREAM_EXECUTOR = upstreamExecutor(
+      Integer.parseInt(Optional.ofNullable(System.getenv("GRAPHQL_UPSTREAM_THREADS")).orElse("16")),
+      Integer.parseInt(Optional.ofNullable(System.getenv("GRAPHQL_UPSTREAM_QUEUE")).orElse("512")));
+
   private static final HttpClient HTTP = HttpClient.newBuilder()
       .connectTimeout(Duration.ofSeconds(10))
+      .executor(UPSTREAM_EXECUTOR)
       .build();
 
+  private static ExecutorService upstreamExecutor(int threads, int queue) {
+    AtomicInteger n = new AtomicInteger();
+    ThreadPoolExecutor ex = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queue), r -> {
+          Thread t = new Thread(r, "gql-upstream-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+    ex.allowCoreThreadTimeOut(true);
+    return ex;
+  }
+
   private static String joinUrl(String base, String path) {
     String b = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
     String p = path.startsWith("/") ? path : ("/" + path);
@@ -41,7 +81,6 @@ public class FunctionGraphQL {
   private static HttpRequest.Builder get(String url, String key) {
     HttpRequest.Builder b = HttpRequest.newBuilder()
         .uri(URI.create(url))
-        .timeout(Duration.ofSeconds(20))
         .header("Accept", "application/json")
         .GET();
     if (key != null && !key.isBlank()) b.header("x-functions-key", key);
@@ -51,7 +90,6 @@ public class FunctionGraphQL {
   private static HttpRequest.Builder postJson(String url, String key, String json) {
     HttpRequest.Builder b = HttpRequest.newBuilder()
         .uri(URI.create(url))
-        .timeout(Duration.ofSeconds(20))
         .header("Accept", "application/json")
         .header("Content-Type", "application/json")
         .POST(HttpRequest.BodyPublishers.ofString(json));
@@ -59,24 +97,67 @@ public class FunctionGraphQL {
     return b;
   }
 
-  private static <T> T getJson(String url, String key, TypeReference<T> type) throws Exception {
-    HttpResponse<String> resp = HTTP.send(get(url, key).build(), HttpResponse.BodyHandlers.ofString());
-    if (resp.statusCode() / 100 == 2) return MAPPER.readValue(resp.body(), type);
-    throw new RuntimeException("GET " + url + " -> " + resp.statusCode() + " " + resp.body());
+  private static <T> CompletableFuture<T> getJson(String url, String key, TypeReference<T> type, Deadline d) {
+    return send(get(url, key), d).thenApply(resp -> {
+      if (resp.statusCode() / 100 == 2) return readValue(resp.body(), type);
+      throw new RuntimeException("GET " + url + " -> " + resp.statusCode() + " " + resp.body());
+    });
+  }
+
+  private static <T> CompletableFuture<T> postJson(String url, String key, Object body, TypeReference<T> type,
+      Deadline d) {
+    String json;
+    try {
+      json = MAPPER.writeValueAsString(body);
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return send(postJson(url, key, json), d).thenApply(resp -> {
+      if (resp.statusCode() / 100 == 2 || resp.statusCode() == 201) {
+        if (resp.body() == null || resp.body().isBlank()) return null;
+        return readValue(resp.body(), type);
+      }
+      throw new RuntimeException("POST " + url + " -> " + resp.statusCode() + " " + resp.body());
+    });
+  }
+
+  /**
+   * sendAsync con timeout acotado a lo que queda del plazo de la ejecución. Es lo que
+   * realmente corta la llamada: en Java 11 cancelar el CompletableFuture de sendAsync no
+   * aborta el intercambio HTTP, solo deja de esperarlo.
+   */
+  private static CompletableFuture<HttpResponse<String>> send(HttpRequest.Builder b, Deadline d) {
+    Duration left = d.remaining();
+    if (d.expired() || left.isZero()) return CompletableFuture.failedFuture(new TimeoutException("Plazo de ejecución agotado"));
+    b.timeout(left.compareTo(UPSTREAM_TIMEOUT) < 0 ? left : UPSTREAM_TIMEOUT);
+    try {
+      return d.track(HTTP.sendAsync(b.build(), HttpResponse.BodyHandlers.ofString()));
+    } catch (RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
   }
 
-  private static <T> T postJson(String url, String key, Object body, TypeReference<T> type) throws Exception {
-    String json = MAPPER.writeValueAsString(body);
-    HttpResponse<String> resp = HTTP.send(postJson(url, key, json).build(), HttpResponse.BodyHandlers.ofString());
-    if (resp.statusCode() / 100 == 2 || resp.statusCode() == 201) {
-      if (resp.body() == null || resp.body().isBlank()) return null;
-      return MAPPER.readValue(resp.body(), type);
+  private static <T> T readValue(String body, TypeReference<T> type) {
+    try {
+      return MAPPER.readValue(body, type);
+    } catch (Exception e) {
+      throw new CompletionException(e);
     }
-    throw new RuntimeException("POST " + url + " -> " + resp.statusCode() + " " + resp.body());
   }
 
   private static final GraphQL graphQL;
 
+  // Documentos parseados/validados por hash de la query (incluye Automatic Persisted Queries)
+  static final DocumentCache DOCUMENTS = new DocumentCache(
+      Integer.parseInt(Optional.ofNullable(System.getenv("GRAPHQL_DOC_CACHE_SIZE")).orElse("500")));
+
+  private static final String PRODUCTOS_POR_BODEGA = "productosPorBodega";
+  // Los ids van en la query string: 200 ids de hasta 18 dígitos más comas son ~3.800 bytes,
+  // bajo el límite de 4.096 de la URL en Azure Functions. Con más bodegas el DataLoader
+  // parte la carga en varios GET (también muy por debajo del IN de 1.000 de Oracle)
+  private static final int MAX_BODEGAS_POR_LOTE = 200;
+  private static final BatchLoaderWithContext<String, List<Map<String,Object>>> productosPorBodegaBL;
+
   static {
     // ==== Tipos ====
     GraphQLObjectType productoType = GraphQLObjectType.newObject()
@@ -110,54 +191,67 @@ public class FunctionGraphQL {
     final String URL_BOD_LIST  = joinUrl(BOD_BASE,  "/api/bodegas");
 
 
-    DataFetcher<List<Map<String,Object>>> productosDF = env -> {
-      List<Map<String,Object>> list = getJson(URL_PROD_LIST, PROD_KEY,
-          new TypeReference<List<Map<String,Object>>>() {});
+    // Los fetchers devuelven CompletableFuture: los campos hermanos se resuelven en paralelo
+    DataFetcher<CompletableFuture<List<Map<String,Object>>>> productosDF = env -> {
       String bodegaId = env.getArgument("bodegaId");
-      if (bodegaId == null || bodegaId.isBlank()) return list;
-
-      List<Map<String,Object>> out = new ArrayList<>();
-      for (Map<String,Object> p : list) {
-        Object bid = p.get("bodegaId");
-        if (bid != null && bodegaId.equals(String.valueOf(bid))) out.add(p);
+      String url = URL_PROD_LIST;
+      if (bodegaId != null && !bodegaId.isBlank()) {
+        // El filtro lo resuelve la base (WHERE BODEGA_ID = ?); un ID no numérico no tiene productos
+        if (!esId(bodegaId)) return CompletableFuture.completedFuture(List.of());
+        url = URL_PROD_LIST + "?bodegaId=" + bodegaId.trim();
       }
-      return out;
+      return getJson(url, PROD_KEY, new TypeReference<List<Map<String,Object>>>() {}, deadline(env));
     };
 
-    DataFetcher<Map<String,Object>> productoDF = env -> {
-      String id = String.valueOf(env.getArgument("id"));
+    DataFetcher<CompletableFuture<Map<String,Object>>> productoDF = env -> {
+      String id = Objects.toString(env.getArgument("id"));
       String url = joinUrl(PROD_BASE, "/api/productos/" + URLEncoder.encode(id, StandardCharsets.UTF_8));
-      return getJson(url, PROD_KEY, new TypeReference<Map<String,Object>>() {});
+      return getJson(url, PROD_KEY, new TypeReference<Map<String,Object>>() {}, deadline(env));
     };
 
-    DataFetcher<List<Map<String,Object>>> bodegasDF = env -> {
-      return getJson(URL_BOD_LIST, BOD_KEY, new TypeReference<List<Map<String,Object>>>() {});
+    DataFetcher<CompletableFuture<List<Map<String,Object>>>> bodegasDF = env -> {
+      return getJson(URL_BOD_LIST, BOD_KEY, new TypeReference<List<Map<String,Object>>>() {}, deadline(env));
     };
 
-    DataFetcher<Map<String,Object>> bodegaDF = env -> {
-      String id = String.valueOf(env.getArgument("id"));
+    DataFetcher<CompletableFuture<Map<String,Object>>> bodegaDF = env -> {
+      String id = Objects.toString(env.getArgument("id"));
       String url = joinUrl(BOD_BASE, "/api/bodegas/" + URLEncoder.encode(id, StandardCharsets.UTF_8));
-      return getJson(url, BOD_KEY, new TypeReference<Map<String,Object>>() {});
+      return getJson(url, BOD_KEY, new TypeReference<Map<String,Object>>() {}, deadline(env));
+    };
+
+    // Las bodegas de una consulta se resuelven con un GET a productos por cada
+    // MAX_BODEGAS_POR_LOTE, filtrado por ?bodegaId=1,2,3 (BODEGA_ID IN (...) en la base)
+    productosPorBodegaBL = (bodegaIds, ble) -> {
+      List<String> ids = new ArrayList<>(bodegaIds.size());
+      for (String id : bodegaIds) if (esId(id)) ids.add(id.trim());
+      if (ids.isEmpty()) {
+        return CompletableFuture.completedFuture(Collections.nCopies(bodegaIds.size(), List.<Map<String,Object>>of()));
+      }
+      String url = URL_PROD_LIST + "?bodegaId=" + String.join(",", ids);
+      Deadline d = ble.getContext();
+      return getJson(url, PROD_KEY, new TypeReference<List<Map<String,Object>>>() {}, d)
+          .thenApply(list -> {
+            Map<String, List<Map<String,Object>>> porBodega = new HashMap<>();
+            for (Map<String,Object> p : list) {
+              Object bid = p.get("bodegaId");
+              if (bid != null) porBodega.computeIfAbsent(String.valueOf(bid), k -> new ArrayList<>()).add(p);
+            }
+            List<List<Map<String,Object>>> out = new ArrayList<>(bodegaIds.size());
+            for (String id : bodegaIds) out.add(porBodega.getOrDefault(id.trim(), List.of()));
+            return out;
+          });
     };
 
-    DataFetcher<List<Map<String,Object>>> bodegaProductosDF = env -> {
+    DataFetcher<CompletableFuture<List<Map<String,Object>>>> bodegaProductosDF = env -> {
       @SuppressWarnings("unchecked")
       Map<String,Object> bodega = env.getSource();
       Object idObj = bodega.get("id");
-      if (idObj == null) return List.of();
-      String bodegaId = String.valueOf(idObj);
-
-      List<Map<String,Object>> list = getJson(URL_PROD_LIST, PROD_KEY,
-          new TypeReference<List<Map<String,Object>>>() {});
-      List<Map<String,Object>> out = new ArrayList<>();
-      for (Map<String,Object> p : list) {
-        Object bid = p.get("bodegaId");
-        if (bid != null && bodegaId.equals(String.valueOf(bid))) out.add(p);
-      }
-      return out;
+      if (idObj == null) return CompletableFuture.completedFuture(List.of());
+      DataLoader<String, List<Map<String,Object>>> loader = env.getDataLoader(PRODUCTOS_POR_BODEGA);
+      return loader.load(String.valueOf(idObj));
     };
 
-    DataFetcher<Map<String,Object>> crearProductoDF = env -> {
+    DataFetcher<CompletableFuture<Map<String,Object>>> crearProductoDF = env -> {
       String sku = env.getArgument("sku");
       String nombre = env.getArgument("nombre");
       Integer stock = env.getArgument("stock");
@@ -176,9 +270,8 @@ public class FunctionGraphQL {
         payload.put("bodegaId", null);
       }
 
-      Map<String,Object> created = postJson(URL_PROD_LIST, PROD_KEY, payload,
-          new TypeReference<Map<String,Object>>() {});
-      return created != null ? created : Map.of("status","created");
+      return postJson(URL_PROD_LIST, PROD_KEY, payload, new TypeReference<Map<String,Object>>() {}, deadline(env))
+          .thenApply(created -> created != null ? created : Map.of("status","created"));
     };
 
     GraphQLObjectType queryType = GraphQLObjectType.newObject()
@@ -225,7 +318,29 @@ public class FunctionGraphQL {
         .codeRegistry(codeRegistry)     
         .build();
 
-    graphQL = GraphQL.newGraphQL(schema).build();
+    graphQL = GraphQL.newGraphQL(schema)
+        .preparsedDocumentProvider(DOCUMENTS)
+        .build();
+  }
+
+  private static Deadline deadline(DataFetchingEnvironment env) {
+    return env.getGraphQlContext().get(Deadline.KEY);
+  }
+
+  /** Objeto JSON del body como mapa (las claves de un objeto JSON siempre son String). */
+  @SuppressWarnings("unchecked")
+  private static Map<String,Object> mapa(Object o) {
+    return o instanceof Map ? (Map<String,Object>) o : Map.of();
+  }
+
+  private static boolean esId(String s) {
+    String t = s.trim();
+    if (t.isEmpty() || t.length() > 18) return false;
+    for (int i = 0; i < t.length(); i++) {
+      char c = t.charAt(i);
+      if (c < '0' || c > '9') return false;
+    }
+    return true;
   }
 
   @FunctionName("graphql")
@@ -238,24 +353,61 @@ public class FunctionGraphQL {
       final ExecutionContext context
   ) {
     Map<String, Object> body = request.getBody();
-    if (body == null || !body.containsKey("query")) {
+    Map<String,Object> extensions = mapa(body == null ? null : body.get("extensions"));
+
+    // Con APQ el cliente puede mandar solo extensions.persistedQuery, sin query
+    if (body == null || (!body.containsKey("query") && !extensions.containsKey("persistedQuery"))) {
       return request.createResponseBuilder(HttpStatus.BAD_REQUEST)
           .header("Content-Type","application/json")
           .body(Map.of("error","Body JSON inválido. Esperado: { \"query\": \"...\" }"))
           .build();
     }
 
-    String query = String.valueOf(body.get("query"));
-    Map<String,Object> variables = Map.of();
-    Object vars = body.get("variables");
-    if (vars instanceof Map) variables = (Map<String,Object>) vars;
+    String query = body.get("query") == null ? "" : String.valueOf(body.get("query"));
+    Map<String,Object> variables = mapa(body.get("variables"));
+
+    Deadline deadline = new Deadline(DEADLINE);
+
+    // Registro por ejecución: el cache del DataLoader no se comparte entre requests
+    DataLoaderRegistry registry = new DataLoaderRegistry();
+    registry.register(PRODUCTOS_POR_BODEGA, DataLoaderFactory.newDataLoader(productosPorBodegaBL,
+        DataLoaderOptions.newOptions()
+            .setBatchLoaderContextProvider(() -> deadline)
+            .setMaxBatchSize(MAX_BODEGAS_POR_LOTE)));
 
     ExecutionInput input = ExecutionInput.newExecutionInput()
         .query(query)
         .variables(variables)
+        .extensions(extensions)
+        .dataLoaderRegistry(registry)
+        .graphQLContext(Map.of(Deadline.KEY, deadline))
         .build();
 
-    Map<String,Object> result = graphQL.execute(input).toSpecification();
+    Map<String,Object> result;
+    try {
+      result = graphQL.executeAsync(input)
+          .get(deadline.remaining().toMillis(), TimeUnit.MILLISECONDS)
+          .toSpecification();
+    } catch (TimeoutException e) {
+      return request.createResponseBuilder(HttpStatus.GATEWAY_TIMEOUT)
+          .header("Content-Type","application/json")
+          .body(Map.of("errors", List.of(Map.of("message", "Plazo de ejecución agotado (" + DEADLINE.toMillis() + " ms)"))))
+          .build();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return request.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    } catch (ExecutionException e) {
+      // El detalle (clase de la excepción, URLs upstream) queda en el log, no en la respuesta
+      context.getLogger().log(Level.SEVERE, "Error ejecutando GraphQL", e.getCause());
+      return request.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
+          .header("Content-Type","application/json")
+          .body(Map.of("errors", List.of(Map.of("message", "Error interno al resolver la consulta"))))
+          .build();
+    } finally {
+      // Deja de esperar lo pendiente y evita llamadas nuevas; las que ya salieron terminan
+      // por el timeout que send() les fijó con el plazo restante
+      deadline.cancelAll();
+    }
     return request.createResponseBuilder(HttpStatus.OK)
         .header("Content-Type","application/json")
         .body(result)
@@ -0,0 +1,32 @@
+package com.function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.db.Db;
+import com.function.events.EventBusEG;
+import com.microsoft.azure.functions.*;
+import com.microsoft.azure.functions.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+public class MetricsFunction {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @FunctionName("metrics")
+  public HttpResponseMessage run(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.GET }, authLevel = AuthorizationLevel.FUNCTION, route = "metrics") HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext ctx) throws Exception {
+
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("dbPool", Db.stats());
+    out.put("eventos", EventBusEG.stats());
+    out.put("cache", ProductosFunction.CACHE.stats());
+    return request.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .body(MAPPER.writeValueAsString(out))
+        .build();
+  }
+}
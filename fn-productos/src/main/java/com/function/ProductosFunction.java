@@ -1,8 +1,17 @@
 package com.function;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.cache.CachedJson;
+import com.function.cache.ETags;
+import com.function.cache.TtlCache;
 import com.function.db.Db;
+import com.function.db.JsonRows;
+import com.function.db.ProductoFiltro;
+import com.function.db.Umbrales;
+import com.function.db.Versiones;
 import com.function.model.Producto;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.*;
@@ -11,13 +20,33 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
-import com.function.events.EventBusEG;
+import com.function.events.Outbox;
+import com.function.events.OutboxRelay;
+import com.function.events.StockBajo;
 
 public class ProductosFunction {
 
   private static final ObjectMapper MAPPER = new ObjectMapper()
       .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
 
+  private static final String INSERT_PRODUCTO =
+      "INSERT INTO PRODUCTOS (SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID) VALUES (?,?,?,?,?)";
+  private static final int BULK_MAX_CHUNK = 5000;
+  /** Productos por evento LoteImportado: mantiene el evento bajo el límite de 1 MB de Event Grid
+   *  y el IN de la relectura de IDs bajo las 1000 expresiones de Oracle. */
+  private static final int MAX_EVENTO_LOTE = 1000;
+  /** Con REQUIRE_IF_MATCH=true un PUT sin If-Match ni "version" responde 428. */
+  private static final boolean REQUIRE_IF_MATCH =
+      Boolean.parseBoolean(System.getenv().getOrDefault("REQUIRE_IF_MATCH", "false"));
+
+  /**
+   * GET /productos/{id} ya serializado, por instancia. Cada escritura invalida la cache de la
+   * instancia que la atiende; las demás pueden servir el valor anterior hasta PRODUCTOS_CACHE_TTL_MS.
+   */
+  static final TtlCache<Long, CachedJson> CACHE = new TtlCache<>(
+      Integer.parseInt(System.getenv().getOrDefault("PRODUCTOS_CACHE_SIZE", "10000")),
+      Long.parseLong(System.getenv().getOrDefault("PRODUCTOS_CACHE_TTL_MS", "30000")));
+
   @FunctionName("productos")
   public HttpResponseMessage productosRoot(
       @HttpTrigger(name = "req", methods = { HttpMethod.GET,
@@ -60,26 +89,80 @@ public class ProductosFunction {
     }
   }
 
+  /**
+   * Carga masiva: acepta un arreglo JSON o NDJSON (un producto por línea).
+   * Inserta con addBatch/executeBatch en lotes de chunkSize filas, una transacción por lote.
+   */
+  @FunctionName("productosBulk")
+  public HttpResponseMessage productosBulk(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.POST }, authLevel = AuthorizationLevel.ANONYMOUS, route = "productos/bulk") HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext ctx) {
+    return importar(request);
+  }
+
   private HttpResponseMessage listar(HttpRequestMessage<?> req) throws SQLException, IOException {
+    ProductoFiltro filtro;
+    try {
+      filtro = ProductoFiltro.from(req.getQueryParameters());
+    } catch (IllegalArgumentException e) {
+      return badRequest(req, "{\"error\":\"" + e.getMessage().replace("\"", "'") + "\"}");
+    }
+
+    // La versión se lee antes que las filas: si cambia entre medio, el ETag queda atrás y el
+    // próximo GET vuelve a traer la lista (nunca al revés)
+    String etag = ETags.version(Versiones.PRODUCTOS, Versiones.actual(Versiones.PRODUCTOS));
+    if (ETags.coincide(ETags.ifNoneMatch(req), etag)) return notModified(req, etag);
+
     try (Connection con = Db.connect();
-        PreparedStatement ps = con.prepareStatement(
-            "SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID FROM PRODUCTOS ORDER BY ID");
-        ResultSet rs = ps.executeQuery()) {
-      List<Producto> out = new ArrayList<>();
-      while (rs.next())
-        out.add(map(rs));
-      return json(req, out, HttpStatus.OK);
+        PreparedStatement ps = con.prepareStatement(filtro.sql("ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID"))) {
+      filtro.bind(ps);
+      ps.setFetchSize(filtro.paginado() ? Math.min(filtro.limit() + 1, JsonRows.FETCH_SIZE) : JsonRows.FETCH_SIZE);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!filtro.paginado())
+          return jsonBytes(req, JsonRows.array(rs, ProductosFunction::writeRow), etag);
+
+        byte[] page = JsonRows.write(g -> {
+          g.writeStartObject();
+          g.writeArrayFieldStart("items");
+          int n = 0;
+          long lastId = 0;
+          while (n < filtro.limit() && rs.next()) {
+            writeRow(g, rs);
+            lastId = rs.getLong("ID");
+            n++;
+          }
+          g.writeEndArray();
+          // Se pidió limit+1: si sobra una fila hay página siguiente
+          if (n == filtro.limit() && rs.next())
+            g.writeStringField("nextCursor", String.valueOf(lastId));
+          else
+            g.writeNullField("nextCursor");
+          g.writeEndObject();
+        });
+        return jsonBytes(req, page, etag);
+      }
     }
   }
 
   private HttpResponseMessage obtener(HttpRequestMessage<?> req, long id) throws SQLException, IOException {
+    String ifNoneMatch = ETags.ifNoneMatch(req);
+    CachedJson cached = CACHE.get(id);
+    if (cached != null) return conETag(req, cached, ifNoneMatch);
+
+    long gen = CACHE.generation();
     try (Connection con = Db.connect();
         PreparedStatement ps = con.prepareStatement(
-            "SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID FROM PRODUCTOS WHERE ID=?")) {
+            "SELECT ID, SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID, VERSION FROM PRODUCTOS WHERE ID=?")) {
       ps.setLong(1, id);
       try (ResultSet rs = ps.executeQuery()) {
-        if (rs.next())
-          return json(req, map(rs), HttpStatus.OK);
+        if (rs.next()) {
+          Producto p = map(rs);
+          p.setVersion(rs.getLong("VERSION"));
+          CachedJson body = new CachedJson(MAPPER.writeValueAsString(p), p.getVersion());
+          CACHE.put(id, body, gen);
+          return conETag(req, body, ifNoneMatch);
+        }
         return req.createResponseBuilder(HttpStatus.NOT_FOUND).body("No encontrado").build();
       }
     }
@@ -107,18 +190,14 @@ public class ProductosFunction {
         in.setBodegaId(defId);
       }
 
-      try (PreparedStatement ps = con.prepareStatement(
-          "INSERT INTO PRODUCTOS (SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID) VALUES (?,?,?,?,?)"
-      )) {
-        ps.setString(1, in.getSku());
-        ps.setString(2, in.getNombre());
-        ps.setInt(3, in.getStock());
-        ps.setBigDecimal(4, in.getPrecio());
-        if (in.getBodegaId() == null) ps.setNull(5, Types.NUMERIC); else ps.setLong(5, in.getBodegaId());
+      con.setAutoCommit(false);
+      try (PreparedStatement ps = con.prepareStatement(INSERT_PRODUCTO, new String[] { "ID" })) {
+        bindInsert(ps, in);
 
         int rows = ps.executeUpdate();
         if (rows > 0) {
-          Long newId = fetchIdProductoBySku(con, in.getSku());
+          Long newId = generatedId(ps);
+          in.setId(newId);
           Map<String,Object> data = new HashMap<>();
           if (newId != null) data.put("id", newId);
           data.put("sku", in.getSku());
@@ -127,22 +206,25 @@ public class ProductosFunction {
           data.put("precio", in.getPrecio());
           if (in.getBodegaId() != null) data.put("bodegaId", in.getBodegaId());
 
-          EventBusEG.publish("Inventario.Producto.Creado",
+          Outbox.add(con, "Inventario.Producto.Creado",
               newId != null ? "/productos/"+newId : "/productos", data);
 
-          int umbral = Integer.parseInt(System.getenv().getOrDefault("UMBRAL_STOCK","10"));
-          if (in.getStock() < umbral) {
-            EventBusEG.publish("Inventario.Producto.StockBajo",
-                newId != null ? "/productos/"+newId : "/productos",
-                Map.of("stock", in.getStock(), "umbral", umbral, "sku", in.getSku()));
-          }
+          StockBajo.siCruza(con, newId, in.getSku(), in.getBodegaId(), null, in.getStock());
+          Versiones.incrementar(con, Versiones.PRODUCTOS);
 
-          return req.createResponseBuilder(HttpStatus.CREATED)
-              .header("Content-Type","application/json")
-              .body("{\"status\":\"created\"}")
-              .build();
+          con.commit();
+          Versiones.olvidar(Versiones.PRODUCTOS);
+          OutboxRelay.wake();
+          in.setVersion(0L);
+          return json(req, in, HttpStatus.CREATED);
         }
+        con.rollback();
         return serverError(req, "{\"error\":\"Insert no afectó filas\"}");
+      } catch (SQLException ex) {
+        con.rollback();
+        throw ex;
+      } finally {
+        con.setAutoCommit(true);
       }
     }
   } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
@@ -157,6 +239,195 @@ public class ProductosFunction {
 }
 
 
+  private HttpResponseMessage importar(HttpRequestMessage<Optional<String>> req) {
+    int chunk;
+    try {
+      String v = req.getQueryParameters().get("chunkSize");
+      chunk = (v == null || v.isBlank())
+          ? Integer.parseInt(System.getenv().getOrDefault("BULK_CHUNK_SIZE", "500"))
+          : Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return badRequest(req, "{\"error\":\"chunkSize inválido\"}");
+    }
+    if (chunk < 1 || chunk > BULK_MAX_CHUNK)
+      return badRequest(req, "{\"error\":\"chunkSize debe estar entre 1 y " + BULK_MAX_CHUNK + "\"}");
+
+    final String body = req.getBody().orElse("");
+    if (body.isBlank()) return badRequest(req, "{\"error\":\"Body vacío\"}");
+
+    List<Map<String, Object>> fallidos = new ArrayList<>();
+    int total = 0;
+    int insertados = 0;
+    try (Connection con = Db.connect();
+        MappingIterator<Producto> it = MAPPER.readerFor(Producto.class).readValues(body)) {
+      Long defBodega = null;
+      List<Producto> lote = new ArrayList<>(chunk);
+      List<Integer> indices = new ArrayList<>(chunk);
+
+      while (true) {
+        Producto p;
+        try {
+          if (!it.hasNextValue()) break;
+          p = it.nextValue();
+        } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
+          // Valor de tipo incorrecto en una fila: el iterador salta al final de ese objeto
+          fallidos.add(fallo(total++, null, "Fila inválida: " + jm.getOriginalMessage()));
+          continue;
+        } catch (com.fasterxml.jackson.core.JsonProcessingException jp) {
+          // Tras un error de sintaxis el parser no puede continuar: se procesa lo ya leído
+          fallidos.add(fallo(total, null, "JSON inválido: " + jp.getOriginalMessage()));
+          break;
+        }
+        int idx = total++;
+
+        if (isBlank(p.getSku()) || isBlank(p.getNombre())) {
+          fallidos.add(fallo(idx, p.getSku(), "sku y nombre son obligatorios"));
+          continue;
+        }
+        if (p.getStock() == null) p.setStock(0);
+        if (p.getPrecio() == null) p.setPrecio(BigDecimal.ZERO);
+        if (p.getBodegaId() == null) {
+          if (defBodega == null) defBodega = getDefaultBodegaId(con);
+          if (defBodega == null) {
+            fallidos.add(fallo(idx, p.getSku(), "No hay bodega por defecto configurada (DEFAULT_BODEGA_ID)"));
+            continue;
+          }
+          p.setBodegaId(defBodega);
+        }
+
+        lote.add(p);
+        indices.add(idx);
+        if (lote.size() == chunk) {
+          insertados += insertarLote(con, lote, indices, fallidos);
+          lote.clear();
+          indices.clear();
+        }
+      }
+      insertados += insertarLote(con, lote, indices, fallidos);
+
+      Map<String, Object> out = new LinkedHashMap<>();
+      out.put("total", total);
+      out.put("insertados", insertados);
+      out.put("fallidos", fallidos);
+      return json(req, out, HttpStatus.OK);
+    } catch (SQLException ex) {
+      return dbError(req, ex);
+    } catch (Exception e) {
+      return serverError(req, "{\"error\":\"server\",\"message\":\"" +
+          String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+    }
+  }
+
+  /**
+   * Inserta un lote en una sola transacción. Si executeBatch falla se revierte el lote y se
+   * reintenta fila a fila (con savepoint) para reportar exactamente qué filas fallan.
+   * Publica un evento agregado por lote (uno cada MAX_EVENTO_LOTE productos) y un
+   * Inventario.Producto.StockBajo por cada fila que entra bajo su umbral.
+   */
+  private static int insertarLote(Connection con, List<Producto> lote, List<Integer> indices,
+      List<Map<String, Object>> fallidos) throws SQLException {
+    if (lote.isEmpty()) return 0;
+
+    List<Producto> ok = new ArrayList<>(lote.size());
+    con.setAutoCommit(false);
+    try (PreparedStatement ps = con.prepareStatement(INSERT_PRODUCTO)) {
+      for (Producto p : lote) {
+        bindInsert(ps, p);
+        ps.addBatch();
+      }
+      try {
+        ps.executeBatch();
+        ok.addAll(lote);
+      } catch (BatchUpdateException be) {
+        con.rollback();
+        ps.clearBatch();
+        for (int i = 0; i < lote.size(); i++) {
+          Producto p = lote.get(i);
+          Savepoint sp = con.setSavepoint();
+          try {
+            bindInsert(ps, p);
+            ps.executeUpdate();
+            ok.add(p);
+          } catch (SQLException ex) {
+            con.rollback(sp);
+            fallidos.add(fallo(indices.get(i), p.getSku(), ex.getMessage()));
+          }
+        }
+      }
+      if (!ok.isEmpty()) {
+        for (int i = 0; i < ok.size(); i += MAX_EVENTO_LOTE) {
+          List<Producto> parte = ok.subList(i, Math.min(ok.size(), i + MAX_EVENTO_LOTE));
+          asignarIds(con, parte);
+          Outbox.add(con, "Inventario.Producto.LoteImportado", "/productos", datosLote(parte));
+          // Una alerta por fila bajo su umbral, para que el resumen por bodega también las vea
+          List<Outbox.Evento> alertas = new ArrayList<>();
+          for (Producto p : parte) {
+            Outbox.Evento ev = StockBajo.alerta(p.getId(), p.getSku(), p.getBodegaId(), null, p.getStock());
+            if (ev != null) alertas.add(ev);
+          }
+          Outbox.addAll(con, alertas);
+        }
+        Versiones.incrementar(con, Versiones.PRODUCTOS);
+      }
+      con.commit();
+    } catch (SQLException ex) {
+      con.rollback();
+      throw ex;
+    } finally {
+      con.setAutoCommit(true);
+    }
+    if (!ok.isEmpty()) {
+      Versiones.olvidar(Versiones.PRODUCTOS);
+      OutboxRelay.wake();
+    }
+    return ok.size();
+  }
+
+  /** El INSERT por lote no devuelve las claves generadas: se leen por SKU (único). */
+  private static void asignarIds(Connection con, List<Producto> parte) throws SQLException {
+    Map<String, Producto> porSku = new HashMap<>();
+    for (Producto p : parte) porSku.put(p.getSku(), p);
+    try (PreparedStatement ps = con.prepareStatement(
+        "SELECT ID, SKU FROM PRODUCTOS WHERE SKU IN (" +
+        String.join(", ", Collections.nCopies(porSku.size(), "?")) + ")")) {
+      int i = 1;
+      for (String sku : porSku.keySet()) ps.setString(i++, sku);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) porSku.get(rs.getString("SKU")).setId(rs.getLong("ID"));
+      }
+    }
+  }
+
+  private static Map<String, Object> datosLote(List<Producto> ok) {
+    List<String> skus = new ArrayList<>(ok.size());
+    List<Map<String, Object>> productos = new ArrayList<>(ok.size());
+    List<Map<String, Object>> stockBajo = new ArrayList<>();
+    for (Producto p : ok) {
+      skus.add(p.getSku());
+      Map<String, Object> item = new HashMap<>();
+      item.put("id", p.getId());
+      item.put("sku", p.getSku());
+      item.put("nombre", p.getNombre());
+      item.put("stock", p.getStock());
+      item.put("precio", p.getPrecio());
+      item.put("bodegaId", p.getBodegaId());
+      productos.add(item);
+      int umbral = Umbrales.para(p.getId(), p.getBodegaId());
+      if (p.getStock() < umbral)
+        stockBajo.add(Map.of("sku", p.getSku(), "stock", p.getStock(), "umbral", umbral));
+    }
+    Map<String, Object> data = new HashMap<>();
+    data.put("cantidad", ok.size());
+    data.put("skus", skus);
+    data.put("stockBajo", stockBajo);
+    data.put("productos", productos);
+    return data;
+  }
+
+  /**
+   * PUT con control optimista: si viene If-Match (o "version" en el body) el UPDATE exige esa
+   * VERSION; la fila nueva vuelve en el mismo statement (RETURNING), sin releer.
+   */
   private HttpResponseMessage actualizar(HttpRequestMessage<Optional<String>> req, long id) {
     try {
       Producto in = MAPPER.readValue(req.getBody().orElse("{}"), Producto.class);
@@ -165,40 +436,91 @@ public class ProductosFunction {
       if (in.getPrecio() == null)
         in.setPrecio(BigDecimal.ZERO);
 
-      try (Connection con = Db.connect();
-          PreparedStatement ps = con.prepareStatement(
-              "UPDATE PRODUCTOS SET SKU=?, NOMBRE=?, STOCK=?, PRECIO=?, BODEGA_ID=? WHERE ID=?")) {
-        ps.setString(1, in.getSku());
-        ps.setString(2, in.getNombre());
-        ps.setInt(3, in.getStock());
-        ps.setBigDecimal(4, in.getPrecio());
-        if (in.getBodegaId() == null)
-          ps.setNull(5, Types.NUMERIC);
-        else
-          ps.setLong(5, in.getBodegaId());
-        ps.setLong(6, id);
-
-        int rows = ps.executeUpdate();
-        if (rows == 0)
-          return req.createResponseBuilder(HttpStatus.NOT_FOUND).build();
-        Map<String, Object> data = new HashMap<>();
-        data.put("id", id);
-        data.put("sku", in.getSku());
-        data.put("nombre", in.getNombre());
-        data.put("stock", in.getStock());
-        data.put("precio", in.getPrecio());
-        if (in.getBodegaId() != null)
-          data.put("bodegaId", in.getBodegaId());
-        EventBusEG.publish("Inventario.Producto.Actualizado", "/productos/" + id, data);
-
-        int umbral = Integer.parseInt(System.getenv().getOrDefault("UMBRAL_STOCK", "10"));
-        if (in.getStock() < umbral) {
-          EventBusEG.publish("Inventario.Producto.StockBajo",
-              "/productos/" + id, Map.of("id", id, "stock", in.getStock(), "umbral", umbral, "sku", in.getSku()));
+      List<Long> esperadas = ETags.ifMatch(req);
+      if (esperadas == null && in.getVersion() != null) esperadas = List.of(in.getVersion());
+      if (esperadas == null && REQUIRE_IF_MATCH) return precondicionRequerida(req);
+
+      // Sin SELECT ... FOR UPDATE previo: si el stock nuevo queda bajo el umbral, un primer
+      // UPDATE exige STOCK >= umbral y su ROWCOUNT dice si cruzó. Solo si no tocó la fila va el
+      // UPDATE sin esa condición. Entre ambos otra transacción podría subir el stock y
+      // confirmar; esa carrera solo puede omitir una alerta, no duplicarla.
+      int umbral = Umbrales.para(id, in.getBodegaId());
+      boolean puedeCruzar = in.getStock() < umbral;
+      String update =
+          " UPDATE PRODUCTOS SET SKU=?, NOMBRE=?, STOCK=?, PRECIO=?, BODEGA_ID=?, VERSION=VERSION+1" +
+          " WHERE ID=?" + condicionVersion(esperadas);
+      String returning =
+          " RETURNING SKU, NOMBRE, STOCK, PRECIO, BODEGA_ID, VERSION" +
+          " INTO v_sku, v_nombre, v_stock, v_precio, v_bodega, v_version;";
+
+      Producto out;
+      try (Connection con = Db.connect()) {
+        con.setAutoCommit(false);
+        try (CallableStatement cs = con.prepareCall(
+            "DECLARE v_sku PRODUCTOS.SKU%TYPE; v_nombre PRODUCTOS.NOMBRE%TYPE; v_stock PRODUCTOS.STOCK%TYPE;" +
+            " v_precio PRODUCTOS.PRECIO%TYPE; v_bodega PRODUCTOS.BODEGA_ID%TYPE; v_version PRODUCTOS.VERSION%TYPE;" +
+            " v_filas NUMBER := 0; v_cruza NUMBER := 0; BEGIN" +
+            (puedeCruzar
+                ? update + " AND STOCK >= ?" + returning + " v_cruza := SQL%ROWCOUNT; v_filas := v_cruza;" +
+                  " IF v_cruza = 0 THEN" + update + returning + " v_filas := SQL%ROWCOUNT; END IF;"
+                : update + returning + " v_filas := SQL%ROWCOUNT;") +
+            " ? := v_sku; ? := v_nombre; ? := v_stock; ? := v_precio; ? := v_bodega; ? := v_version;" +
+            " ? := v_filas; ? := v_cruza; END;")) {
+          int i = 1;
+          if (puedeCruzar) {
+            i = bindUpdate(cs, i, in, id, esperadas);
+            cs.setInt(i++, umbral);
+          }
+          i = bindUpdate(cs, i, in, id, esperadas);
+          int ret = i;
+          cs.registerOutParameter(ret, Types.VARCHAR);
+          cs.registerOutParameter(ret + 1, Types.VARCHAR);
+          cs.registerOutParameter(ret + 2, Types.INTEGER);
+          cs.registerOutParameter(ret + 3, Types.NUMERIC);
+          cs.registerOutParameter(ret + 4, Types.NUMERIC);
+          cs.registerOutParameter(ret + 5, Types.NUMERIC);
+          cs.registerOutParameter(ret + 6, Types.INTEGER);
+          cs.registerOutParameter(ret + 7, Types.INTEGER);
+          cs.execute();
+
+          if (cs.getInt(ret + 6) == 0) {
+            con.rollback();
+            return sinActualizar(req, con, id);
+          }
+          BigDecimal bodega = cs.getBigDecimal(ret + 4);
+          out = new Producto(id, cs.getString(ret), cs.getString(ret + 1), cs.getInt(ret + 2),
+              cs.getBigDecimal(ret + 3), bodega == null ? null : bodega.longValue());
+          out.setVersion(cs.getLong(ret + 5));
+
+          Map<String, Object> data = new HashMap<>();
+          data.put("id", id);
+          data.put("sku", out.getSku());
+          data.put("nombre", out.getNombre());
+          data.put("stock", out.getStock());
+          data.put("precio", out.getPrecio());
+          if (out.getBodegaId() != null)
+            data.put("bodegaId", out.getBodegaId());
+          data.put("version", out.getVersion());
+          Outbox.add(con, "Inventario.Producto.Actualizado", "/productos/" + id, data);
+
+          if (cs.getInt(ret + 7) > 0) StockBajo.emitir(con, id, out.getSku(), out.getBodegaId(), out.getStock());
+          Versiones.incrementar(con, Versiones.PRODUCTOS);
+          con.commit();
+        } catch (SQLException ex) {
+          con.rollback();
+          throw ex;
+        } finally {
+          con.setAutoCommit(true);
         }
-
-        return obtener(req, id);
       }
+      CACHE.invalidate(id);
+      Versiones.olvidar(Versiones.PRODUCTOS);
+      OutboxRelay.wake();
+      return req.createResponseBuilder(HttpStatus.OK)
+          .header("Content-Type", "application/json")
+          .header("ETag", ETags.fila(out.getVersion()))
+          .body(MAPPER.writeValueAsString(out))
+          .build();
     } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
       return badRequest(req, "{\"error\":\"JSON inválido\",\"detalle\":\"" +
           jm.getOriginalMessage().replace("\"", "'") + "\"}");
@@ -211,15 +533,40 @@ public class ProductosFunction {
   }
 
   private HttpResponseMessage eliminar(HttpRequestMessage<?> req, long id) {
-    try (Connection con = Db.connect();
-        PreparedStatement ps = con.prepareStatement("DELETE FROM PRODUCTOS WHERE ID=?")) {
-      ps.setLong(1, id);
-      int rows = ps.executeUpdate();
+    List<Long> esperadas = ETags.ifMatch(req);
+    try (Connection con = Db.connect()) {
+      int rows;
+      con.setAutoCommit(false);
+      try (PreparedStatement ps = con.prepareStatement(
+          "DELETE FROM PRODUCTOS WHERE ID=?" + condicionVersion(esperadas))) {
+        int i = 1;
+        ps.setLong(i++, id);
+        if (esperadas != null) {
+          for (Long v : esperadas) ps.setLong(i++, v);
+        }
+        rows = ps.executeUpdate();
+        if (rows == 0 && esperadas != null) {
+          con.rollback();
+          return sinActualizar(req, con, id);
+        }
 
-      if (rows > 0) {
-        EventBusEG.publish("Inventario.Producto.Eliminado", "/productos/" + id, Map.of("id", id));
+        if (rows > 0) {
+          Outbox.add(con, "Inventario.Producto.Eliminado", "/productos/" + id, Map.of("id", id));
+          Versiones.incrementar(con, Versiones.PRODUCTOS);
+        }
+        con.commit();
+      } catch (SQLException ex) {
+        con.rollback();
+        throw ex;
+      } finally {
+        con.setAutoCommit(true);
       }
 
+      if (rows > 0) {
+        CACHE.invalidate(id);
+        Versiones.olvidar(Versiones.PRODUCTOS);
+        OutboxRelay.wake();
+      }
       return req.createResponseBuilder(rows > 0 ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND).build();
     } catch (SQLException ex) {
       return dbError(req, ex);
@@ -228,6 +575,55 @@ public class ProductosFunction {
 
   /* ================== Helpers ================== */
 
+  /** SET y WHERE del UPDATE del PUT (el bloque puede llevarlo dos veces). */
+  private static int bindUpdate(CallableStatement cs, int i, Producto in, long id, List<Long> esperadas)
+      throws SQLException {
+    cs.setString(i++, in.getSku());
+    cs.setString(i++, in.getNombre());
+    cs.setInt(i++, in.getStock());
+    cs.setBigDecimal(i++, in.getPrecio());
+    if (in.getBodegaId() == null)
+      cs.setNull(i++, Types.NUMERIC);
+    else
+      cs.setLong(i++, in.getBodegaId());
+    cs.setLong(i++, id);
+    if (esperadas != null) {
+      for (Long v : esperadas) cs.setLong(i++, v);
+    }
+    return i;
+  }
+
+  /** null: sin condición; lista vacía: ningún If-Match válido, no puede coincidir. */
+  private static String condicionVersion(List<Long> esperadas) {
+    if (esperadas == null) return "";
+    if (esperadas.isEmpty()) return " AND 1=0";
+    return " AND VERSION IN (" + String.join(", ", Collections.nCopies(esperadas.size(), "?")) + ")";
+  }
+
+  /** El UPDATE/DELETE condicional no tocó filas: o no existe (404) o cambió de versión (412). */
+  private static HttpResponseMessage sinActualizar(HttpRequestMessage<?> req, Connection con, long id)
+      throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT VERSION FROM PRODUCTOS WHERE ID=?")) {
+      ps.setLong(1, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) return req.createResponseBuilder(HttpStatus.NOT_FOUND).build();
+        long actual = rs.getLong(1);
+        return req.createResponseBuilder(HttpStatus.PRECONDITION_FAILED)
+            .header("Content-Type", "application/json")
+            .header("ETag", ETags.fila(actual))
+            .body("{\"error\":\"La versión no coincide\",\"version\":" + actual + "}")
+            .build();
+      }
+    }
+  }
+
+  private static HttpResponseMessage precondicionRequerida(HttpRequestMessage<?> req) {
+    return req.createResponseBuilder(HttpStatus.PRECONDITION_REQUIRED)
+        .header("Content-Type", "application/json")
+        .body("{\"error\":\"Falta If-Match\"}")
+        .build();
+  }
+
   private static Producto map(ResultSet rs) throws SQLException {
     Long bodegaId = (rs.getObject("BODEGA_ID") == null ? null : rs.getLong("BODEGA_ID"));
     return new Producto(
@@ -239,6 +635,42 @@ public class ProductosFunction {
         bodegaId);
   }
 
+  private static void bindInsert(PreparedStatement ps, Producto in) throws SQLException {
+    ps.setString(1, in.getSku());
+    ps.setString(2, in.getNombre());
+    ps.setInt(3, in.getStock());
+    ps.setBigDecimal(4, in.getPrecio());
+    if (in.getBodegaId() == null) ps.setNull(5, Types.NUMERIC); else ps.setLong(5, in.getBodegaId());
+  }
+
+  private static Map<String, Object> fallo(int index, String sku, String error) {
+    Map<String, Object> f = new LinkedHashMap<>();
+    f.put("index", index);
+    f.put("sku", sku);
+    f.put("error", error);
+    return f;
+  }
+
+  /**
+   * Mismo formato que la serialización de {@link Producto} con Jackson, salvo "version": el
+   * listado no la trae para resolverse solo con IDX_PRODUCTOS_BODEGA_LISTA. La versión (ETag
+   * para If-Match) sale del GET por id.
+   */
+  private static void writeRow(JsonGenerator g, ResultSet rs) throws IOException, SQLException {
+    g.writeStartObject();
+    g.writeNumberField("id", rs.getLong("ID"));
+    g.writeStringField("sku", rs.getString("SKU"));
+    g.writeStringField("nombre", rs.getString("NOMBRE"));
+    g.writeNumberField("stock", rs.getInt("STOCK"));
+    g.writeNumberField("precio", rs.getBigDecimal("PRECIO"));
+    long bodegaId = rs.getLong("BODEGA_ID");
+    if (rs.wasNull())
+      g.writeNullField("bodegaId");
+    else
+      g.writeNumberField("bodegaId", bodegaId);
+    g.writeEndObject();
+  }
+
   private static Long getDefaultBodegaId(Connection con) throws SQLException {
     String env = System.getenv("DEFAULT_BODEGA_ID");
     if (env != null && !env.isBlank()) {
@@ -257,14 +689,10 @@ public class ProductosFunction {
     }
   }
 
-  private static Long fetchIdProductoBySku(Connection con, String sku) {
-    try (PreparedStatement q = con.prepareStatement("SELECT ID FROM PRODUCTOS WHERE SKU=?")) {
-      q.setString(1, sku);
-      try (ResultSet rs = q.executeQuery()) {
-        return rs.next() ? rs.getLong(1) : null;
-      }
-    } catch (SQLException e) {
-      return null;
+  /** ID asignado por la identity, devuelto en el mismo INSERT (RETURNING ID INTO en Oracle). */
+  private static Long generatedId(PreparedStatement ps) throws SQLException {
+    try (ResultSet keys = ps.getGeneratedKeys()) {
+      return keys.next() ? keys.getLong(1) : null;
     }
   }
 
@@ -276,6 +704,27 @@ public class ProductosFunction {
         .build();
   }
 
+  private static HttpResponseMessage conETag(HttpRequestMessage<?> req, CachedJson json, String ifNoneMatch) {
+    if (ETags.coincide(ifNoneMatch, json.etag)) return notModified(req, json.etag);
+    return req.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .header("ETag", json.etag)
+        .body(json.body)
+        .build();
+  }
+
+  private static HttpResponseMessage jsonBytes(HttpRequestMessage<?> req, byte[] body, String etag) {
+    return req.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .header("ETag", etag)
+        .body(body)
+        .build();
+  }
+
+  private static HttpResponseMessage notModified(HttpRequestMessage<?> req, String etag) {
+    return req.createResponseBuilder(HttpStatus.NOT_MODIFIED).header("ETag", etag).build();
+  }
+
   private static HttpResponseMessage badRequest(HttpRequestMessage<?> req, String body) {
     return req.createResponseBuilder(HttpStatus.BAD_REQUEST)
         .header("Content-Type", "application/json").body(body).build();
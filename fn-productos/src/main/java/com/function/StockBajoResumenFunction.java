@@ -0,0 +1,22 @@
+package com.function;
+
+import com.function.events.StockBajo;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+
+/**
+ * Cada 5 minutos agrupa las alertas de stock bajo de la ventana en un evento por bodega.
+ * El timer corre en una sola instancia a la vez; la marca en MARCAS_PROCESO hace que cada
+ * alerta entre en un solo resumen aunque se salte o repita una ejecución.
+ */
+public class StockBajoResumenFunction {
+
+  @FunctionName("stockBajoResumen")
+  public void run(
+      @TimerTrigger(name = "timer", schedule = "0 */5 * * * *") String timerInfo,
+      final ExecutionContext ctx) throws Exception {
+    int n = StockBajo.resumir();
+    if (n > 0) ctx.getLogger().info("Stock bajo: " + n + " resúmenes por bodega");
+  }
+}
@@ -0,0 +1,371 @@
+package com.function;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.db.Db;
+import com.function.db.Versiones;
+import com.function.events.Outbox;
+import com.function.events.OutboxRelay;
+import com.function.events.StockBajo;
+import com.function.model.MovimientoStock;
+import com.microsoft.azure.functions.*;
+import com.microsoft.azure.functions.annotation.*;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Movimientos de stock relativos (delta), atómicos en la base: STOCK = STOCK + delta solo si
+ * el resultado no queda negativo. A diferencia del PUT de productos no pisa las demás
+ * columnas, así que movimientos concurrentes sobre el mismo producto no se pierden.
+ */
+public class StockFunction {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+
+  /** Oracle admite hasta 1000 expresiones en un IN (resolución de SKU y relectura). */
+  private static final int MAX_MOVIMIENTOS = 1000;
+
+  private static final String AJUSTAR =
+      "BEGIN UPDATE PRODUCTOS SET STOCK = STOCK + ?, VERSION = VERSION + 1 WHERE ID = ? AND STOCK + ? >= 0 " +
+      "RETURNING STOCK, SKU, VERSION, BODEGA_ID INTO ?, ?, ?, ?; ? := SQL%ROWCOUNT; END;";
+  private static final String AJUSTAR_LOTE =
+      "UPDATE PRODUCTOS SET STOCK = STOCK + ?, VERSION = VERSION + 1 WHERE ID = ? AND STOCK + ? >= 0";
+
+  @FunctionName("productosStock")
+  public HttpResponseMessage productosStock(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.PATCH }, authLevel = AuthorizationLevel.ANONYMOUS, route = "productos/{id}/stock") HttpRequestMessage<Optional<String>> request,
+      @BindingName("id") String idStr,
+      final ExecutionContext ctx) {
+    long id;
+    try {
+      id = Long.parseLong(idStr);
+    } catch (NumberFormatException e) {
+      return badRequest(request, "{\"error\":\"id inválido\"}");
+    }
+    return ajustar(request, id);
+  }
+
+  /** Lote: [{"id":1,"delta":-2},{"sku":"SKU-0002","delta":5}, ...] en una sola transacción. */
+  @FunctionName("productosStockLote")
+  public HttpResponseMessage productosStockLote(
+      @HttpTrigger(name = "req", methods = {
+          HttpMethod.PATCH }, authLevel = AuthorizationLevel.ANONYMOUS, route = "productos/stock") HttpRequestMessage<Optional<String>> request,
+      final ExecutionContext ctx) {
+    return ajustarLote(request);
+  }
+
+  private HttpResponseMessage ajustar(HttpRequestMessage<Optional<String>> req, long id) {
+    try {
+      MovimientoStock in = MAPPER.readValue(req.getBody().orElse("{}"), MovimientoStock.class);
+      String invalido = validar(in.getDelta());
+      if (invalido != null) return badRequest(req, "{\"error\":\"" + invalido + "\"}");
+      int delta = in.getDelta();
+
+      Map<String, Object> out = new LinkedHashMap<>();
+      try (Connection con = Db.connect()) {
+        con.setAutoCommit(false);
+        try (CallableStatement cs = con.prepareCall(AJUSTAR)) {
+          cs.setInt(1, delta);
+          cs.setLong(2, id);
+          cs.setInt(3, delta);
+          cs.registerOutParameter(4, Types.INTEGER);
+          cs.registerOutParameter(5, Types.VARCHAR);
+          cs.registerOutParameter(6, Types.NUMERIC);
+          cs.registerOutParameter(7, Types.NUMERIC);
+          cs.registerOutParameter(8, Types.INTEGER);
+          cs.execute();
+
+          if (cs.getInt(8) == 0) {
+            con.rollback();
+            return sinAjuste(req, con, id);
+          }
+          int stock = cs.getInt(4);
+          String sku = cs.getString(5);
+          long bodega = cs.getLong(7);
+          List<Outbox.Evento> eventos = new ArrayList<>(2);
+          registrar(eventos, id, sku, cs.wasNull() ? null : bodega, delta, stock);
+          Outbox.addAll(con, eventos);
+          Versiones.incrementar(con, Versiones.PRODUCTOS);
+          con.commit();
+
+          out.put("id", id);
+          out.put("sku", sku);
+          out.put("stock", stock);
+          out.put("version", cs.getLong(6));
+        } catch (SQLException ex) {
+          con.rollback();
+          throw ex;
+        } finally {
+          con.setAutoCommit(true);
+        }
+      }
+      ProductosFunction.CACHE.invalidate(id);
+      Versiones.olvidar(Versiones.PRODUCTOS);
+      OutboxRelay.wake();
+      return json(req, out);
+    } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
+      return badRequest(req, "{\"error\":\"JSON inválido\",\"detalle\":\"" +
+          jm.getOriginalMessage().replace("\"", "'") + "\"}");
+    } catch (SQLException ex) {
+      return dbError(req, ex);
+    } catch (Exception e) {
+      return serverError(req, "{\"error\":\"server\",\"message\":\"" +
+          String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+    }
+  }
+
+  /**
+   * Un solo executeBatch para todos los movimientos. Se aplican ordenados por id de producto
+   * (los de un mismo producto, en el orden recibido): dos lotes concurrentes toman los locks
+   * de fila en el mismo orden y no pueden quedar en deadlock (ORA-00060). Los movimientos
+   * que dejarían stock negativo se rechazan sin afectar al resto del lote. Los eventos van
+   * al OUTBOX en un solo executeBatch.
+   */
+  private HttpResponseMessage ajustarLote(HttpRequestMessage<Optional<String>> req) {
+    try {
+      List<MovimientoStock> movs = MAPPER.readValue(req.getBody().orElse("[]"),
+          new TypeReference<List<MovimientoStock>>() {});
+      if (movs.isEmpty()) return badRequest(req, "{\"error\":\"Lote vacío\"}");
+      if (movs.size() > MAX_MOVIMIENTOS)
+        return badRequest(req, "{\"error\":\"El lote admite a lo más " + MAX_MOVIMIENTOS + " movimientos\"}");
+
+      List<Map<String, Object>> rechazados = new ArrayList<>();
+      List<Map<String, Object>> stock = new ArrayList<>();
+      Set<Long> afectados = new LinkedHashSet<>();
+      int aplicados = 0;
+
+      try (Connection con = Db.connect()) {
+        con.setAutoCommit(false);
+        try {
+          Map<String, Long> idsPorSku = idsPorSku(con, movs);
+
+          List<Integer> indices = new ArrayList<>(movs.size());
+          List<Long> ids = new ArrayList<>(movs.size());
+          for (int i = 0; i < movs.size(); i++) {
+            MovimientoStock m = movs.get(i);
+            String invalido = validar(m.getDelta());
+            Long id = m.getId() != null ? m.getId() : idsPorSku.get(m.getSku());
+            if (invalido == null && m.getId() == null && isBlank(m.getSku()))
+              invalido = "id o sku es obligatorio";
+            if (invalido == null && id == null) invalido = "Producto no encontrado";
+            if (invalido != null) {
+              rechazados.add(rechazo(i, m, invalido));
+              continue;
+            }
+            indices.add(i);
+            ids.add(id);
+          }
+          // Orden estable por id: indices.get(k) sigue apuntando al movimiento original
+          Integer[] orden = new Integer[indices.size()];
+          for (int k = 0; k < orden.length; k++) orden[k] = k;
+          Arrays.sort(orden, Comparator.comparing(ids::get));
+          List<Integer> indicesOrden = new ArrayList<>(orden.length);
+          List<Long> idsOrden = new ArrayList<>(orden.length);
+          for (int k : orden) {
+            indicesOrden.add(indices.get(k));
+            idsOrden.add(ids.get(k));
+          }
+          indices = indicesOrden;
+          ids = idsOrden;
+
+          try (PreparedStatement ps = con.prepareStatement(AJUSTAR_LOTE)) {
+            for (int k = 0; k < indices.size(); k++) {
+              int delta = movs.get(indices.get(k)).getDelta();
+              ps.setInt(1, delta);
+              ps.setLong(2, ids.get(k));
+              ps.setInt(3, delta);
+              ps.addBatch();
+            }
+
+            int[] counts = indices.isEmpty() ? new int[0] : ps.executeBatch();
+            Map<Long, Integer> deltaAplicado = new LinkedHashMap<>();
+            List<Integer> sinAplicar = new ArrayList<>();
+            for (int k = 0; k < counts.length; k++) {
+              if (counts[k] == 0) {
+                sinAplicar.add(k);
+              } else {
+                deltaAplicado.merge(ids.get(k), movs.get(indices.get(k)).getDelta(), Integer::sum);
+                aplicados++;
+              }
+            }
+
+            // Una relectura para el stock final y para distinguir "no existe" de "stock insuficiente"
+            Map<Long, Object[]> actuales = leer(con, new LinkedHashSet<>(ids));
+            for (int k : sinAplicar) {
+              int i = indices.get(k);
+              rechazados.add(rechazo(i, movs.get(i),
+                  actuales.containsKey(ids.get(k)) ? "Stock insuficiente" : "Producto no encontrado"));
+            }
+            rechazados.sort(Comparator.comparingInt(r -> (Integer) r.get("index")));
+
+            List<Outbox.Evento> eventos = new ArrayList<>(deltaAplicado.size());
+            for (Map.Entry<Long, Integer> e : deltaAplicado.entrySet()) {
+              Object[] fila = actuales.get(e.getKey());
+              String sku = (String) fila[0];
+              int stockFinal = (Integer) fila[1];
+              registrar(eventos, e.getKey(), sku, (Long) fila[2], e.getValue(), stockFinal);
+              afectados.add(e.getKey());
+
+              Map<String, Object> s = new LinkedHashMap<>();
+              s.put("id", e.getKey());
+              s.put("sku", sku);
+              s.put("stock", stockFinal);
+              stock.add(s);
+            }
+            Outbox.addAll(con, eventos);
+          }
+          if (!afectados.isEmpty()) Versiones.incrementar(con, Versiones.PRODUCTOS);
+          con.commit();
+        } catch (SQLException ex) {
+          con.rollback();
+          throw ex;
+        } finally {
+          con.setAutoCommit(true);
+        }
+      }
+
+      for (Long id : afectados) ProductosFunction.CACHE.invalidate(id);
+      if (!afectados.isEmpty()) {
+        Versiones.olvidar(Versiones.PRODUCTOS);
+        OutboxRelay.wake();
+      }
+
+      Map<String, Object> out = new LinkedHashMap<>();
+      out.put("total", movs.size());
+      out.put("aplicados", aplicados);
+      out.put("rechazados", rechazados);
+      out.put("stock", stock);
+      return json(req, out);
+    } catch (com.fasterxml.jackson.databind.JsonMappingException jm) {
+      return badRequest(req, "{\"error\":\"JSON inválido\",\"detalle\":\"" +
+          jm.getOriginalMessage().replace("\"", "'") + "\"}");
+    } catch (SQLException ex) {
+      return dbError(req, ex);
+    } catch (Exception e) {
+      return serverError(req, "{\"error\":\"server\",\"message\":\"" +
+          String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+    }
+  }
+
+  /* ================== Helpers ================== */
+
+  private static String validar(Integer delta) {
+    if (delta == null) return "delta es obligatorio";
+    if (delta == 0) return "delta no puede ser 0";
+    return null;
+  }
+
+  /**
+   * Evento por producto con el delta neto y el stock resultante. StockBajo solo cuando el
+   * movimiento cruza el umbral hacia abajo, no en cada salida de un producto ya bajo.
+   * Se acumulan en eventos para escribirlos con un solo {@link Outbox#addAll}.
+   */
+  private static void registrar(List<Outbox.Evento> eventos, long id, String sku, Long bodegaId, int delta,
+      int stock) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("id", id);
+    data.put("sku", sku);
+    data.put("delta", delta);
+    data.put("stock", stock);
+    if (bodegaId != null) data.put("bodegaId", bodegaId);
+    eventos.add(new Outbox.Evento("Inventario.Producto.StockAjustado", "/productos/" + id, data));
+
+    Outbox.Evento alerta = StockBajo.alerta(id, sku, bodegaId, stock - delta, stock);
+    if (alerta != null) eventos.add(alerta);
+  }
+
+  private static HttpResponseMessage sinAjuste(HttpRequestMessage<?> req, Connection con, long id) throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT STOCK FROM PRODUCTOS WHERE ID=?")) {
+      ps.setLong(1, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (!rs.next()) return req.createResponseBuilder(HttpStatus.NOT_FOUND).body("No encontrado").build();
+        return req.createResponseBuilder(HttpStatus.CONFLICT)
+            .header("Content-Type", "application/json")
+            .body("{\"error\":\"Stock insuficiente\",\"stock\":" + rs.getInt(1) + "}")
+            .build();
+      }
+    }
+  }
+
+  private static Map<String, Long> idsPorSku(Connection con, List<MovimientoStock> movs) throws SQLException {
+    Set<String> skus = new LinkedHashSet<>();
+    for (MovimientoStock m : movs) {
+      if (m.getId() == null && !isBlank(m.getSku())) skus.add(m.getSku());
+    }
+    Map<String, Long> out = new HashMap<>();
+    if (skus.isEmpty()) return out;
+    try (PreparedStatement ps = con.prepareStatement(
+        "SELECT ID, SKU FROM PRODUCTOS WHERE SKU IN (" + marcadores(skus.size()) + ")")) {
+      int i = 1;
+      for (String sku : skus) ps.setString(i++, sku);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) out.put(rs.getString("SKU"), rs.getLong("ID"));
+      }
+    }
+    return out;
+  }
+
+  /** id → {sku, stock, bodegaId}, dentro de la misma transacción (ve los cambios del lote). */
+  private static Map<Long, Object[]> leer(Connection con, Set<Long> ids) throws SQLException {
+    Map<Long, Object[]> out = new HashMap<>();
+    if (ids.isEmpty()) return out;
+    try (PreparedStatement ps = con.prepareStatement(
+        "SELECT ID, SKU, STOCK, BODEGA_ID FROM PRODUCTOS WHERE ID IN (" + marcadores(ids.size()) + ")")) {
+      int i = 1;
+      for (Long id : ids) ps.setLong(i++, id);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          long bodega = rs.getLong("BODEGA_ID");
+          out.put(rs.getLong("ID"), new Object[] { rs.getString("SKU"), rs.getInt("STOCK"), rs.wasNull() ? null : bodega });
+        }
+      }
+    }
+    return out;
+  }
+
+  private static String marcadores(int n) {
+    return String.join(", ", Collections.nCopies(n, "?"));
+  }
+
+  private static Map<String, Object> rechazo(int index, MovimientoStock m, String error) {
+    Map<String, Object> r = new LinkedHashMap<>();
+    r.put("index", index);
+    if (m.getId() != null) r.put("id", m.getId());
+    if (m.getSku() != null) r.put("sku", m.getSku());
+    r.put("error", error);
+    return r;
+  }
+
+  private static HttpResponseMessage json(HttpRequestMessage<?> req, Object body) throws java.io.IOException {
+    return req.createResponseBuilder(HttpStatus.OK)
+        .header("Content-Type", "application/json")
+        .body(MAPPER.writeValueAsString(body))
+        .build();
+  }
+
+  private static HttpResponseMessage badRequest(HttpRequestMessage<?> req, String body) {
+    return req.createResponseBuilder(HttpStatus.BAD_REQUEST)
+        .header("Content-Type", "application/json").body(body).build();
+  }
+
+  private static HttpResponseMessage serverError(HttpRequestMessage<?> req, String body) {
+    return req.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
+        .header("Content-Type", "application/json").body(body).build();
+  }
+
+  private static HttpResponseMessage dbError(HttpRequestMessage<?> req, SQLException ex) {
+    String body = "{\"error\":\"DB\",\"sqlstate\":\"" + ex.getSQLState() +
+        "\",\"code\":" + ex.getErrorCode() +
+        ",\"message\":\"" + ex.getMessage().replace("\"", "'") + "\"}";
+    return req.createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
+        .header("Content-Type", "application/json").body(body).build();
+  }
+
+  private static boolean isBlank(String s) {
+    return s == null || s.trim().isEmpty();
+  }
+}
@@ -0,0 +1,12 @@
+package com.function.cache;
+
+/** Cuerpo JSON ya serializado junto con su ETag fuerte (versión de la fila). */
+public final class CachedJson {
+  public final String body;
+  public final String etag;
+
+  public CachedJson(String body, long version) {
+    this.body = body;
+    this.etag = ETags.fila(version);
+  }
+}
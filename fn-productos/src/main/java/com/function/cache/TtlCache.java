@@ -0,0 +1,120 @@
+package com.function.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache en memoria acotada por tamaño (LRU) y por TTL, para lecturas por ID.
+ *
+ * La invalidación sube un contador de generación: un valor leído de la base antes de una
+ * invalidación no se guarda después de ella (ver {@link #generation()} / {@link #put}),
+ * así una lectura lenta no puede dejar en cache una fila que ya cambió.
+ */
+public final class TtlCache<K, V> {
+  private static final class Item<V> {
+    final V value;
+    final long expiresAt;
+
+    Item(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final int maxSize;
+  private final long ttlNanos;
+  private final Map<K, Item<V>> map;
+  private long generation;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public TtlCache(int maxSize, long ttlMs) {
+    this.maxSize = maxSize;
+    this.ttlNanos = ttlMs * 1_000_000L;
+    this.map = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Item<V>> eldest) {
+        if (size() <= TtlCache.this.maxSize) return false;
+        evictions.incrementAndGet();
+        return true;
+      }
+    };
+  }
+
+  /** Cache deshabilitada (tamaño o TTL en 0): get siempre falla y put no guarda. */
+  public boolean enabled() {
+    return maxSize > 0 && ttlNanos > 0;
+  }
+
+  public synchronized V get(K key) {
+    Item<V> e = map.get(key);
+    if (e == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (System.nanoTime() - e.expiresAt >= 0) {
+      map.remove(key);
+      expirations.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return e.value;
+  }
+
+  /** Tomar antes de leer de la base y pasar a {@link #put}. */
+  public synchronized long generation() {
+    return generation;
+  }
+
+  /** Guarda solo si no hubo invalidaciones desde {@code gen}. */
+  public synchronized void put(K key, V value, long gen) {
+    if (!enabled() || gen != generation) return;
+    map.put(key, new Item<>(value, System.nanoTime() + ttlNanos));
+  }
+
+  public synchronized void invalidate(K key) {
+    generation++;
+    if (map.remove(key) != null) invalidations.incrementAndGet();
+  }
+
+  public synchronized void invalidateAll() {
+    generation++;
+    invalidations.addAndGet(map.size());
+    map.clear();
+  }
+
+  public Map<String, Object> stats() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    synchronized (this) {
+      purgeExpired();
+      out.put("size", map.size());
+    }
+    out.put("maxSize", maxSize);
+    out.put("ttlMs", ttlNanos / 1_000_000L);
+    long h = hits.get(), m = misses.get();
+    out.put("hits", h);
+    out.put("misses", m);
+    out.put("hitRatio", (h + m) == 0 ? 0.0 : (double) h / (h + m));
+    out.put("evictions", evictions.get());
+    out.put("expirations", expirations.get());
+    out.put("invalidations", invalidations.get());
+    return out;
+  }
+
+  private void purgeExpired() {
+    long now = System.nanoTime();
+    for (Iterator<Item<V>> it = map.values().iterator(); it.hasNext();) {
+      if (now - it.next().expiresAt >= 0) {
+        it.remove();
+        expirations.incrementAndGet();
+      }
+    }
+  }
+}
@@ -1,17 +1,82 @@
 package com.function.db;
 
+import oracle.ucp.jdbc.JDBCConnectionPoolStatistics;
+import oracle.ucp.jdbc.PoolDataSource;
+import oracle.ucp.jdbc.PoolDataSourceFactory;
+
+import javax.sql.DataSource;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Pool de conexiones (Oracle UCP) compartido por todas las invocaciones del worker.
+ * Se crea en el primer uso y abre DB_POOL_INITIAL conexiones de inmediato (pre-warm).
+ */
 public final class Db {
+  private static volatile PoolDataSource pool;
+  private static volatile DataSource reemplazo;
+
   private Db() {}
 
   public static Connection connect() throws SQLException {
-    final String url  = getenvRequired("DB_URL"); 
-    final String user = getenvRequired("DB_USER");
-    final String pass = getenvRequired("DB_PASS");
-    return DriverManager.getConnection(url, user, pass);
+    DataSource r = reemplazo;
+    return r != null ? r.getConnection() : pool().getConnection();
+  }
+
+  /** Para pruebas: las conexiones salen de ds en vez del pool (null vuelve al pool). */
+  public static void usar(DataSource ds) {
+    reemplazo = ds;
+  }
+
+  private static PoolDataSource pool() throws SQLException {
+    if (pool == null) {
+      synchronized (Db.class) {
+        if (pool == null) {
+          PoolDataSource pds = PoolDataSourceFactory.getPoolDataSource();
+          pds.setConnectionPoolName("fn-productos");
+          pds.setConnectionFactoryClassName(
+              System.getenv().getOrDefault("DB_POOL_FACTORY", "oracle.jdbc.pool.OracleDataSource"));
+          pds.setURL(getenvRequired("DB_URL"));
+          pds.setUser(getenvRequired("DB_USER"));
+          pds.setPassword(getenvRequired("DB_PASS"));
+
+          int max = getenvInt("DB_POOL_MAX", 10);
+          pds.setMaxPoolSize(max);
+          pds.setMinPoolSize(Math.min(getenvInt("DB_POOL_MIN", 2), max));
+          pds.setInitialPoolSize(Math.min(getenvInt("DB_POOL_INITIAL", 2), max));
+          pds.setConnectionWaitTimeout(getenvInt("DB_POOL_WAIT_TIMEOUT_SEC", 5));
+          pds.setInactiveConnectionTimeout(getenvInt("DB_POOL_IDLE_TIMEOUT_SEC", 300));
+          pds.setMaxConnectionReuseTime(getenvInt("DB_POOL_MAX_LIFETIME_SEC", 1800));
+          pds.setTimeoutCheckInterval(getenvInt("DB_POOL_CHECK_INTERVAL_SEC", 30));
+          pds.setValidateConnectionOnBorrow(true);
+          pds.setMaxStatements(getenvInt("DB_POOL_STMT_CACHE", 20));
+          pool = pds;
+        }
+      }
+    }
+    return pool;
+  }
+
+  /** Métricas del pool; vacío si todavía no se ha creado. */
+  public static Map<String, Object> stats() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    PoolDataSource p = pool;
+    if (p == null) return out;
+    JDBCConnectionPoolStatistics s = p.getStatistics();
+    if (s == null) return out;
+    out.put("active", s.getBorrowedConnectionsCount());
+    out.put("idle", s.getAvailableConnectionsCount());
+    out.put("total", s.getTotalConnectionsCount());
+    out.put("peak", s.getPeakConnectionsCount());
+    out.put("pending", s.getPendingRequestsCount());
+    out.put("avgWaitMs", s.getAverageConnectionWaitTime());
+    out.put("peakWaitMs", s.getPeakConnectionWaitTime());
+    out.put("failedWaits", s.getCumulativeFailedConnectionWaitCount());
+    out.put("created", s.getConnectionsCreatedCount());
+    out.put("closed", s.getConnectionsClosedCount());
+    return out;
   }
 
   private static String getenvRequired(String key) {
@@ -21,6 +86,14 @@ public final class Db {
     }
     return v;
   }
-}
-
 
+  private static int getenvInt(String key, int def) {
+    String v = System.getenv(key);
+    if (v == null || v.isBlank()) return def;
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return def;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.function.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filtros y paginación por cursor (keyset sobre ID) para GET /productos.
+ *
+ * Query params: bodegaId, stockMin, stockMax, skuPrefix, limit, after.
+ * bodegaId acepta varios IDs separados por coma (bodegaId=1,2,3 → BODEGA_ID IN (?, ?, ?)).
+ * Sin limit/after se mantiene el comportamiento anterior (lista completa).
+ */
+public final class ProductoFiltro {
+  public static final int MAX_LIMIT = 1000;
+  /** Oracle admite hasta 1000 expresiones en un IN. */
+  public static final int MAX_BODEGAS = 1000;
+
+  private List<Long> bodegaIds;
+  private Integer stockMin;
+  private Integer stockMax;
+  private String skuPrefix;
+  private Integer limit;
+  private Long after;
+
+  private ProductoFiltro() {}
+
+  /** @throws IllegalArgumentException con un mensaje apto para devolver al cliente. */
+  public static ProductoFiltro from(Map<String, String> q) {
+    ProductoFiltro f = new ProductoFiltro();
+    if (q == null) return f;
+    f.bodegaIds = parseLongs(q.get("bodegaId"), "bodegaId");
+    f.stockMin = parseInt(q.get("stockMin"), "stockMin");
+    f.stockMax = parseInt(q.get("stockMax"), "stockMax");
+    String prefix = q.get("skuPrefix");
+    if (prefix != null && !prefix.isBlank()) f.skuPrefix = prefix.trim();
+    f.after = parseLong(q.get("after"), "after");
+    f.limit = parseInt(q.get("limit"), "limit");
+    if (f.limit != null && (f.limit < 1 || f.limit > MAX_LIMIT)) {
+      throw new IllegalArgumentException("limit debe estar entre 1 y " + MAX_LIMIT);
+    }
+    if (f.limit == null && f.after != null) f.limit = MAX_LIMIT;
+    return f;
+  }
+
+  public boolean paginado() {
+    return limit != null;
+  }
+
+  public int limit() {
+    return limit;
+  }
+
+  /**
+   * Arma el SELECT completo. En modo paginado pide limit+1 filas para saber si hay
+   * página siguiente sin un COUNT adicional.
+   */
+  public String sql(String columnas) {
+    StringBuilder sb = new StringBuilder("SELECT ").append(columnas).append(" FROM PRODUCTOS");
+    List<String> conds = new ArrayList<>();
+    if (bodegaIds != null) {
+      conds.add(bodegaIds.size() == 1
+          ? "BODEGA_ID = ?"
+          : "BODEGA_ID IN (" + String.join(", ", Collections.nCopies(bodegaIds.size(), "?")) + ")");
+    }
+    if (stockMin != null) conds.add("STOCK >= ?");
+    if (stockMax != null) conds.add("STOCK <= ?");
+    if (skuPrefix != null) conds.add("SKU LIKE ? ESCAPE '\\'");
+    if (after != null) conds.add("ID > ?");
+    if (!conds.isEmpty()) sb.append(" WHERE ").append(String.join(" AND ", conds));
+    sb.append(" ORDER BY ID");
+    if (paginado()) sb.append(" FETCH FIRST ? ROWS ONLY");
+    return sb.toString();
+  }
+
+  public void bind(PreparedStatement ps) throws SQLException {
+    int i = 1;
+    if (bodegaIds != null) {
+      for (Long id : bodegaIds) ps.setLong(i++, id);
+    }
+    if (stockMin != null) ps.setInt(i++, stockMin);
+    if (stockMax != null) ps.setInt(i++, stockMax);
+    if (skuPrefix != null) ps.setString(i++, escapeLike(skuPrefix) + "%");
+    if (after != null) ps.setLong(i++, after);
+    if (paginado()) ps.setInt(i, limit + 1);
+  }
+
+  private static String escapeLike(String s) {
+    return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+
+  private static Long parseLong(String v, String name) {
+    if (v == null || v.isBlank()) return null;
+    try {
+      return Long.parseLong(v.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " inválido");
+    }
+  }
+
+  private static List<Long> parseLongs(String v, String name) {
+    if (v == null || v.isBlank()) return null;
+    Set<Long> ids = new LinkedHashSet<>();
+    for (String part : v.split(",")) {
+      if (!part.isBlank()) ids.add(parseLong(part, name));
+    }
+    if (ids.isEmpty()) return null;
+    if (ids.size() > MAX_BODEGAS) {
+      throw new IllegalArgumentException(name + " admite a lo más " + MAX_BODEGAS + " valores");
+    }
+    return new ArrayList<>(ids);
+  }
+
+  private static Integer parseInt(String v, String name) {
+    if (v == null || v.isBlank()) return null;
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(name + " inválido");
+    }
+  }
+}
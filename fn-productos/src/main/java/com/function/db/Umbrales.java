@@ -0,0 +1,77 @@
+package com.function.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Umbrales de stock bajo por producto o por bodega (tabla UMBRALES_STOCK), cargados de una
+ * vez y guardados en memoria; se recargan cada UMBRALES_TTL_MS. Prioridad: el del producto,
+ * luego el de su bodega y por último UMBRAL_STOCK (default 10).
+ */
+public final class Umbrales {
+  private static final Logger LOG = Logger.getLogger(Umbrales.class.getName());
+
+  public static final int DEFAULT = getenvInt("UMBRAL_STOCK", 10);
+  private static final long TTL_NANOS = getenvInt("UMBRALES_TTL_MS", 300_000) * 1_000_000L;
+
+  private static volatile Map<Long, Integer> porProducto = Collections.emptyMap();
+  private static volatile Map<Long, Integer> porBodega = Collections.emptyMap();
+  private static volatile long cargadoEn;
+  private static volatile boolean cargado;
+
+  private Umbrales() {}
+
+  public static int para(Long productoId, Long bodegaId) {
+    refrescarSiVencio();
+    Integer u = productoId == null ? null : porProducto.get(productoId);
+    if (u == null && bodegaId != null) u = porBodega.get(bodegaId);
+    return u != null ? u : DEFAULT;
+  }
+
+  private static void refrescarSiVencio() {
+    if (cargado && System.nanoTime() - cargadoEn < TTL_NANOS) return;
+    synchronized (Umbrales.class) {
+      if (cargado && System.nanoTime() - cargadoEn < TTL_NANOS) return;
+      Map<Long, Integer> productos = new HashMap<>();
+      Map<Long, Integer> bodegas = new HashMap<>();
+      try (Connection con = Db.connect();
+           PreparedStatement ps = con.prepareStatement(
+               "SELECT PRODUCTO_ID, BODEGA_ID, UMBRAL FROM UMBRALES_STOCK");
+           ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          long prod = rs.getLong("PRODUCTO_ID");
+          if (!rs.wasNull()) {
+            productos.put(prod, rs.getInt("UMBRAL"));
+            continue;
+          }
+          long bod = rs.getLong("BODEGA_ID");
+          if (!rs.wasNull()) bodegas.put(bod, rs.getInt("UMBRAL"));
+        }
+        porProducto = productos;
+        porBodega = bodegas;
+      } catch (SQLException e) {
+        // Se siguen usando los últimos valores (o el default) y se reintenta en el próximo TTL
+        LOG.log(Level.WARNING, "No se pudieron cargar los umbrales de stock", e);
+      }
+      cargadoEn = System.nanoTime();
+      cargado = true;
+    }
+  }
+
+  private static int getenvInt(String key, int def) {
+    String v = System.getenv(key);
+    if (v == null || v.isBlank()) return def;
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return def;
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package com.function.events;
+
+import com.azure.core.util.BinaryData;
+import com.azure.messaging.eventgrid.EventGridEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.function.db.Db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drena la tabla OUTBOX en lotes hacia un {@link EventSink} (Event Grid por defecto).
+ * Entrega al menos una vez: las filas se marcan SENT_AT solo después de un envío exitoso.
+ *
+ * Un solo relay envía a la vez: cada lote bloquea la fila 'OUTBOX_RELAY' de MARCAS_PROCESO
+ * con SKIP LOCKED, y si otra instancia la tiene no hace nada (esa instancia drena hasta
+ * vaciar). Así los eventos de un SUBJECT salen en orden de ID, que con UX_OUTBOX_SUBJECT_SEQ
+ * es también orden de SEQ; con varios relays en paralelo un lote posterior podía adelantarse
+ * y el consumidor descartaba el evento atrasado.
+ *
+ * Un lote se corta en BATCH_SIZE filas o antes de pasar OUTBOX_BATCH_BYTES (tamaño estimado
+ * de los eventos serializados): Event Grid rechaza requests de más de 1 MB y un lote
+ * rechazado se reintentaría para siempre. Un evento que solo supera el presupuesto se envía
+ * solo; uno que supera el límite de Event Grid no se puede enviar nunca, se marca con ERROR
+ * (y SENT_AT, para que no detenga a los que vienen detrás) y queda en el log como SEVERE.
+ */
+public final class OutboxRelay {
+  private static final Logger LOG = Logger.getLogger(OutboxRelay.class.getName());
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int BATCH_SIZE = getenvInt("OUTBOX_BATCH_SIZE", 100);
+  private static final long RETRY_MS = getenvInt("OUTBOX_RETRY_MS", 2000);
+  private static final int BATCH_BYTES = getenvInt("OUTBOX_BATCH_BYTES", 900 * 1024);
+  /** Límite de un request a Event Grid. */
+  private static final int MAX_EVENTO_BYTES = 1024 * 1024;
+  /** id, eventTime, dataVersion y nombres de campos del sobre de Event Grid. */
+  private static final int SOBRE_BYTES = 256;
+
+  private static final String LOCK = "OUTBOX_RELAY";
+  private static final int UNIQUE_VIOLADO = 1;
+
+  private static final String SELECT_PENDIENTES =
+      "SELECT ID, SUBJECT, EVENT_TYPE, SEQ, DATA, CREATED_AT FROM OUTBOX " +
+      "WHERE SENT_AT IS NULL ORDER BY ID";
+
+  private static final Semaphore WAKE = new Semaphore(0);
+  private static volatile EventSink sink = EventBusEG::sendNow;
+  private static volatile Thread worker;
+  /** El último drainOnce encontró el lock tomado por otra instancia. */
+  private static volatile boolean ocupado;
+
+  private OutboxRelay() {}
+
+  /** Reemplaza el destino (p. ej. {@link InMemoryEventSink} en pruebas). */
+  public static void setSink(EventSink s) {
+    sink = s;
+  }
+
+  /** Avisa que hay filas nuevas confirmadas; arranca el hilo del relay en el primer uso. */
+  public static void wake() {
+    if (worker == null) {
+      synchronized (OutboxRelay.class) {
+        if (worker == null) {
+          Thread t = new Thread(OutboxRelay::loop, "outbox-relay");
+          t.setDaemon(true);
+          t.start();
+          worker = t;
+        }
+      }
+    }
+    WAKE.release();
+  }
+
+  /** Envía hasta agotar las filas pendientes; devuelve cuántos eventos se enviaron. */
+  public static int drainAll() throws Exception {
+    int total = 0;
+    int n;
+    while ((n = drainOnce()) > 0) total += n;
+    return total;
+  }
+
+  /**
+   * Un lote: toma el lock del relay, lee hasta BATCH_SIZE filas pendientes (o hasta
+   * BATCH_BYTES), las envía y las marca enviadas. Devuelve las filas que dejaron de estar
+   * pendientes, enviadas o descartadas; 0 si no hay o si otra instancia tiene el lock.
+   */
+  public static int drainOnce() throws Exception {
+    try (Connection con = Db.connect()) {
+      con.setAutoCommit(false);
+      try {
+        ocupado = !tomarLock(con);
+        if (ocupado) {
+          con.rollback();
+          return 0;
+        }
+
+        List<Long> ids = new ArrayList<>(BATCH_SIZE);
+        List<EventGridEvent> events = new ArrayList<>(BATCH_SIZE);
+        List<Long> descartados = new ArrayList<>();
+        List<String> motivos = new ArrayList<>();
+        long bytes = 0;
+        try (PreparedStatement ps = con.prepareStatement(SELECT_PENDIENTES)) {
+          ps.setMaxRows(BATCH_SIZE);
+          ps.setFetchSize(BATCH_SIZE);
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              long id = rs.getLong("ID");
+              EventGridEvent ev = toEvent(rs);
+              long tam = tamano(ev);
+              if (tam > MAX_EVENTO_BYTES) {
+                String motivo = "Evento de " + tam + " bytes supera el límite de Event Grid (" + MAX_EVENTO_BYTES + ")";
+                LOG.severe("OUTBOX " + id + " (" + ev.getEventType() + " " + ev.getSubject() + ") descartado: " + motivo);
+                descartados.add(id);
+                motivos.add(motivo);
+                continue;
+              }
+              // El que no cabe queda para el próximo lote; si es el primero, va solo
+              if (!events.isEmpty() && bytes + tam > BATCH_BYTES) break;
+              ids.add(id);
+              events.add(ev);
+              bytes += tam;
+              if (bytes >= BATCH_BYTES) break;
+            }
+          }
+        }
+        if (ids.isEmpty() && descartados.isEmpty()) {
+          con.commit();
+          return 0;
+        }
+
+        if (!events.isEmpty()) sink.send(events);
+
+        try (PreparedStatement ps = con.prepareStatement(
+            "UPDATE OUTBOX SET SENT_AT = SYSTIMESTAMP, ERROR = ? WHERE ID = ?")) {
+          for (Long id : ids) {
+            ps.setNull(1, Types.VARCHAR);
+            ps.setLong(2, id);
+            ps.addBatch();
+          }
+          for (int i = 0; i < descartados.size(); i++) {
+            ps.setString(1, motivos.get(i));
+            ps.setLong(2, descartados.get(i));
+            ps.addBatch();
+          }
+          ps.executeBatch();
+        }
+        con.commit();
+        return ids.size() + descartados.size();
+      } catch (Exception e) {
+        con.rollback();
+        throw e;
+      } finally {
+        con.setAutoCommit(true);
+      }
+    }
+  }
+
+  /** Bloquea la fila del relay; false si la tiene otra transacción. La crea si falta. */
+  private static boolean tomarLock(Connection con) throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement(
+        "SELECT VALOR FROM MARCAS_PROCESO WHERE NOMBRE = ? FOR UPDATE SKIP LOCKED")) {
+      ps.setString(1, LOCK);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) return true;
+      }
+    }
+    // Sin fila: o no existe o está bloqueada. El INSERT la deja bloqueada hasta el commit
+    try (PreparedStatement ps = con.prepareStatement(
+        "INSERT INTO MARCAS_PROCESO (NOMBRE, VALOR) VALUES (?, 0)")) {
+      ps.setString(1, LOCK);
+      ps.executeUpdate();
+      return true;
+    } catch (SQLException e) {
+      if (e.getErrorCode() == UNIQUE_VIOLADO) return false;
+      throw e;
+    }
+  }
+
+  /**
+   * Borra filas ya enviadas hace más de dias días, conservando la última de cada SUBJECT
+   * para que SEQ siga siendo correlativo y las descartadas (ERROR) para revisarlas.
+   */
+  public static int purge(int dias) throws SQLException {
+    try (Connection con = Db.connect();
+         PreparedStatement ps = con.prepareStatement(
+             "DELETE FROM OUTBOX o WHERE o.SENT_AT < SYSTIMESTAMP - NUMTODSINTERVAL(?, 'DAY') AND o.ERROR IS NULL " +
+             "AND o.SEQ < (SELECT MAX(x.SEQ) FROM OUTBOX x WHERE x.SUBJECT = o.SUBJECT)")) {
+      ps.setInt(1, dias);
+      return ps.executeUpdate();
+    }
+  }
+
+  private static EventGridEvent toEvent(ResultSet rs) throws Exception {
+    long id = rs.getLong("ID");
+    long seq = rs.getLong("SEQ");
+    String data = rs.getString("DATA");
+    ObjectNode node = (data == null || data.isBlank())
+        ? MAPPER.createObjectNode()
+        : (ObjectNode) MAPPER.readTree(data);
+    node.put("seq", seq);
+
+    EventGridEvent ev = new EventGridEvent(
+        rs.getString("SUBJECT"), rs.getString("EVENT_TYPE"),
+        BinaryData.fromString(MAPPER.writeValueAsString(node)), "1.0");
+    // ID estable: un reintento del relay produce el mismo id y el consumidor puede deduplicar
+    ev.setId("outbox-" + id);
+    Timestamp created = rs.getTimestamp("CREATED_AT");
+    if (created != null) ev.setEventTime(created.toInstant().atOffset(ZoneOffset.UTC));
+    return ev;
+  }
+
+  /** Tamaño aproximado del evento serializado en el request a Event Grid. */
+  private static long tamano(EventGridEvent ev) {
+    return ev.getData().toBytes().length
+        + ev.getSubject().getBytes(StandardCharsets.UTF_8).length
+        + ev.getEventType().getBytes(StandardCharsets.UTF_8).length
+        + SOBRE_BYTES;
+  }
+
+  private static void loop() {
+    while (true) {
+      try {
+        // Sin polling en reposo: solo se drena al confirmar escrituras (y desde OutboxRelayFunction)
+        WAKE.acquire();
+        WAKE.drainPermits();
+        drainAll();
+        if (ocupado) {
+          // Otra instancia está drenando; se vuelve a mirar por si su último lote no
+          // alcanzó a ver lo que esta instancia acaba de confirmar
+          Thread.sleep(RETRY_MS);
+          WAKE.release();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (Exception e) {
+        LOG.log(Level.WARNING, "Error drenando OUTBOX, se reintenta en " + RETRY_MS + " ms", e);
+        try {
+          Thread.sleep(RETRY_MS);
+        } catch (InterruptedException ie) {
+          return;
+        }
+        WAKE.release();
+      }
+    }
+  }
+
+  private static int getenvInt(String key, int def) {
+    String v = System.getenv(key);
+    if (v == null || v.isBlank()) return def;
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return def;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.function.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.db.Db;
+import com.function.db.Umbrales;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alertas de stock bajo. {@link #siCruza} emite Inventario.Producto.StockBajo solo cuando el
+ * stock pasa de >= umbral a < umbral (o un producto nuevo parte bajo el umbral), no en cada
+ * escritura de un producto que ya estaba bajo.
+ *
+ * {@link #resumir} junta las alertas de la ventana en un evento por bodega
+ * (Inventario.Bodega.StockBajoResumen), leyendo del OUTBOX desde la última marca procesada.
+ */
+public final class StockBajo {
+  public static final String TIPO = "Inventario.Producto.StockBajo";
+  public static final String TIPO_RESUMEN = "Inventario.Bodega.StockBajoResumen";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String MARCA = "RESUMEN_STOCK_BAJO";
+  /** Las filas más nuevas que esto se dejan para la próxima ventana: una transacción con un
+   *  ID menor podría seguir sin confirmar y quedar atrás de la marca. */
+  private static final int GRACIA_SEG = getenvInt("STOCK_DIGEST_GRACE_SEC", 30);
+
+  private StockBajo() {}
+
+  /** @param antes stock previo; null si el producto es nuevo. */
+  public static void siCruza(Connection con, Long id, String sku, Long bodegaId, Integer antes, int despues)
+      throws SQLException {
+    Outbox.Evento ev = alerta(id, sku, bodegaId, antes, despues);
+    if (ev != null) Outbox.addAll(con, List.of(ev));
+  }
+
+  /** Mismo criterio que {@link #siCruza}, pero devuelve el evento (o null) para escribirlo en lote. */
+  public static Outbox.Evento alerta(Long id, String sku, Long bodegaId, Integer antes, int despues) {
+    int umbral = Umbrales.para(id, bodegaId);
+    if (despues >= umbral || (antes != null && antes < umbral)) return null;
+    return evento(id, sku, bodegaId, despues, umbral);
+  }
+
+  /** Alerta sin comparar: el llamador ya sabe que el stock cruzó (p. ej. por el ROWCOUNT del PUT). */
+  public static void emitir(Connection con, Long id, String sku, Long bodegaId, int despues) throws SQLException {
+    Outbox.Evento ev = evento(id, sku, bodegaId, despues, Umbrales.para(id, bodegaId));
+    Outbox.add(con, ev.type, ev.subject, ev.data);
+  }
+
+  private static Outbox.Evento evento(Long id, String sku, Long bodegaId, int despues, int umbral) {
+    Map<String, Object> data = new HashMap<>();
+    if (id != null) data.put("id", id);
+    data.put("sku", sku);
+    if (bodegaId != null) data.put("bodegaId", bodegaId);
+    data.put("stock", despues);
+    data.put("umbral", umbral);
+    return new Outbox.Evento(TIPO, id != null ? "/productos/" + id : "/productos", data);
+  }
+
+  /** Un resumen por bodega con las alertas nuevas; devuelve cuántos resúmenes se generaron. */
+  public static int resumir() throws SQLException {
+    try (Connection con = Db.connect()) {
+      con.setAutoCommit(false);
+      try {
+        long desde = marca(con);
+        long hasta = desde;
+
+        // bodega -> producto -> última alerta de la ventana
+        Map<Long, Map<Object, Map<String, Object>>> porBodega = new LinkedHashMap<>();
+        Map<Long, Timestamp[]> rangos = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement(
+            "SELECT ID, DATA, CREATED_AT FROM OUTBOX WHERE EVENT_TYPE = ? AND ID > ? " +
+            "AND CREATED_AT < SYSTIMESTAMP - NUMTODSINTERVAL(?, 'SECOND') ORDER BY ID")) {
+          ps.setString(1, TIPO);
+          ps.setLong(2, desde);
+          ps.setInt(3, GRACIA_SEG);
+          try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+              hasta = rs.getLong("ID");
+              JsonNode d = leer(rs.getString("DATA"));
+              if (d == null) continue;
+              Long bodega = d.path("bodegaId").canConvertToLong() ? d.path("bodegaId").asLong() : null;
+              Object producto = d.has("id") ? d.path("id").asLong() : d.path("sku").asText();
+              Map<String, Object> alerta = new LinkedHashMap<>();
+              alerta.put("id", d.has("id") ? d.path("id").asLong() : null);
+              alerta.put("sku", d.path("sku").asText(null));
+              alerta.put("stock", d.path("stock").asInt());
+              alerta.put("umbral", d.path("umbral").asInt());
+              porBodega.computeIfAbsent(bodega, k -> new LinkedHashMap<>()).put(producto, alerta);
+
+              Timestamp t = rs.getTimestamp("CREATED_AT");
+              Timestamp[] r = rangos.computeIfAbsent(bodega, k -> new Timestamp[] { t, t });
+              r[1] = t;
+            }
+          }
+        }
+
+        for (Map.Entry<Long, Map<Object, Map<String, Object>>> e : porBodega.entrySet()) {
+          Long bodega = e.getKey();
+          Timestamp[] r = rangos.get(bodega);
+          Map<String, Object> data = new LinkedHashMap<>();
+          data.put("bodegaId", bodega);
+          data.put("desde", r[0].toInstant().toString());
+          data.put("hasta", r[1].toInstant().toString());
+          data.put("cantidad", e.getValue().size());
+          data.put("productos", new ArrayList<>(e.getValue().values()));
+          Outbox.add(con, TIPO_RESUMEN, bodega != null ? "/bodegas/" + bodega : "/bodegas", data);
+        }
+
+        if (hasta != desde) {
+          try (PreparedStatement ps = con.prepareStatement(
+              "UPDATE MARCAS_PROCESO SET VALOR = ? WHERE NOMBRE = ?")) {
+            ps.setLong(1, hasta);
+            ps.setString(2, MARCA);
+            ps.executeUpdate();
+          }
+        }
+        con.commit();
+        if (!porBodega.isEmpty()) OutboxRelay.wake();
+        return porBodega.size();
+      } catch (SQLException ex) {
+        con.rollback();
+        throw ex;
+      } finally {
+        con.setAutoCommit(true);
+      }
+    }
+  }
+
+  /** Último ID de OUTBOX ya resumido. El FOR UPDATE evita dos resúmenes simultáneos. */
+  private static long marca(Connection con) throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement(
+        "SELECT VALOR FROM MARCAS_PROCESO WHERE NOMBRE = ? FOR UPDATE")) {
+      ps.setString(1, MARCA);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (rs.next()) return rs.getLong(1);
+      }
+    }
+    try (PreparedStatement ps = con.prepareStatement(
+        "INSERT INTO MARCAS_PROCESO (NOMBRE, VALOR) VALUES (?, 0)")) {
+      ps.setString(1, MARCA);
+      ps.executeUpdate();
+    }
+    return 0;
+  }
+
+  private static JsonNode leer(String json) {
+    try {
+      return json == null ? null : MAPPER.readTree(json);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static int getenvInt(String key, int def) {
+    String v = System.getenv(key);
+    if (v == null || v.isBlank()) return def;
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return def;
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.function.model;
+
+/** Movimiento relativo de stock; en lote se identifica el producto por id o por sku. */
+public class MovimientoStock {
+  private Long id;
+  private String sku;
+  private Integer delta;
+
+  public MovimientoStock() {}
+
+  public Long getId() { return id; }
+  public void setId(Long id) { this.id = id; }
+  public String getSku() { return sku; }
+  public void setSku(String sku) { this.sku = sku; }
+  public Integer getDelta() { return delta; }
+  public void setDelta(Integer delta) { this.delta = delta; }
+}
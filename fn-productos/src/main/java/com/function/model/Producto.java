@@ -1,5 +1,7 @@
 package com.function.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.math.BigDecimal;
 
 public class Producto {
@@ -9,6 +11,8 @@ public class Producto {
   private Integer stock;
   private BigDecimal precio;
   private Long bodegaId;
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Long version;
 
   public Producto() {}
 
@@ -28,4 +32,6 @@ public class Producto {
   public void setPrecio(BigDecimal precio) { this.precio = precio; }
   public Long getBodegaId() { return bodegaId; }
   public void setBodegaId(Long bodegaId) { this.bodegaId = bodegaId; }
+  public Long getVersion() { return version; }
+  public void setVersion(Long version) { this.version = version; }
 }
\ No newline at end of file
@@ -0,0 +1,277 @@
+package com.function;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Base falsa para las pruebas: cada statement queda registrado con sus parámetros y responde
+ * según la primera regla cuyo fragmento aparece en el SQL. Sin regla, un UPDATE/INSERT afecta
+ * una fila, executeBatch una fila por elemento y una consulta no trae filas.
+ *
+ * También corre aquí el hilo del relay de OUTBOX (OutboxRelay.wake); sus statements quedan
+ * registrados igual, por eso las verificaciones filtran por SQL.
+ */
+final class FakeDb {
+
+  /** Un statement ejecutado: SQL, parámetros por posición y, si fue executeBatch, cada fila. */
+  static final class Ejecucion {
+    final String sql;
+    final Map<Integer, Object> params;
+    final List<Map<Integer, Object>> lote;
+
+    Ejecucion(String sql, Map<Integer, Object> params, List<Map<Integer, Object>> lote) {
+      this.sql = sql;
+      this.params = params;
+      this.lote = lote;
+    }
+
+    Object param(int i) {
+      return params.get(i);
+    }
+  }
+
+  interface Consulta {
+    List<Map<String, Object>> filas(Map<Integer, Object> params) throws SQLException;
+  }
+
+  interface Update {
+    int filas(Map<Integer, Object> params) throws SQLException;
+  }
+
+  interface Lote {
+    int[] filas(List<Map<Integer, Object>> lote) throws SQLException;
+  }
+
+  interface Llamada {
+    /** Parámetros de salida por posición. */
+    Map<Integer, Object> salida(Map<Integer, Object> params) throws SQLException;
+  }
+
+  private final Map<String, Consulta> consultas = new LinkedHashMap<>();
+  private final Map<String, Update> updates = new LinkedHashMap<>();
+  private final Map<String, Lote> lotes = new LinkedHashMap<>();
+  private final Map<String, Llamada> llamadas = new LinkedHashMap<>();
+
+  final List<Ejecucion> ejecutadas = new CopyOnWriteArrayList<>();
+  final List<String> transacciones = new CopyOnWriteArrayList<>();
+  private long siguienteId = 1000;
+
+  FakeDb consulta(String fragmento, Consulta c) {
+    consultas.put(fragmento, c);
+    return this;
+  }
+
+  FakeDb update(String fragmento, Update u) {
+    updates.put(fragmento, u);
+    return this;
+  }
+
+  FakeDb lote(String fragmento, Lote l) {
+    lotes.put(fragmento, l);
+    return this;
+  }
+
+  FakeDb llamada(String fragmento, Llamada l) {
+    llamadas.put(fragmento, l);
+    return this;
+  }
+
+  DataSource dataSource() {
+    return proxy(DataSource.class, (p, m, args) -> {
+      if (m.getName().equals("getConnection")) return conexion();
+      return defecto(m);
+    });
+  }
+
+  /** Statements ejecutados cuyo SQL contiene el fragmento, en orden. */
+  List<Ejecucion> con(String fragmento) {
+    List<Ejecucion> out = new ArrayList<>();
+    for (Ejecucion e : ejecutadas) {
+      if (e.sql.contains(fragmento)) out.add(e);
+    }
+    return out;
+  }
+
+  /* ================== Conexión ================== */
+
+  private Connection conexion() {
+    return proxy(Connection.class, (p, m, args) -> {
+      switch (m.getName()) {
+        case "prepareStatement":
+        case "prepareCall":
+          return statement((String) args[0]);
+        case "commit":
+          transacciones.add("commit");
+          return null;
+        case "rollback":
+          transacciones.add(args == null ? "rollback" : "rollback-savepoint");
+          return null;
+        case "setSavepoint":
+          transacciones.add("savepoint");
+          return proxy(Savepoint.class, (sp, sm, sa) -> defecto(sm));
+        default:
+          return defecto(m);
+      }
+    });
+  }
+
+  private CallableStatement statement(String sql) {
+    Map<Integer, Object> params = new TreeMap<>();
+    List<Map<Integer, Object>> lote = new ArrayList<>();
+    Map<Integer, Object> salida = new HashMap<>();
+    Object[] ultimo = new Object[1];
+    long[] generado = new long[1];
+
+    return proxy(CallableStatement.class, (p, m, args) -> {
+      String n = m.getName();
+      if (n.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+          && !n.equals("setFetchSize") && !n.equals("setMaxRows")) {
+        params.put((Integer) args[0], n.equals("setNull") ? null : args[1]);
+        return null;
+      }
+      switch (n) {
+        case "addBatch":
+          lote.add(new TreeMap<>(params));
+          params.clear();
+          return null;
+        case "clearBatch":
+          lote.clear();
+          return null;
+        case "executeBatch": {
+          List<Map<Integer, Object>> filas = new ArrayList<>(lote);
+          lote.clear();
+          ejecutadas.add(new Ejecucion(sql, Collections.emptyMap(), filas));
+          Lote regla = buscar(lotes, sql);
+          if (regla != null) return regla.filas(filas);
+          int[] counts = new int[filas.size()];
+          java.util.Arrays.fill(counts, 1);
+          return counts;
+        }
+        case "executeUpdate": {
+          Map<Integer, Object> copia = new TreeMap<>(params);
+          ejecutadas.add(new Ejecucion(sql, copia, null));
+          Update regla = buscar(updates, sql);
+          int filas = regla != null ? regla.filas(copia) : 1;
+          generado[0] = siguienteId();
+          return filas;
+        }
+        case "executeQuery": {
+          Map<Integer, Object> copia = new TreeMap<>(params);
+          ejecutadas.add(new Ejecucion(sql, copia, null));
+          Consulta regla = buscar(consultas, sql);
+          return resultSet(regla != null ? regla.filas(copia) : Collections.emptyList());
+        }
+        case "execute": {
+          Map<Integer, Object> copia = new TreeMap<>(params);
+          ejecutadas.add(new Ejecucion(sql, copia, null));
+          Llamada regla = buscar(llamadas, sql);
+          salida.clear();
+          if (regla != null) salida.putAll(regla.salida(copia));
+          return false;
+        }
+        case "getGeneratedKeys":
+          return resultSet(List.of(Map.of("ID", generado[0])));
+        case "wasNull":
+          return ultimo[0] == null;
+        default:
+          break;
+      }
+      if (n.startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+        Object v = salida.get(args[0]);
+        ultimo[0] = v;
+        return convertir(v, m.getReturnType());
+      }
+      return defecto(m);
+    });
+  }
+
+  private synchronized long siguienteId() {
+    return siguienteId++;
+  }
+
+  /* ================== ResultSet ================== */
+
+  static ResultSet resultSet(List<Map<String, Object>> filas) {
+    int[] pos = { -1 };
+    Object[] ultimo = new Object[1];
+    return proxy(ResultSet.class, (p, m, args) -> {
+      String n = m.getName();
+      if (n.equals("next")) return ++pos[0] < filas.size();
+      if (n.equals("wasNull")) return ultimo[0] == null;
+      if (n.startsWith("get") && args != null && args.length == 1) {
+        Map<String, Object> fila = filas.get(pos[0]);
+        Object v;
+        if (args[0] instanceof Integer) {
+          v = new ArrayList<>(fila.values()).get((Integer) args[0] - 1);
+        } else {
+          v = fila.get(((String) args[0]).toUpperCase());
+        }
+        ultimo[0] = v;
+        return convertir(v, m.getReturnType());
+      }
+      return defecto(m);
+    });
+  }
+
+  /** Fila con columnas en orden (para los getX por posición): fila("ID", 1L, "SKU", "A"). */
+  static Map<String, Object> fila(Object... columnasYValores) {
+    Map<String, Object> f = new LinkedHashMap<>();
+    for (int i = 0; i < columnasYValores.length; i += 2) f.put((String) columnasYValores[i], columnasYValores[i + 1]);
+    return f;
+  }
+
+  static BatchUpdateException fallaLote(int[] counts, int codigo) {
+    return new BatchUpdateException("ORA-" + codigo, "23000", codigo, counts);
+  }
+
+  /* ================== Helpers ================== */
+
+  private static Object convertir(Object v, Class<?> tipo) {
+    if (tipo == long.class) return v == null ? 0L : ((Number) v).longValue();
+    if (tipo == int.class) return v == null ? 0 : ((Number) v).intValue();
+    if (tipo == boolean.class) return v != null && (Boolean) v;
+    if (tipo == String.class) return v == null ? null : v.toString();
+    if (tipo == BigDecimal.class) {
+      if (v == null || v instanceof BigDecimal) return v;
+      return new BigDecimal(v.toString());
+    }
+    return v;
+  }
+
+  private static <T> T buscar(Map<String, T> reglas, String sql) {
+    for (Map.Entry<String, T> e : reglas.entrySet()) {
+      if (sql.contains(e.getKey())) return e.getValue();
+    }
+    return null;
+  }
+
+  private static Object defecto(Method m) {
+    Class<?> t = m.getReturnType();
+    if (t == boolean.class) return false;
+    if (t == int.class) return 0;
+    if (t == long.class) return 0L;
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> tipo, InvocationHandler h) {
+    return (T) Proxy.newProxyInstance(FakeDb.class.getClassLoader(), new Class<?>[] { tipo }, h);
+  }
+}
@@ -0,0 +1,105 @@
+package com.function;
+
+import com.azure.messaging.eventgrid.EventGridEvent;
+import com.function.db.Db;
+import com.function.events.InMemoryEventSink;
+import com.function.events.OutboxRelay;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lotes del relay acotados por tamaño (OUTBOX_BATCH_BYTES, 900 KB por defecto) contra
+ * {@link FakeDb}: LoteImportado de un import grande pesa cientos de KB por evento.
+ */
+public class OutboxRelayTest {
+  private static final int KB = 1024;
+
+  private FakeDb db;
+  /** Filas con SENT_AT IS NULL, en orden de ID. */
+  private final List<Map<String, Object>> pendientes = new ArrayList<>();
+  private final List<List<String>> enviados = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    db = new FakeDb()
+        .consulta("FROM OUTBOX WHERE SENT_AT IS NULL", p -> {
+          // El hilo del relay de otras pruebas puede seguir vivo: solo drena esta prueba
+          if (Thread.currentThread().getName().equals("outbox-relay")) return List.of();
+          return new ArrayList<>(pendientes);
+        })
+        .lote("UPDATE OUTBOX SET SENT_AT", filas -> {
+          for (Map<Integer, Object> f : filas) pendientes.removeIf(r -> r.get("ID").equals(f.get(2)));
+          int[] counts = new int[filas.size()];
+          Arrays.fill(counts, 1);
+          return counts;
+        });
+    Db.usar(db.dataSource());
+    OutboxRelay.setSink(batch -> {
+      List<String> ids = new ArrayList<>();
+      for (EventGridEvent ev : batch) ids.add(ev.getId());
+      enviados.add(ids);
+    });
+  }
+
+  @AfterEach
+  void tearDown() {
+    Db.usar(null);
+    OutboxRelay.setSink(new InMemoryEventSink());
+  }
+
+  @Test
+  void lotesGrandesSeCortanPorTamano() throws Exception {
+    for (long id = 1; id <= 5; id++) pendiente(id, 300 * KB);
+    pendiente(6, 1);
+
+    assertEquals(6, OutboxRelay.drainAll());
+
+    assertEquals(List.of(
+        List.of("outbox-1", "outbox-2"),
+        List.of("outbox-3", "outbox-4"),
+        List.of("outbox-5", "outbox-6")), enviados);
+    assertTrue(pendientes.isEmpty());
+  }
+
+  @Test
+  void eventoSobreElPresupuestoVaSoloYSobreElLimiteSeDescarta() throws Exception {
+    pendiente(1, 1);
+    pendiente(2, 950 * KB);
+    pendiente(3, 1536 * KB);
+    pendiente(4, 1);
+
+    assertEquals(4, OutboxRelay.drainAll());
+
+    assertEquals(List.of(
+        List.of("outbox-1"),
+        List.of("outbox-2"),
+        List.of("outbox-4")), enviados);
+    assertTrue(pendientes.isEmpty());
+
+    // La fila 3 sale de los pendientes con ERROR; las enviadas con ERROR en null
+    Map<Object, Object> errores = new HashMap<>();
+    for (FakeDb.Ejecucion e : db.con("UPDATE OUTBOX SET SENT_AT")) {
+      for (Map<Integer, Object> f : e.lote) errores.put(f.get(2), f.get(1));
+    }
+    assertNull(errores.get(4L));
+    assertTrue(String.valueOf(errores.get(3L)).contains("supera el límite de Event Grid"));
+  }
+
+  /** Fila pendiente cuyo DATA pesa aproximadamente bytes. */
+  private void pendiente(long id, int bytes) {
+    char[] relleno = new char[bytes];
+    Arrays.fill(relleno, 'x');
+    pendientes.add(FakeDb.fila(
+        "ID", id,
+        "SUBJECT", "/productos",
+        "EVENT_TYPE", "Inventario.Producto.LoteImportado",
+        "SEQ", id,
+        "DATA", "{\"relleno\":\"" + new String(relleno) + "\"}",
+        "CREATED_AT", null));
+  }
+}
@@ -0,0 +1,106 @@
+package com.function;
+
+import com.function.db.Db;
+import com.function.events.InMemoryEventSink;
+import com.function.events.OutboxRelay;
+import com.microsoft.azure.functions.HttpMethod;
+import com.microsoft.azure.functions.HttpRequestMessage;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static com.function.ProductosBulkTest.contexto;
+import static com.function.ProductosBulkTest.request;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * PUT /productos/{id} contra {@link FakeDb}: el cruce del umbral de stock bajo sale del
+ * ROWCOUNT del UPDATE condicionado (STOCK >= umbral), sin SELECT ... FOR UPDATE previo.
+ */
+public class ProductosActualizarTest {
+
+  private FakeDb db;
+
+  @BeforeEach
+  void setUp() {
+    db = new FakeDb();
+    Db.usar(db.dataSource());
+    OutboxRelay.setSink(new InMemoryEventSink());
+  }
+
+  @AfterEach
+  void tearDown() {
+    Db.usar(null);
+  }
+
+  @Test
+  void stockBajoElUmbralUsaElUpdateCondicionadoYEmiteAlerta() throws Exception {
+    db.llamada("UPDATE PRODUCTOS SET SKU", p -> {
+      assertEquals(10, p.get(7)); // umbral (UMBRAL_STOCK por defecto)
+      return salida(14, 3, 1);
+    });
+
+    HttpResponseMessage res = put("{\"sku\":\"SKU-1\",\"nombre\":\"Uno\",\"stock\":3,\"bodegaId\":1}");
+
+    assertEquals(HttpStatus.OK, res.getStatus());
+    String sql = db.con("UPDATE PRODUCTOS SET SKU").get(0).sql;
+    assertFalse(sql.contains("FOR UPDATE"));
+    assertTrue(sql.contains("AND STOCK >= ?"));
+    assertEquals(List.of("Inventario.Producto.Actualizado", "Inventario.Producto.StockBajo"), tiposOutbox());
+  }
+
+  @Test
+  void yaEstabaBajoNoRepiteLaAlerta() throws Exception {
+    db.llamada("UPDATE PRODUCTOS SET SKU", p -> salida(14, 3, 0));
+
+    put("{\"sku\":\"SKU-1\",\"nombre\":\"Uno\",\"stock\":3,\"bodegaId\":1}");
+
+    assertEquals(List.of("Inventario.Producto.Actualizado"), tiposOutbox());
+  }
+
+  @Test
+  void stockSobreElUmbralEsUnSoloUpdate() throws Exception {
+    db.llamada("UPDATE PRODUCTOS SET SKU", p -> salida(7, 50, 0));
+
+    HttpResponseMessage res = put("{\"sku\":\"SKU-1\",\"nombre\":\"Uno\",\"stock\":50,\"bodegaId\":1}");
+
+    assertEquals(HttpStatus.OK, res.getStatus());
+    String sql = db.con("UPDATE PRODUCTOS SET SKU").get(0).sql;
+    assertFalse(sql.contains("STOCK >= ?"));
+    assertEquals(List.of("Inventario.Producto.Actualizado"), tiposOutbox());
+  }
+
+  /* ================== Helpers ================== */
+
+  private HttpResponseMessage put(String body) throws Exception {
+    HttpRequestMessage<Optional<String>> req = request(body, Map.of());
+    doReturn(HttpMethod.PUT).when(req).getHttpMethod();
+    return new ProductosFunction().productosById(req, "1", contexto());
+  }
+
+  /** Parámetros de salida del bloque desde la posición ret: fila, filas afectadas y cruce. */
+  private static Map<Integer, Object> salida(int ret, int stock, int cruza) {
+    Map<Integer, Object> out = new HashMap<>();
+    out.put(ret, "SKU-1");
+    out.put(ret + 1, "Uno");
+    out.put(ret + 2, stock);
+    out.put(ret + 3, BigDecimal.ZERO);
+    out.put(ret + 4, BigDecimal.ONE);
+    out.put(ret + 5, 4L);
+    out.put(ret + 6, 1);
+    out.put(ret + 7, cruza);
+    return out;
+  }
+
+  private List<Object> tiposOutbox() {
+    List<Object> out = new ArrayList<>();
+    for (FakeDb.Ejecucion e : db.con("INSERT INTO OUTBOX")) out.add(e.param(2));
+    return out;
+  }
+}
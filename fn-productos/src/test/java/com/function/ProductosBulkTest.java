@@ -0,0 +1,192 @@
+package com.function;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.db.Db;
+import com.function.events.InMemoryEventSink;
+import com.function.events.OutboxRelay;
+import com.microsoft.azure.functions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * POST /productos/bulk contra {@link FakeDb}: filas inválidas reportadas por índice sin
+ * cortar la importación, y reintento fila a fila cuando falla el executeBatch.
+ */
+public class ProductosBulkTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private FakeDb db;
+
+  @BeforeEach
+  void setUp() {
+    db = new FakeDb()
+        .consulta("SELECT ID, SKU FROM PRODUCTOS WHERE SKU IN", params -> {
+          List<Map<String, Object>> filas = new ArrayList<>();
+          for (Object sku : params.values()) filas.add(FakeDb.fila("ID", (long) sku.hashCode(), "SKU", sku));
+          return filas;
+        });
+    Db.usar(db.dataSource());
+    OutboxRelay.setSink(new InMemoryEventSink());
+  }
+
+  @AfterEach
+  void tearDown() {
+    Db.usar(null);
+  }
+
+  @Test
+  void filaConTipoInvalidoSeReportaYSigueLaImportacion() throws Exception {
+    JsonNode out = importar(
+        "[{\"sku\":\"A\",\"nombre\":\"a\",\"stock\":1,\"bodegaId\":1}," +
+        "{\"sku\":\"B\",\"nombre\":\"b\",\"stock\":\"muchos\",\"bodegaId\":1}," +
+        "{\"sku\":\"C\",\"nombre\":\"c\",\"stock\":3,\"bodegaId\":1}]");
+
+    assertEquals(3, out.path("total").asInt());
+    assertEquals(2, out.path("insertados").asInt());
+    assertEquals(1, out.path("fallidos").size());
+    assertEquals(1, out.path("fallidos").get(0).path("index").asInt());
+    assertTrue(out.path("fallidos").get(0).path("error").asText().startsWith("Fila inválida"));
+
+    List<FakeDb.Ejecucion> inserts = db.con("INSERT INTO PRODUCTOS");
+    assertEquals(1, inserts.size());
+    assertEquals(List.of("A", "C"), skus(inserts.get(0).lote));
+  }
+
+  @Test
+  void ndjsonConFilaSinSkuNoCortaElLote() throws Exception {
+    JsonNode out = importar(
+        "{\"sku\":\"A\",\"nombre\":\"a\",\"bodegaId\":1}\n" +
+        "{\"nombre\":\"sin sku\",\"bodegaId\":1}\n" +
+        "{\"sku\":\"C\",\"nombre\":\"c\",\"bodegaId\":1}\n");
+
+    assertEquals(2, out.path("insertados").asInt());
+    assertEquals(1, out.path("fallidos").get(0).path("index").asInt());
+    assertEquals("sku y nombre son obligatorios", out.path("fallidos").get(0).path("error").asText());
+  }
+
+  @Test
+  void errorDeSintaxisConservaLoYaLeido() throws Exception {
+    JsonNode out = importar(
+        "[{\"sku\":\"A\",\"nombre\":\"a\",\"bodegaId\":1}," +
+        "{\"sku\":\"B\",\"nombre\":\"b\",\"bodegaId\":1}," +
+        "{\"sku\":\"C\",\"nombre\": }]");
+
+    assertEquals(2, out.path("insertados").asInt());
+    assertEquals(1, out.path("fallidos").size());
+    assertEquals(2, out.path("fallidos").get(0).path("index").asInt());
+    assertTrue(out.path("fallidos").get(0).path("error").asText().startsWith("JSON inválido"));
+  }
+
+  @Test
+  void fallaDelLoteSeReintentaFilaAFila() throws Exception {
+    db.lote("INSERT INTO PRODUCTOS", lote -> {
+      throw FakeDb.fallaLote(new int[] { 1 }, 1);
+    });
+    db.update("INSERT INTO PRODUCTOS", params -> {
+      if ("DUP".equals(params.get(1))) throw new SQLException("ORA-00001: unique constraint violated", "23000", 1);
+      return 1;
+    });
+
+    JsonNode out = importar(
+        "[{\"sku\":\"A\",\"nombre\":\"a\",\"bodegaId\":1}," +
+        "{\"sku\":\"DUP\",\"nombre\":\"d\",\"bodegaId\":1}," +
+        "{\"sku\":\"C\",\"nombre\":\"c\",\"bodegaId\":1}]");
+
+    assertEquals(2, out.path("insertados").asInt());
+    assertEquals(1, out.path("fallidos").size());
+    assertEquals(1, out.path("fallidos").get(0).path("index").asInt());
+    assertEquals("DUP", out.path("fallidos").get(0).path("sku").asText());
+
+    // executeBatch revertido, luego un savepoint por fila y rollback solo de la fallida
+    assertTrue(db.transacciones.contains("rollback"));
+    assertEquals(1, Collections.frequency(db.transacciones, "rollback-savepoint"));
+
+    // El evento del lote lleva solo las filas insertadas
+    JsonNode evento = eventoLote();
+    assertEquals(2, evento.path("cantidad").asInt());
+    assertEquals("A", evento.path("skus").get(0).asText());
+    assertEquals("C", evento.path("skus").get(1).asText());
+  }
+
+  @Test
+  void filasBajoElUmbralEscribenUnaAlertaCadaUna() throws Exception {
+    importar(
+        "[{\"sku\":\"A\",\"nombre\":\"a\",\"stock\":2,\"bodegaId\":1}," +
+        "{\"sku\":\"B\",\"nombre\":\"b\",\"stock\":50,\"bodegaId\":1}," +
+        "{\"sku\":\"C\",\"nombre\":\"c\",\"stock\":0,\"bodegaId\":2}]");
+
+    // El resumen por bodega lee Inventario.Producto.StockBajo del OUTBOX; van en un solo lote
+    Map<String, JsonNode> alertas = new HashMap<>();
+    for (FakeDb.Ejecucion e : db.con("INSERT INTO OUTBOX (SUBJECT, EVENT_TYPE, SEQ, DATA) VALUES")) {
+      for (Map<Integer, Object> f : e.lote) {
+        assertEquals("Inventario.Producto.StockBajo", f.get(2));
+        JsonNode d = MAPPER.readTree((String) f.get(4));
+        alertas.put(d.path("sku").asText(), d);
+      }
+    }
+    assertEquals(Set.of("A", "C"), alertas.keySet());
+    assertEquals(2, alertas.get("C").path("bodegaId").asLong());
+    assertEquals(10, alertas.get("A").path("umbral").asInt()); // UMBRAL_STOCK por defecto
+
+    JsonNode evento = eventoLote();
+    assertEquals(2, evento.path("stockBajo").size());
+    assertFalse(evento.has("umbral"));
+  }
+
+  @Test
+  void chunkSizeFueraDeRango() throws Exception {
+    HttpResponseMessage res = new ProductosFunction().productosBulk(
+        request("[]", Map.of("chunkSize", "0")), contexto());
+    assertEquals(HttpStatus.BAD_REQUEST, res.getStatus());
+  }
+
+  /* ================== Helpers ================== */
+
+  private JsonNode importar(String body) throws Exception {
+    HttpResponseMessage res = new ProductosFunction().productosBulk(request(body, Map.of()), contexto());
+    assertEquals(HttpStatus.OK, res.getStatus(), String.valueOf(res.getBody()));
+    return MAPPER.readTree((String) res.getBody());
+  }
+
+  private JsonNode eventoLote() throws Exception {
+    for (FakeDb.Ejecucion e : db.con("INSERT INTO OUTBOX")) {
+      if ("Inventario.Producto.LoteImportado".equals(e.param(2))) return MAPPER.readTree((String) e.param(3));
+    }
+    fail("No se escribió Inventario.Producto.LoteImportado en OUTBOX");
+    return null;
+  }
+
+  private static List<Object> skus(List<Map<Integer, Object>> lote) {
+    List<Object> out = new ArrayList<>();
+    for (Map<Integer, Object> fila : lote) out.add(fila.get(1));
+    return out;
+  }
+
+  @SuppressWarnings("unchecked")
+  static HttpRequestMessage<Optional<String>> request(String body, Map<String, String> query) {
+    HttpRequestMessage<Optional<String>> req = mock(HttpRequestMessage.class);
+    doReturn(query).when(req).getQueryParameters();
+    doReturn(Map.of()).when(req).getHeaders();
+    doReturn(Optional.ofNullable(body)).when(req).getBody();
+    doAnswer(inv -> new HttpResponseMessageMock.HttpResponseMessageBuilderMock()
+        .status((HttpStatus) inv.getArguments()[0]))
+        .when(req).createResponseBuilder(any(HttpStatus.class));
+    return req;
+  }
+
+  static ExecutionContext contexto() {
+    ExecutionContext ctx = mock(ExecutionContext.class);
+    doReturn(Logger.getGlobal()).when(ctx).getLogger();
+    return ctx;
+  }
+}
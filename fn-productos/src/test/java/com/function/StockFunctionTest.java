@@ -0,0 +1,171 @@
+package com.function;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.function.db.Db;
+import com.function.events.InMemoryEventSink;
+import com.function.events.OutboxRelay;
+import com.microsoft.azure.functions.HttpResponseMessage;
+import com.microsoft.azure.functions.HttpStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static com.function.ProductosBulkTest.contexto;
+import static com.function.ProductosBulkTest.request;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PATCH /productos/{id}/stock y PATCH /productos/stock contra {@link FakeDb}. El umbral de
+ * stock bajo es el default (UMBRAL_STOCK=10): UMBRALES_STOCK no trae filas.
+ */
+public class StockFunctionTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private FakeDb db;
+
+  @BeforeEach
+  void setUp() {
+    db = new FakeDb();
+    Db.usar(db.dataSource());
+    OutboxRelay.setSink(new InMemoryEventSink());
+  }
+
+  @AfterEach
+  void tearDown() {
+    Db.usar(null);
+  }
+
+  /* ================== Un producto ================== */
+
+  @Test
+  void ajusteQueCruzaElUmbralEscribeAmbosEventosEnUnLote() throws Exception {
+    // RETURNING: 4=stock, 5=sku, 6=version, 7=bodega, 8=filas
+    db.llamada("UPDATE PRODUCTOS SET STOCK", p -> {
+      assertEquals(-8, p.get(1));
+      assertEquals(7L, p.get(2));
+      return Map.of(4, 5, 5, "SKU-7", 6, 3L, 7, 1L, 8, 1);
+    });
+
+    HttpResponseMessage res = new StockFunction().productosStock(
+        request("{\"delta\":-8}", Map.of()), "7", contexto());
+
+    assertEquals(HttpStatus.OK, res.getStatus());
+    JsonNode out = MAPPER.readTree((String) res.getBody());
+    assertEquals(5, out.path("stock").asInt());
+    assertEquals(3, out.path("version").asLong());
+
+    List<FakeDb.Ejecucion> outbox = db.con("INSERT INTO OUTBOX");
+    assertEquals(1, outbox.size());
+    assertEquals(List.of("Inventario.Producto.StockAjustado", "Inventario.Producto.StockBajo"),
+        tipos(outbox.get(0)));
+    assertEquals(List.of(1L, 2L), seqs(outbox.get(0)));
+    assertTrue(db.transacciones.contains("commit"));
+  }
+
+  @Test
+  void ajusteSobreElUmbralNoEmiteStockBajo() throws Exception {
+    db.llamada("UPDATE PRODUCTOS SET STOCK", p -> Map.of(4, 40, 5, "SKU-7", 6, 3L, 7, 1L, 8, 1));
+
+    new StockFunction().productosStock(request("{\"delta\":-2}", Map.of()), "7", contexto());
+
+    List<FakeDb.Ejecucion> outbox = db.con("INSERT INTO OUTBOX");
+    assertEquals(1, outbox.size());
+    assertEquals("Inventario.Producto.StockAjustado", outbox.get(0).param(2));
+  }
+
+  @Test
+  void stockInsuficienteResponde409SinEventos() throws Exception {
+    db.llamada("UPDATE PRODUCTOS SET STOCK", p -> Map.of(8, 0))
+      .consulta("SELECT STOCK FROM PRODUCTOS WHERE ID", p -> List.of(FakeDb.fila("STOCK", 1)));
+
+    HttpResponseMessage res = new StockFunction().productosStock(
+        request("{\"delta\":-5}", Map.of()), "7", contexto());
+
+    assertEquals(HttpStatus.CONFLICT, res.getStatus());
+    assertEquals(1, MAPPER.readTree((String) res.getBody()).path("stock").asInt());
+    assertTrue(db.con("INSERT INTO OUTBOX").isEmpty());
+    // Las transacciones también registran las del relay (otro hilo): se mira el contador
+    assertTrue(db.con("VERSIONES_TABLA").isEmpty());
+  }
+
+  @Test
+  void deltaCeroEsInvalido() {
+    HttpResponseMessage res = new StockFunction().productosStock(
+        request("{\"delta\":0}", Map.of()), "7", contexto());
+    assertEquals(HttpStatus.BAD_REQUEST, res.getStatus());
+  }
+
+  /* ================== Lote ================== */
+
+  @Test
+  void loteSeAplicaOrdenadoPorIdYReportaPorIndiceOriginal() throws Exception {
+    db.consulta("SELECT ID, SKU FROM PRODUCTOS WHERE SKU IN", p -> List.of(FakeDb.fila("ID", 3L, "SKU", "SKU-3")))
+      // Orden del executeBatch: id 3, 5 (índice 0), 5 (índice 2), 9; el segundo del 5 no alcanza
+      .lote("UPDATE PRODUCTOS SET STOCK", filas -> new int[] { 1, 1, 0, 1 })
+      .consulta("SELECT ID, SKU, STOCK, BODEGA_ID FROM PRODUCTOS WHERE ID IN", p -> List.of(
+          FakeDb.fila("ID", 3L, "SKU", "SKU-3", "STOCK", 20, "BODEGA_ID", 1L),
+          FakeDb.fila("ID", 5L, "SKU", "SKU-5", "STOCK", 2, "BODEGA_ID", 1L),
+          FakeDb.fila("ID", 9L, "SKU", "SKU-9", "STOCK", 50, "BODEGA_ID", 2L)));
+
+    HttpResponseMessage res = new StockFunction().productosStockLote(request(
+        "[{\"id\":5,\"delta\":-10}," +
+        "{\"id\":9,\"delta\":4}," +
+        "{\"id\":5,\"delta\":-3}," +
+        "{\"sku\":\"SKU-3\",\"delta\":1}," +
+        "{\"sku\":\"NO-EXISTE\",\"delta\":1}]", Map.of()), contexto());
+
+    assertEquals(HttpStatus.OK, res.getStatus());
+    JsonNode out = MAPPER.readTree((String) res.getBody());
+    assertEquals(5, out.path("total").asInt());
+    assertEquals(3, out.path("aplicados").asInt());
+
+    List<FakeDb.Ejecucion> updates = db.con("UPDATE PRODUCTOS SET STOCK");
+    assertEquals(1, updates.size());
+    List<Object> idsLote = new ArrayList<>();
+    List<Object> deltas = new ArrayList<>();
+    for (Map<Integer, Object> fila : updates.get(0).lote) {
+      idsLote.add(fila.get(2));
+      deltas.add(fila.get(1));
+    }
+    assertEquals(List.of(3L, 5L, 5L, 9L), idsLote);
+    assertEquals(List.of(1, -10, -3, 4), deltas);
+
+    JsonNode rechazados = out.path("rechazados");
+    assertEquals(2, rechazados.size());
+    assertEquals(2, rechazados.get(0).path("index").asInt());
+    assertEquals("Stock insuficiente", rechazados.get(0).path("error").asText());
+    assertEquals(4, rechazados.get(1).path("index").asInt());
+    assertEquals("Producto no encontrado", rechazados.get(1).path("error").asText());
+
+    // Un solo executeBatch al OUTBOX: 3 StockAjustado + StockBajo del 5 (12 -> 2)
+    List<FakeDb.Ejecucion> outbox = db.con("INSERT INTO OUTBOX");
+    assertEquals(1, outbox.size());
+    List<String> tipos = tipos(outbox.get(0));
+    assertEquals(4, tipos.size());
+    assertEquals(1, Collections.frequency(tipos, "Inventario.Producto.StockBajo"));
+    assertTrue(db.transacciones.contains("commit"));
+  }
+
+  @Test
+  void loteVacioEsInvalido() {
+    HttpResponseMessage res = new StockFunction().productosStockLote(request("[]", Map.of()), contexto());
+    assertEquals(HttpStatus.BAD_REQUEST, res.getStatus());
+  }
+
+  /* ================== Helpers ================== */
+
+  private static List<String> tipos(FakeDb.Ejecucion lote) {
+    List<String> out = new ArrayList<>();
+    for (Map<Integer, Object> fila : lote.lote) out.add((String) fila.get(2));
+    return out;
+  }
+
+  private static List<Long> seqs(FakeDb.Ejecucion lote) {
+    List<Long> out = new ArrayList<>();
+    for (Map<Integer, Object> fila : lote.lote) out.add((Long) fila.get(3));
+    return out;
+  }
+}